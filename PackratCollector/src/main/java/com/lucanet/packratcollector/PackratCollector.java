@@ -1,9 +1,13 @@
 package com.lucanet.packratcollector;
 
+import com.lucanet.packratcollector.consumers.DeserializationMode;
 import com.lucanet.packratcollector.consumers.MessageConsumer;
 import com.lucanet.packratcollector.consumers.MessageConsumerFactory;
+import com.lucanet.packratcollector.consumers.ProcessingMode;
 import com.lucanet.packratcollector.deserializers.FileLinesDeserializer;
+import com.lucanet.packratcollector.deserializers.JSONBsonDeserializer;
 import com.lucanet.packratcollector.deserializers.JSONDeserializer;
+import com.lucanet.packratcommon.db.DatabaseConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -44,6 +48,14 @@ public class PackratCollector implements ApplicationRunner {
    * The list of {@link MessageConsumer} instances that will run during the PackratCollector's runtime.
    */
   private final List<MessageConsumer> messageConsumerList;
+  /**
+   * The database persistence object.
+   */
+  private final DatabaseConnection databaseConnection;
+  /**
+   * Whether the IDs of the stored records are migrated to the configured key format before the consumers start.
+   */
+  private final boolean keyMigrationOnStartup;
 
   // ============================  Constructors  ===========================79
   /**
@@ -51,31 +63,59 @@ public class PackratCollector implements ApplicationRunner {
    * @param messageConsumerFactory The producer of the {@link MessageConsumer} that will run during the PackratCollector's runtime.
    * @param jsonTopicsList List of topics that the JSON-based {@link MessageConsumer} instance will monitor for.
    * @param jsonThreadPoolSize Size of thread pool for processing JSON-based HealthCheck messages.
+   * @param jsonProcessingMode Strategy for handing JSON-based HealthCheck messages to the thread pool.
+   * @param jsonDeserializationMode Threads on which JSON-based HealthCheck messages are deserialized.
+   * @param jsonConsumerCount Number of Kafka consumers that split the partitions of the JSON-based topics.
+   * @param jsonBsonTranscoding Whether JSON-based HealthCheck messages are transcoded directly to BSON instead of being parsed into maps.
    * @param fileTopicsList List of topics that the file-based {@link MessageConsumer} instance will monitor for.
    * @param fileThreadPoolSize Size of thread pool for processing file-based HealthCheck messages.
+   * @param fileProcessingMode Strategy for handing file-based HealthCheck messages to the thread pool.
+   * @param fileDeserializationMode Threads on which file-based HealthCheck messages are deserialized.
+   * @param fileConsumerCount Number of Kafka consumers that split the partitions of the file-based topics.
+   * @param databaseConnection The database persistence object.
+   * @param keyMigrationOnStartup Whether the IDs of the stored records are migrated to the configured key format before the consumers start.
    */
   public PackratCollector(
       MessageConsumerFactory messageConsumerFactory,
       @Value("#{'${packrat.consumers.json.topics}'.split(',')}") List<String> jsonTopicsList,
       @Value("${packrat.consumers.json.threadpoolsize}") int jsonThreadPoolSize,
+      @Value("${packrat.consumers.json.processingmode}") ProcessingMode jsonProcessingMode,
+      @Value("${packrat.consumers.json.deserializationmode}") DeserializationMode jsonDeserializationMode,
+      @Value("${packrat.consumers.json.consumercount}") int jsonConsumerCount,
+      @Value("${packrat.consumers.json.bsontranscoding}") boolean jsonBsonTranscoding,
       @Value("#{'${packrat.consumers.file.topics}'.split(',')}") List<String> fileTopicsList,
-      @Value("${packrat.consumers.file.threadpoolsize}") int fileThreadPoolSize
+      @Value("${packrat.consumers.file.threadpoolsize}") int fileThreadPoolSize,
+      @Value("${packrat.consumers.file.processingmode}") ProcessingMode fileProcessingMode,
+      @Value("${packrat.consumers.file.deserializationmode}") DeserializationMode fileDeserializationMode,
+      @Value("${packrat.consumers.file.consumercount}") int fileConsumerCount,
+      DatabaseConnection databaseConnection,
+      @Value("${packrat.db.keyMigration.onStartup}") boolean keyMigrationOnStartup
   ) {
     logger = LoggerFactory.getLogger(PackratCollector.class);
+    MessageConsumer jsonMessageConsumer = jsonBsonTranscoding ?
+        messageConsumerFactory.createMessageConsumer("JSONMessageConsumer", JSONBsonDeserializer.class, jsonTopicsList, jsonThreadPoolSize, jsonProcessingMode, jsonDeserializationMode, jsonConsumerCount) :
+        messageConsumerFactory.createMessageConsumer("JSONMessageConsumer", JSONDeserializer.class, jsonTopicsList, jsonThreadPoolSize, jsonProcessingMode, jsonDeserializationMode, jsonConsumerCount);
     messageConsumerList = Arrays.asList(
-        messageConsumerFactory.createMessageConsumer("JSONMessageConsumer", JSONDeserializer.class, jsonTopicsList, jsonThreadPoolSize),
-        messageConsumerFactory.createMessageConsumer("FileMessageConsumer", FileLinesDeserializer.class, fileTopicsList, fileThreadPoolSize)
+        jsonMessageConsumer,
+        messageConsumerFactory.createMessageConsumer("FileMessageConsumer", FileLinesDeserializer.class, fileTopicsList, fileThreadPoolSize, fileProcessingMode, fileDeserializationMode, fileConsumerCount)
     );
+    this.databaseConnection = databaseConnection;
+    this.keyMigrationOnStartup = keyMigrationOnStartup;
   }
 
   // ============================ Public Methods ===========================79
   /**
-   * Initiate the stored {@link MessageConsumer} instances.
+   * Initiate the stored {@link MessageConsumer} instances, after migrating the IDs of the stored records if requested.
    * @param args Passed-in arguments from the application's start-up.
    * @throws Exception Uncaught exceptions that occur during runtime.
    */
   @Override
   public void run(ApplicationArguments args) throws Exception {
+    if (keyMigrationOnStartup) {
+      for (String healthCheckType : databaseConnection.getHealthCheckTypes()) {
+        databaseConnection.migrateKeys(healthCheckType);
+      }
+    }
     logger.debug("Starting Packrat Collector Message Consumers...");
     messageConsumerList.forEach(MessageConsumer::run);
   }
@@ -1,8 +1,10 @@
 package com.lucanet.packratcollector.config;
 
-import com.lucanet.packratcollector.deserializers.HealthCheckHeaderDeserializer;
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
@@ -41,6 +43,22 @@ public class PackratCollectorConfig {
    * @see com.lucanet.packratcollector.consumers.MessageConsumerImpl#brokerPollTimeout
    */
   private final long brokerPollTimeout;
+  /**
+   * @see com.lucanet.packratcollector.consumers.MessageConsumerImpl#brokerReconnectBackoff
+   */
+  private final long brokerReconnectBackoff;
+  /**
+   * @see com.lucanet.packratcollector.consumers.MessageConsumerImpl#brokerMaxReconnectBackoff
+   */
+  private final long brokerMaxReconnectBackoff;
+  /**
+   * @see com.lucanet.packratcollector.consumers.InFlightLimit#maxRecords
+   */
+  private final long maxInFlightRecords;
+  /**
+   * @see com.lucanet.packratcollector.consumers.InFlightLimit#maxBytes
+   */
+  private final long maxInFlightBytes;
 
   // ============================  Constructors  ===========================79
   /**
@@ -49,7 +67,12 @@ public class PackratCollectorConfig {
    * @param groupId The id of the Kafka message consumer group to which the Packrat Collector belongs.
    * @param autoCommitInterval The interval of the auto-commit message sent to the Kafka message server.
    * @param sessionTimeout The timeout interval for the Kafka message consumer session.
+   * @param brokerConnectTimeout The timeout interval for connecting to the Kafka broker.
    * @param brokerPollTimeout The timeout interval for polling the Kafka broker.
+   * @param brokerReconnectBackoff The initial delay before reconnecting to the Kafka broker after a failure.
+   * @param brokerMaxReconnectBackoff The maximum delay before reconnecting to the Kafka broker after consecutive failures.
+   * @param maxInFlightRecords The maximum number of polled messages awaiting processing per message consumer.
+   * @param maxInFlightBytes The maximum serialized size (in bytes) of polled messages awaiting processing per message consumer.
    */
   public PackratCollectorConfig(
       @Value("${packrat.bootstrapServers}") String bootstrapServers,
@@ -57,7 +80,11 @@ public class PackratCollectorConfig {
       @Value("${packrat.autoCommitInterval}") int autoCommitInterval,
       @Value("${packrat.sessionTimeout}") int sessionTimeout,
       @Value("${packrat.broker.connectTimeout}") long brokerConnectTimeout,
-      @Value("${packrat.broker.pollTimeout}") long brokerPollTimeout
+      @Value("${packrat.broker.pollTimeout}") long brokerPollTimeout,
+      @Value("${packrat.broker.reconnectBackoff}") long brokerReconnectBackoff,
+      @Value("${packrat.broker.maxReconnectBackoff}") long brokerMaxReconnectBackoff,
+      @Value("${packrat.inFlight.maxRecords}") long maxInFlightRecords,
+      @Value("${packrat.inFlight.maxBytes}") long maxInFlightBytes
   ) {
     this.bootstrapServers = bootstrapServers;
     this.groupId = groupId;
@@ -65,11 +92,16 @@ public class PackratCollectorConfig {
     this.sessionTimeout = sessionTimeout;
     this.brokerConnectTimeout = brokerConnectTimeout;
     this.brokerPollTimeout = brokerPollTimeout;
+    this.brokerReconnectBackoff = brokerReconnectBackoff;
+    this.brokerMaxReconnectBackoff = brokerMaxReconnectBackoff;
+    this.maxInFlightRecords = maxInFlightRecords;
+    this.maxInFlightBytes = maxInFlightBytes;
   }
 
   // ============================ Public Methods ===========================79
   /**
-   * Generate the {@link Properties} object which contains the common Kafka configuration settings.
+   * Generate the {@link Properties} object which contains the common Kafka configuration settings. HealthCheck
+   * message headers are fetched as raw bytes and deserialized by the message consumer itself.
    * @return The common properties object.
    */
   public Properties generateCommonProperties() {
@@ -79,7 +111,21 @@ public class PackratCollectorConfig {
     props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true);
     props.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, autoCommitInterval);
     props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, sessionTimeout);
-    props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, HealthCheckHeaderDeserializer.class.getCanonicalName());
+    props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getCanonicalName());
+    return props;
+  }
+
+  /**
+   * Generate the {@link Properties} object for the Kafka producers that re-publish raw HealthCheck messages (e.g.
+   * replayed dead letters) to their topics.
+   * @return The producer properties object.
+   */
+  public Properties generateProducerProperties() {
+    Properties props = new Properties();
+    props.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    props.put(ProducerConfig.ACKS_CONFIG, "all");
+    props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getCanonicalName());
+    props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getCanonicalName());
     return props;
   }
 
@@ -91,6 +137,22 @@ public class PackratCollectorConfig {
     return brokerPollTimeout;
   }
 
+  public long getBrokerReconnectBackoff() {
+    return brokerReconnectBackoff;
+  }
+
+  public long getBrokerMaxReconnectBackoff() {
+    return brokerMaxReconnectBackoff;
+  }
+
+  public long getMaxInFlightRecords() {
+    return maxInFlightRecords;
+  }
+
+  public long getMaxInFlightBytes() {
+    return maxInFlightBytes;
+  }
+
   // ========================== Protected Methods ==========================79
   // =========================== Private Methods ===========================79
 }
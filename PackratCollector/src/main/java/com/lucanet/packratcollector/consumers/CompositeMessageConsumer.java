@@ -0,0 +1,47 @@
+package com.lucanet.packratcollector.consumers;
+
+import java.util.List;
+
+/**
+ * Implementation of the {@link MessageConsumer} that runs several message consumers as a single unit, e.g. multiple
+ * {@link MessageConsumerImpl} instances of the same consumer group that split the partitions of their topics.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class CompositeMessageConsumer implements MessageConsumer {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The message consumers that are run as a single unit.
+   */
+  private final List<MessageConsumer> messageConsumers;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Composite consumer constructor.
+   * @param messageConsumers The message consumers that are run as a single unit.
+   */
+  public CompositeMessageConsumer(List<MessageConsumer> messageConsumers) {
+    this.messageConsumers = messageConsumers;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Run all message consumers.
+   */
+  @Override
+  public void run() {
+    messageConsumers.forEach(MessageConsumer::run);
+  }
+
+  /**
+   * Stop all message consumers.
+   */
+  @Override
+  public void stop() {
+    messageConsumers.forEach(MessageConsumer::stop);
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+}
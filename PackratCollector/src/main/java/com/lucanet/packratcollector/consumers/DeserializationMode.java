@@ -0,0 +1,19 @@
+package com.lucanet.packratcollector.consumers;
+
+/**
+ * The threads on which a {@link MessageConsumerImpl} deserializes the raw HealthCheck messages fetched by its Kafka
+ * consumer.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public enum DeserializationMode {
+  /**
+   * HealthCheck messages are deserialized on the polling thread before being handed to the worker threads.
+   */
+  POLL_THREAD,
+  /**
+   * HealthCheck messages are deserialized by the worker threads, so that the polling thread only fetches messages
+   * and the parsing and validation of the messages runs in parallel. In {@link ProcessingMode#KEY_ORDERED} mode the
+   * HealthCheck headers are still deserialized on the polling thread, as they determine the worker lane.
+   */
+  WORKER
+}
@@ -0,0 +1,111 @@
+package com.lucanet.packratcollector.consumers;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter of the HealthCheck messages that have been polled but not yet processed, used to apply backpressure to the
+ * Kafka message consumer once a record count or byte size limit is reached.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class InFlightLimit {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The maximum number of in-flight HealthCheck messages.
+   */
+  private final long maxRecords;
+  /**
+   * The maximum serialized size (in bytes) of the in-flight HealthCheck messages.
+   */
+  private final long maxBytes;
+  /**
+   * The current number of in-flight HealthCheck messages.
+   */
+  private final AtomicLong inFlightRecords;
+  /**
+   * The current serialized size (in bytes) of the in-flight HealthCheck messages.
+   */
+  private final AtomicLong inFlightBytes;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Limit constructor.
+   * @param maxRecords The maximum number of in-flight HealthCheck messages.
+   * @param maxBytes The maximum serialized size (in bytes) of the in-flight HealthCheck messages.
+   */
+  public InFlightLimit(long maxRecords, long maxBytes) {
+    this.maxRecords = maxRecords;
+    this.maxBytes = maxBytes;
+    this.inFlightRecords = new AtomicLong(0L);
+    this.inFlightBytes = new AtomicLong(0L);
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Count HealthCheck messages as in-flight.
+   * @param records The polled HealthCheck messages.
+   */
+  public void acquire(Iterable<? extends ConsumerRecord<?, ?>> records) {
+    long recordCount = 0L;
+    long byteCount = 0L;
+    for (ConsumerRecord<?, ?> record : records) {
+      recordCount++;
+      byteCount += getSerializedSize(record);
+    }
+    inFlightRecords.addAndGet(recordCount);
+    inFlightBytes.addAndGet(byteCount);
+  }
+
+  /**
+   * Stop counting HealthCheck messages as in-flight.
+   * @param records The processed HealthCheck messages.
+   */
+  public void release(Iterable<? extends ConsumerRecord<?, ?>> records) {
+    long recordCount = 0L;
+    long byteCount = 0L;
+    for (ConsumerRecord<?, ?> record : records) {
+      recordCount++;
+      byteCount += getSerializedSize(record);
+    }
+    inFlightRecords.addAndGet(-recordCount);
+    inFlightBytes.addAndGet(-byteCount);
+  }
+
+  /**
+   * Determine whether either limit has been reached.
+   * @return Whether the in-flight HealthCheck messages have reached the record count or byte size limit.
+   */
+  public boolean isExceeded() {
+    return (inFlightRecords.get() >= maxRecords) || (inFlightBytes.get() >= maxBytes);
+  }
+
+  /**
+   * Get the current number of in-flight HealthCheck messages.
+   * @return {@link #inFlightRecords}
+   */
+  public long getInFlightRecords() {
+    return inFlightRecords.get();
+  }
+
+  /**
+   * Get the current serialized size of the in-flight HealthCheck messages.
+   * @return {@link #inFlightBytes}
+   */
+  public long getInFlightBytes() {
+    return inFlightBytes.get();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Get the serialized size of a HealthCheck message as received from the Kafka broker.
+   * @param record The HealthCheck message.
+   * @return The combined size (in bytes) of the serialized key and value.
+   */
+  private long getSerializedSize(ConsumerRecord<?, ?> record) {
+    return Math.max(record.serializedKeySize(), 0) + Math.max(record.serializedValueSize(), 0);
+  }
+}
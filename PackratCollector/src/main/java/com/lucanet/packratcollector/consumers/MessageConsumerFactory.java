@@ -1,6 +1,6 @@
 package com.lucanet.packratcollector.consumers;
 
-import org.apache.kafka.common.serialization.Deserializer;
+import com.lucanet.packratcollector.deserializers.HealthCheckDeserializer;
 
 import java.util.List;
 
@@ -18,14 +18,20 @@ public interface MessageConsumerFactory {
    * @param valueDeserializerClass The class that will deserialize the HealthCheck message data.
    * @param topicsList The list of topics that the message consumer will listen for incoming HealthCheck messages.
    * @param threadpoolSize Thread pool for executing the HealthCheck message consumption callback separately from the message retrieval thread.
+   * @param processingMode The strategy with which polled HealthCheck messages are handed to the thread pool.
+   * @param deserializationMode The threads on which the fetched HealthCheck messages are deserialized.
+   * @param consumerCount The number of Kafka consumers (each with its own polling thread) that split the partitions of the topics.
    * @param <T> The type of the HealthCheck message data.
    * @return The produced {@link MessageConsumer}
    */
   <T> MessageConsumer createMessageConsumer(
       String consumerName,
-      Class<? extends Deserializer<T>> valueDeserializerClass,
+      Class<? extends HealthCheckDeserializer<T>> valueDeserializerClass,
       List<String> topicsList,
-      int threadpoolSize
+      int threadpoolSize,
+      ProcessingMode processingMode,
+      DeserializationMode deserializationMode,
+      int consumerCount
   );
 
   // =========================== Default Methods ===========================79
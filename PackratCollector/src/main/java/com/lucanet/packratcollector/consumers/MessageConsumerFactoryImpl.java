@@ -1,13 +1,22 @@
 package com.lucanet.packratcollector.consumers;
 
 import com.lucanet.packratcollector.config.PackratCollectorConfig;
+import com.lucanet.packratcollector.deserializers.HealthCheckDeserializer;
+import com.lucanet.packratcollector.deserializers.HealthCheckHeaderDeserializer;
+import com.lucanet.packratcollector.persister.DeadLetterQueue;
 import com.lucanet.packratcollector.persister.RecordPersister;
+import com.lucanet.packratcommon.model.HealthCheckHeader;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.utils.Utils;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Implementation of {@link MessageConsumerFactory} that creates instances of {@link MessageConsumerImpl}
@@ -26,43 +35,93 @@ public class MessageConsumerFactoryImpl implements MessageConsumerFactory {
    * Entity that will persist retrieved HealthCheck messages for later analysis.
    */
   private final RecordPersister recordPersister;
+  /**
+   * Dead-letter stage for the HealthCheck messages whose header or data cannot be deserialized.
+   */
+  private final DeadLetterQueue deadLetterQueue;
 
   // ============================  Constructors  ===========================79
   /**
    * Consumer factory constructor.
    * @param packratCollectorConfig The common message consumer configuration properties.
    * @param recordPersister Entity that will persist retrieved HealthCheck messages for later analysis.
+   * @param deadLetterQueue Dead-letter stage for the HealthCheck messages whose header or data cannot be deserialized.
    */
-  public MessageConsumerFactoryImpl(PackratCollectorConfig packratCollectorConfig, RecordPersister recordPersister) {
+  public MessageConsumerFactoryImpl(PackratCollectorConfig packratCollectorConfig, RecordPersister recordPersister, DeadLetterQueue deadLetterQueue) {
     this.packratCollectorConfig = packratCollectorConfig;
     this.recordPersister = recordPersister;
+    this.deadLetterQueue = deadLetterQueue;
   }
 
   // ============================ Public Methods ===========================79
   /**
-   * Produce an instance of a {@link MessageConsumerImpl}.
+   * Produce an instance of a {@link MessageConsumerImpl}, or a {@link CompositeMessageConsumer} of several
+   * {@link MessageConsumerImpl} instances of the same consumer group if more than one consumer is requested. Each
+   * instance has its own thread pool and an equal share of the in-flight record limits.
    * @param consumerName The name of the message consumer. This is used for identification purposes during logging.
    * @param valueDeserializerClass The class that will deserialize the HealthCheck message data.
    * @param topicsList The list of topics that the message consumer will listen for incoming HealthCheck messages.
    * @param threadpoolSize Thread pool for executing the HealthCheck message consumption callback separately from the message retrieval thread.
+   * @param processingMode The strategy with which polled HealthCheck messages are handed to the thread pool.
+   * @param deserializationMode The threads on which the fetched HealthCheck messages are deserialized.
+   * @param consumerCount The number of Kafka consumers (each with its own polling thread) that split the partitions of the topics.
    * @param <T> The type of the HealthCheck message data.
-   * @return The produced {@link MessageConsumerImpl}
+   * @return The produced {@link MessageConsumer}
    */
   @Override
-  public <T> MessageConsumer createMessageConsumer(String consumerName, Class<? extends Deserializer<T>> valueDeserializerClass, List<String> topicsList, int threadpoolSize) {
+  public <T> MessageConsumer createMessageConsumer(String consumerName, Class<? extends HealthCheckDeserializer<T>> valueDeserializerClass, List<String> topicsList, int threadpoolSize, ProcessingMode processingMode, DeserializationMode deserializationMode, int consumerCount) {
+    if (consumerCount <= 1) {
+      return createMessageConsumerImpl(consumerName, valueDeserializerClass, topicsList, threadpoolSize, processingMode, deserializationMode, 1);
+    }
+    return new CompositeMessageConsumer(
+        IntStream.range(0, consumerCount)
+            .mapToObj(index -> createMessageConsumerImpl(String.format("%s-%d", consumerName, index), valueDeserializerClass, topicsList, threadpoolSize, processingMode, deserializationMode, consumerCount))
+            .collect(Collectors.toList())
+    );
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Produce a single {@link MessageConsumerImpl}.
+   * @param consumerName The name of the message consumer. This is used for identification purposes during logging.
+   * @param valueDeserializerClass The class that will deserialize the HealthCheck message data.
+   * @param topicsList The list of topics that the message consumer will listen for incoming HealthCheck messages.
+   * @param threadpoolSize Thread pool for executing the HealthCheck message consumption callback separately from the message retrieval thread.
+   * @param processingMode The strategy with which polled HealthCheck messages are handed to the thread pool.
+   * @param deserializationMode The threads on which the fetched HealthCheck messages are deserialized.
+   * @param consumerCount The number of message consumers sharing the in-flight record limits.
+   * @param <T> The type of the HealthCheck message data.
+   * @return The produced {@link MessageConsumerImpl}
+   */
+  private <T> MessageConsumer createMessageConsumerImpl(String consumerName, Class<? extends HealthCheckDeserializer<T>> valueDeserializerClass, List<String> topicsList, int threadpoolSize, ProcessingMode processingMode, DeserializationMode deserializationMode, int consumerCount) {
     Properties messageConsumerProperties = packratCollectorConfig.generateCommonProperties();
-    messageConsumerProperties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializerClass.getCanonicalName());
+    messageConsumerProperties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getCanonicalName());
+    messageConsumerProperties.setProperty(ConsumerConfig.CLIENT_ID_CONFIG, consumerName);
+    //The Kafka consumer only fetches raw bytes; the message consumer runs the actual deserializers
+    Map<String, Object> deserializerConfigs = new HashMap<>();
+    messageConsumerProperties.forEach((key, value) -> deserializerConfigs.put(key.toString(), value));
+    HealthCheckDeserializer<HealthCheckHeader> keyDeserializer = new HealthCheckHeaderDeserializer();
+    keyDeserializer.configure(deserializerConfigs, true);
+    HealthCheckDeserializer<T> valueDeserializer = Utils.newInstance(valueDeserializerClass);
+    valueDeserializer.configure(deserializerConfigs, false);
     return new MessageConsumerImpl<T>(
         consumerName,
         messageConsumerProperties,
+        keyDeserializer,
+        valueDeserializer,
+        deserializationMode,
         topicsList,
         packratCollectorConfig.getBrokerConnectTimeout(),
         packratCollectorConfig.getBrokerPollTimeout(),
+        packratCollectorConfig.getBrokerReconnectBackoff(),
+        packratCollectorConfig.getBrokerMaxReconnectBackoff(),
         threadpoolSize,
-        recordPersister
+        processingMode,
+        Math.max(packratCollectorConfig.getMaxInFlightRecords() / consumerCount, 1L),
+        Math.max(packratCollectorConfig.getMaxInFlightBytes() / consumerCount, 1L),
+        recordPersister,
+        deadLetterQueue
     );
   }
-
-  // ========================== Protected Methods ==========================79
-  // =========================== Private Methods ===========================79
 }
@@ -1,19 +1,31 @@
 package com.lucanet.packratcollector.consumers;
 
+import com.lucanet.packratcollector.deserializers.HealthCheckDeserializer;
+import com.lucanet.packratcollector.persister.DeadLetterQueue;
 import com.lucanet.packratcollector.persister.RecordPersister;
 import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Implementation of the {@link MessageConsumer} that utilizes a {@link KafkaConsumer} to consume HealthCheck messages.
@@ -22,6 +34,33 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class MessageConsumerImpl<T> implements MessageConsumer {
   // =========================== Class Variables ===========================79
+  /**
+   * The maximum duration (in milliseconds) that a single {@link KafkaConsumer#poll(long)} call waits for messages.
+   */
+  private static final long POLL_DURATION = 1000L;
+  /**
+   * The minimum interval (in milliseconds) at which the {@link #pollWatchdog} checks for an overdue poll.
+   */
+  private static final long MIN_WATCHDOG_INTERVAL = 10L;
+  /**
+   * The interval (in milliseconds) at which the processing of revoked partitions is checked for completion.
+   */
+  private static final long REVOKE_CHECK_INTERVAL = 10L;
+  /**
+   * The number of attempts at persisting the HealthCheck messages of a partition from the same offset onwards, after
+   * which a batch that still cannot be persisted is handed to the {@link #deadLetterQueue} instead.
+   */
+  private static final int MAX_PERSIST_ATTEMPTS = 10;
+  /**
+   * The delay (in milliseconds) before HealthCheck messages that could not be persisted are attempted again; the
+   * delay doubles with each further attempt.
+   */
+  private static final long PERSIST_RETRY_BACKOFF = 1000L;
+  /**
+   * The maximum delay (in milliseconds) before HealthCheck messages that could not be persisted are attempted again.
+   */
+  private static final long MAX_PERSIST_RETRY_BACKOFF = 30000L;
+
   // ============================ Class Methods ============================79
   // ============================   Variables    ===========================79
   /**
@@ -33,9 +72,26 @@ public class MessageConsumerImpl<T> implements MessageConsumer {
    */
   private final String consumerName;
   /**
-   * The Kafka message consumer for retrieving HealthCheck messages from the Kafka server.
+   * The properties with which the {@link #kafkaConsumer} is (re)created.
    */
-  private final KafkaConsumer<HealthCheckHeader, T> kafkaConsumer;
+  private final Properties kafkaConsumerProperties;
+  /**
+   * The Kafka message consumer for retrieving HealthCheck messages from the Kafka server. This is only ever used by
+   * the {@link #runnerThread}, apart from {@link KafkaConsumer#wakeup()} calls, and is recreated upon reconnecting.
+   */
+  private volatile KafkaConsumer<byte[], byte[]> kafkaConsumer;
+  /**
+   * The deserializer for the HealthCheck message headers.
+   */
+  private final HealthCheckDeserializer<HealthCheckHeader> keyDeserializer;
+  /**
+   * The deserializer for the HealthCheck message data.
+   */
+  private final HealthCheckDeserializer<T> valueDeserializer;
+  /**
+   * The threads on which the raw HealthCheck messages are deserialized.
+   */
+  private final DeserializationMode deserializationMode;
   /**
    * Sentinel variable for maintaining the HealthCheck message retrieval loop active.
    */
@@ -52,14 +108,64 @@ public class MessageConsumerImpl<T> implements MessageConsumer {
    * The timeout interval for polling the Kafka broker.
    */
   private final long brokerPollTimeout;
+  /**
+   * The initial delay before reconnecting to the Kafka broker after a failed connection or poll.
+   */
+  private final long brokerReconnectBackoff;
+  /**
+   * The maximum delay before reconnecting to the Kafka broker; the delay doubles with each consecutive failure.
+   */
+  private final long brokerMaxReconnectBackoff;
+  /**
+   * The time (in milliseconds since the UNIX epoch) by which the current poll must return, or 0 if no poll is running.
+   */
+  private final AtomicLong pollDeadline;
+  /**
+   * Scheduler that wakes up the {@link #kafkaConsumer} if a poll runs past its {@link #pollDeadline}.
+   */
+  private final ScheduledExecutorService pollWatchdog;
+  /**
+   * The strategy with which polled HealthCheck messages are handed to the worker threads.
+   */
+  private final ProcessingMode processingMode;
   /**
    * Thread pool for executing the HealthCheck message consumption callback separately from the message retrieval thread.
+   * This is only used in {@link ProcessingMode#BATCH} mode.
    */
   private final ExecutorService threadPoolExecutor;
+  /**
+   * Single-threaded worker lanes for executing the HealthCheck message consumption callback separately from the
+   * message retrieval thread. This is only used in {@link ProcessingMode#KEY_ORDERED} mode.
+   */
+  private final List<ExecutorService> laneExecutors;
   /**
    * Entity that will persist retrieved HealthCheck messages for later analysis.
    */
   private final RecordPersister recordPersister;
+  /**
+   * Dead-letter stage for the HealthCheck messages whose header or data cannot be deserialized.
+   */
+  private final DeadLetterQueue deadLetterQueue;
+  /**
+   * Tracker of the polled HealthCheck messages that are still being processed by the worker threads.
+   */
+  private final OffsetTracker offsetTracker;
+  /**
+   * Limit on the polled HealthCheck messages that are still being processed by the worker threads. Once it is
+   * reached, the partitions with in-flight messages are paused until the worker threads catch up.
+   */
+  private final InFlightLimit inFlightLimit;
+  /**
+   * The offsets to which partitions are sought back because a batch of their HealthCheck messages could not be
+   * persisted, so that the messages are polled again once their backoff has passed. These are applied by the
+   * {@link #runnerThread}, which keeps the partitions paused until then.
+   */
+  private final Map<TopicPartition, PendingRewind> pendingRewinds;
+  /**
+   * The first offset of each partition at which persisting HealthCheck messages has failed, together with the
+   * number of failed attempts. An entry is removed once the messages at its offset are persisted or dead-lettered.
+   */
+  private final Map<TopicPartition, PersistFailure> persistFailures;
   /**
    * Thread that runs the HealthCheck message retrieval loop.
    */
@@ -70,31 +176,76 @@ public class MessageConsumerImpl<T> implements MessageConsumer {
    * Constructor for the message consumer.
    * @param consumerName The name of the MessageConsumerImpl instance.
    * @param kafkaConsumerProperties The Kafka message consumer for retrieving HealthCheck messages from the Kafka server.
+   *                                The consumer must fetch keys and values as raw byte arrays.
+   * @param keyDeserializer The deserializer for the HealthCheck message headers.
+   * @param valueDeserializer The deserializer for the HealthCheck message data.
+   * @param deserializationMode The threads on which the raw HealthCheck messages are deserialized.
    * @param topicsList List of Kafka message topics that the {@link #kafkaConsumer} will subscribe to.
    * @param brokerConnectTimeout The timeout interval for connecting to the Kafka broker.
    * @param brokerPollTimeout The timeout interval for polling the Kafka broker.
-   * @param threadPoolSize Number of threads that the {@link #threadPoolExecutor} will possess.
+   * @param brokerReconnectBackoff The initial delay before reconnecting to the Kafka broker.
+   * @param brokerMaxReconnectBackoff The maximum delay before reconnecting to the Kafka broker.
+   * @param threadPoolSize Number of threads that the {@link #threadPoolExecutor} will possess, or the number of
+   *                       {@link #laneExecutors} in {@link ProcessingMode#KEY_ORDERED} mode.
+   * @param processingMode The strategy with which polled HealthCheck messages are handed to the worker threads.
+   * @param maxInFlightRecords The maximum number of polled HealthCheck messages awaiting processing.
+   * @param maxInFlightBytes The maximum serialized size (in bytes) of polled HealthCheck messages awaiting processing.
    * @param recordPersister Entity that will persist retrieved HealthCheck messages for later analysis.
+   * @param deadLetterQueue Dead-letter stage for the HealthCheck messages whose header or data cannot be deserialized.
    */
   MessageConsumerImpl(
       String consumerName,
       Properties kafkaConsumerProperties,
+      HealthCheckDeserializer<HealthCheckHeader> keyDeserializer,
+      HealthCheckDeserializer<T> valueDeserializer,
+      DeserializationMode deserializationMode,
       List<String> topicsList,
       long brokerConnectTimeout,
       long brokerPollTimeout,
+      long brokerReconnectBackoff,
+      long brokerMaxReconnectBackoff,
       int threadPoolSize,
-      RecordPersister recordPersister
+      ProcessingMode processingMode,
+      long maxInFlightRecords,
+      long maxInFlightBytes,
+      RecordPersister recordPersister,
+      DeadLetterQueue deadLetterQueue
   ) {
     this.logger = LoggerFactory.getLogger(MessageConsumerImpl.class);
     this.consumerName = consumerName;
-    this.kafkaConsumer = new KafkaConsumer<>(kafkaConsumerProperties);
+    this.kafkaConsumerProperties = kafkaConsumerProperties;
+    this.keyDeserializer = keyDeserializer;
+    this.valueDeserializer = valueDeserializer;
+    this.deserializationMode = deserializationMode;
     this.isRunning = new AtomicBoolean(false);
     this.topicsList = topicsList;
     this.brokerConnectTimeout = brokerConnectTimeout;
     this.brokerPollTimeout = brokerPollTimeout;
-    this.threadPoolExecutor = Executors.newFixedThreadPool(threadPoolSize);
+    this.brokerReconnectBackoff = brokerReconnectBackoff;
+    this.brokerMaxReconnectBackoff = brokerMaxReconnectBackoff;
+    this.pollDeadline = new AtomicLong(0L);
+    this.pollWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread watchdogThread = new Thread(runnable, String.format("%s-watchdog", consumerName));
+      watchdogThread.setDaemon(true);
+      return watchdogThread;
+    });
+    this.processingMode = processingMode;
+    if (processingMode == ProcessingMode.KEY_ORDERED) {
+      this.threadPoolExecutor = null;
+      this.laneExecutors = IntStream.range(0, threadPoolSize)
+          .mapToObj(lane -> Executors.newSingleThreadExecutor())
+          .collect(Collectors.toList());
+    } else {
+      this.threadPoolExecutor = Executors.newFixedThreadPool(threadPoolSize);
+      this.laneExecutors = Collections.emptyList();
+    }
     this.recordPersister = recordPersister;
-    this.runnerThread = new Thread(this::runConsumer);
+    this.deadLetterQueue = deadLetterQueue;
+    this.offsetTracker = new OffsetTracker();
+    this.inFlightLimit = new InFlightLimit(maxInFlightRecords, maxInFlightBytes);
+    this.pendingRewinds = new ConcurrentHashMap<>();
+    this.persistFailures = new ConcurrentHashMap<>();
+    this.runnerThread = new Thread(this::runConsumer, consumerName);
   }
 
   // ============================ Public Methods ===========================79
@@ -104,118 +255,474 @@ public class MessageConsumerImpl<T> implements MessageConsumer {
   @Override
   public void run() {
     logger.info("Starting consumer {}", consumerName);
+    isRunning.set(true);
+    long watchdogInterval = Math.max(Math.min(brokerConnectTimeout, brokerPollTimeout) / 10, MIN_WATCHDOG_INTERVAL);
+    pollWatchdog.scheduleAtFixedRate(this::checkPollDeadline, watchdogInterval, watchdogInterval, TimeUnit.MILLISECONDS);
     runnerThread.start();
     logger.info("Consumer {} started", consumerName);
   }
 
   /**
-   * Stop the {@link #runnerThread} containing the message retrieval loop.
+   * Stop the {@link #runnerThread} containing the message retrieval loop, then let the worker threads finish the
+   * HealthCheck messages that have already been polled.
    */
   @Override
   public void stop() {
     logger.info("Shutting down consumer {}...", consumerName);
     isRunning.set(false);
+    KafkaConsumer<byte[], byte[]> currentConsumer = kafkaConsumer;
+    if (currentConsumer != null) {
+      currentConsumer.wakeup();
+    }
+    runnerThread.interrupt();
     try {
       runnerThread.join();
     } catch (InterruptedException ie) {
       //No-Op
     }
+    pollWatchdog.shutdownNow();
+    List<ExecutorService> workerExecutors = new ArrayList<>(laneExecutors);
+    if (threadPoolExecutor != null) {
+      workerExecutors.add(threadPoolExecutor);
+    }
+    workerExecutors.forEach(ExecutorService::shutdown);
+    try {
+      for (ExecutorService workerExecutor : workerExecutors) {
+        workerExecutor.awaitTermination(brokerConnectTimeout, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException ie) {
+      //No-Op
+    }
+    keyDeserializer.close();
+    valueDeserializer.close();
     logger.info("Consumer {} shut down", consumerName);
   }
 
   // ========================== Protected Methods ==========================79
   // =========================== Private Methods ===========================79
   /**
-   * Execute the message retrieval sequence, including the retrieval loop.
+   * Execute the message retrieval sequence, including the retrieval loop. The sequence runs entirely on the
+   * {@link #runnerThread}; a broker connection that fails or times out is closed and re-established with an
+   * exponential backoff until the consumer is stopped.
    */
   private void runConsumer() {
-    try {
-      kafkaConsumer.subscribe(topicsList);
+    long reconnectBackoff = brokerReconnectBackoff;
+    while (isRunning.get()) {
       try {
+        kafkaConsumer = new KafkaConsumer<>(kafkaConsumerProperties);
+        kafkaConsumer.subscribe(topicsList, new PartitionRebalanceListener());
         logger.debug("Connecting to broker with a timeout of {}", brokerConnectTimeout);
-        CompletableFuture.supplyAsync(() -> kafkaConsumer.poll(1000L))
-            .get(brokerConnectTimeout, TimeUnit.MILLISECONDS);
-      } catch (TimeoutException te) {
-        logger.error("Timed out ({}ms) initial connection for {}", brokerConnectTimeout, consumerName);
-        return;
-      }
-      //Set the offsets for the partitions belonging to each HealthCheck topic
-      topicsList.forEach(topic ->
-          kafkaConsumer.partitionsFor(topic).forEach(partitionInfo -> {
-            TopicPartition topicPartition = new TopicPartition(partitionInfo.topic(), partitionInfo.partition());
-            long topicPartitionOffset = recordPersister.getOffset(topicPartition);
-            logger.info("{} setting offset to {} for topic '{}' partition {}", consumerName, topicPartitionOffset, partitionInfo.topic(), partitionInfo.partition());
-            kafkaConsumer.seek(topicPartition, topicPartitionOffset);
-          })
-      );
-      isRunning.set(true);
+        //The first poll joins the consumer group, during which the stored offsets of the assigned partitions
+        //are applied by the rebalance listener
+        ConsumerRecords<byte[], byte[]> initialRecords = pollBroker(brokerConnectTimeout);
+        if (!initialRecords.isEmpty()) {
+          dispatchMessages(initialRecords);
+        }
+        reconnectBackoff = brokerReconnectBackoff;
 
-      //Run the message retrieval loop
-      try {
+        //Run the message retrieval loop
         while (isRunning.get()) {
           try {
+            rewindPartitions();
             logger.debug("{} polling Kafka Server...", consumerName);
-            ConsumerRecords<HealthCheckHeader, T> records = CompletableFuture.supplyAsync(() -> kafkaConsumer.poll(1000L))
-                .get(brokerPollTimeout, TimeUnit.MILLISECONDS);
+            ConsumerRecords<byte[], byte[]> records = pollBroker(brokerPollTimeout);
             logger.debug("Records polled for {}: {}", consumerName, records.count());
             if (!records.isEmpty()) {
-              threadPoolExecutor.submit(() -> processMessages(records));
+              dispatchMessages(records);
             }
-          } catch (TimeoutException te) {
-            logger.error("Timed out ({}ms) polling messages for {}", brokerPollTimeout, consumerName);
-            isRunning.set(false);
+            applyBackpressure();
+          } catch (WakeupException we) {
+            throw we;
           } catch (Exception e) {
             logger.error(String.format("Error polling messages for %s:", consumerName), e);
           }
         }
+      } catch (WakeupException we) {
+        if (isRunning.get()) {
+          logger.error("Timed out polling messages for {}: reconnecting in {}ms", consumerName, reconnectBackoff);
+        }
+      } catch (Exception e) {
+        logger.error(String.format("Error in runConsumer() for %s: reconnecting in %dms", consumerName, reconnectBackoff), e);
       } finally {
-        //Message retrieval loop has been terminated - close the Kafka message consumer
+        //Close the Kafka message consumer before reconnecting or shutting down
         try {
-          kafkaConsumer.close();
+          if (kafkaConsumer != null) {
+            kafkaConsumer.close();
+          }
         } catch (Exception e) {
-          //No-Op - shutting down anyway
+          //No-Op - reconnecting or shutting down anyway
         }
       }
-    } catch (Exception e) {
-      logger.error(String.format("Error in runConsumer() for %s", consumerName), e);
+      if (isRunning.get()) {
+        try {
+          Thread.sleep(reconnectBackoff);
+        } catch (InterruptedException ie) {
+          //No-Op - the consumer is being stopped
+        }
+        reconnectBackoff = Math.min(reconnectBackoff * 2, brokerMaxReconnectBackoff);
+      }
     }
   }
 
   /**
-   * Process HealthCheck records that are received from the Kafka consumer
-   * @param consumerRecords The received HealthCheck records
+   * Poll the Kafka broker for HealthCheck messages, registering a deadline for the {@link #pollWatchdog}.
+   * @param timeout The interval after which the poll is aborted with a {@link WakeupException}.
+   * @return The polled HealthCheck messages.
    */
-  private void processMessages(ConsumerRecords<HealthCheckHeader, T> consumerRecords) {
-    //Create a lookup map to determine the highest offset number encountered for each
-    //topic/partition combo. This will minimize the amount of update queries sent to
-    //the database connection
-    Map<TopicPartition, Long> offsetsMap = new HashMap<>();
+  private ConsumerRecords<byte[], byte[]> pollBroker(long timeout) {
+    pollDeadline.set(System.currentTimeMillis() + timeout);
+    try {
+      return kafkaConsumer.poll(Math.min(POLL_DURATION, timeout));
+    } finally {
+      pollDeadline.set(0L);
+    }
+  }
 
-    consumerRecords.forEach(consumerRecord -> {
-      //Check the offset for the current HealthCheck record against the lookup map
-      TopicPartition topicPartition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
-      Long recordOffset = consumerRecord.offset() + 1;
-      if ((!offsetsMap.containsKey(topicPartition)) || (offsetsMap.get(topicPartition).compareTo(recordOffset) < 0)) {
-        offsetsMap.put(topicPartition, recordOffset);
-      }
+  /**
+   * Wake up the {@link #kafkaConsumer} if the running poll has exceeded its {@link #pollDeadline}. This is executed
+   * periodically by the {@link #pollWatchdog}.
+   */
+  private void checkPollDeadline() {
+    long deadline = pollDeadline.get();
+    if ((deadline != 0L) && (System.currentTimeMillis() > deadline) && pollDeadline.compareAndSet(deadline, 0L)) {
+      logger.warn("Poll for {} exceeded its deadline - waking up the consumer", consumerName);
+      kafkaConsumer.wakeup();
+    }
+  }
 
-      //Persist the record only if the header and the data were deserialized properly
-      if ((consumerRecord.key() != null) && (consumerRecord.value() != null)) {
-        logger.debug("Record received for '{}' in {}: {}", consumerRecord.topic(), consumerName, consumerRecord.value());
-        try {
-          recordPersister.persistRecord(consumerRecord);
-        } catch (IllegalArgumentException iae) {
-          logger.error("Unable to write '{}' record {}@{} in {}: topic does not exist in database", consumerRecord.topic(), consumerRecord.offset(), consumerRecord.timestamp(), consumerName);
-        } catch (Exception e) {
-          logger.error("Error in processing record in {}: {}", consumerName, e.getMessage());
+  /**
+   * Hand HealthCheck records that are received from the Kafka consumer to the worker threads according to the
+   * {@link #processingMode}, deserializing them on the threads determined by the {@link #deserializationMode}.
+   * @param consumerRecords The received raw HealthCheck records
+   */
+  private void dispatchMessages(ConsumerRecords<byte[], byte[]> consumerRecords) {
+    offsetTracker.register(consumerRecords);
+    inFlightLimit.acquire(consumerRecords);
+    if (processingMode == ProcessingMode.KEY_ORDERED) {
+      //Split the records into lanes by system UUID. Each lane is processed by a single thread, so the
+      //records of a system keep their polled order. The headers are needed to pick the lane, so they are
+      //always deserialized here; the raw records are kept alongside for the dead-letter stage
+      List<List<ConsumerRecord<byte[], byte[]>>> laneRecordsList = IntStream.range(0, laneExecutors.size())
+          .mapToObj(lane -> new ArrayList<ConsumerRecord<byte[], byte[]>>())
+          .collect(Collectors.toList());
+      List<List<HealthCheckHeader>> laneHeadersList = IntStream.range(0, laneExecutors.size())
+          .mapToObj(lane -> new ArrayList<HealthCheckHeader>())
+          .collect(Collectors.toList());
+      consumerRecords.forEach(consumerRecord -> {
+        HealthCheckHeader healthCheckHeader = deserializeKey(consumerRecord);
+        int lane = getLane(consumerRecord, healthCheckHeader);
+        laneRecordsList.get(lane).add(consumerRecord);
+        laneHeadersList.get(lane).add(healthCheckHeader);
+      });
+      for (int lane = 0; lane < laneRecordsList.size(); lane++) {
+        List<ConsumerRecord<byte[], byte[]>> laneRecords = laneRecordsList.get(lane);
+        List<HealthCheckHeader> laneHeaders = laneHeadersList.get(lane);
+        if (!laneRecords.isEmpty()) {
+          if (deserializationMode == DeserializationMode.WORKER) {
+            laneExecutors.get(lane).submit(() -> processLaneMessages(laneRecords, deserializeValues(laneRecords, laneHeaders)));
+          } else {
+            List<ConsumerRecord<HealthCheckHeader, T>> deserializedRecords = deserializeValues(laneRecords, laneHeaders);
+            laneExecutors.get(lane).submit(() -> processLaneMessages(laneRecords, deserializedRecords));
+          }
         }
+      }
+    } else {
+      List<ConsumerRecord<byte[], byte[]>> rawRecords = new ArrayList<>(consumerRecords.count());
+      consumerRecords.forEach(rawRecords::add);
+      if (deserializationMode == DeserializationMode.WORKER) {
+        threadPoolExecutor.submit(() -> processMessages(rawRecords, deserializeRecords(rawRecords)));
       } else {
-        logger.warn("Unable to process '{}' record {}@{} in {}: either key or value were null", consumerRecord.topic(), consumerRecord.offset(), consumerRecord.timestamp(), consumerName);
+        List<ConsumerRecord<HealthCheckHeader, T>> deserializedRecords = deserializeRecords(rawRecords);
+        threadPoolExecutor.submit(() -> processMessages(rawRecords, deserializedRecords));
       }
+    }
+  }
+
+  /**
+   * Deserialize the headers and data of raw HealthCheck records.
+   * @param consumerRecords The raw HealthCheck records.
+   * @return The deserialized HealthCheck records.
+   */
+  private List<ConsumerRecord<HealthCheckHeader, T>> deserializeRecords(Iterable<ConsumerRecord<byte[], byte[]>> consumerRecords) {
+    List<ConsumerRecord<HealthCheckHeader, T>> deserializedRecords = new ArrayList<>();
+    consumerRecords.forEach(consumerRecord -> {
+      HealthCheckHeader healthCheckHeader = deserializeKey(consumerRecord);
+      deserializedRecords.add(copyRecord(consumerRecord, healthCheckHeader, (healthCheckHeader != null) ? deserializeValue(consumerRecord) : null));
     });
+    return deserializedRecords;
+  }
+
+  /**
+   * Deserialize the data of raw HealthCheck records whose headers have already been deserialized.
+   * @param consumerRecords The raw HealthCheck records.
+   * @param healthCheckHeaders The deserialized header of each record, or null for records that were dead-lettered.
+   * @return The deserialized HealthCheck records.
+   */
+  private List<ConsumerRecord<HealthCheckHeader, T>> deserializeValues(List<ConsumerRecord<byte[], byte[]>> consumerRecords, List<HealthCheckHeader> healthCheckHeaders) {
+    return IntStream.range(0, consumerRecords.size())
+        .mapToObj(index -> {
+          HealthCheckHeader healthCheckHeader = healthCheckHeaders.get(index);
+          ConsumerRecord<byte[], byte[]> consumerRecord = consumerRecords.get(index);
+          return copyRecord(consumerRecord, healthCheckHeader, (healthCheckHeader != null) ? deserializeValue(consumerRecord) : null);
+        })
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Deserialize the header of a raw HealthCheck record, handing the record to the {@link #deadLetterQueue} if the
+   * header is rejected or the record is older than the database retains.
+   * @param consumerRecord The raw HealthCheck record.
+   * @return The HealthCheck header, or null if it could not be deserialized or the record is no longer retained.
+   */
+  private HealthCheckHeader deserializeKey(ConsumerRecord<byte[], byte[]> consumerRecord) {
+    try {
+      HealthCheckHeader healthCheckHeader = keyDeserializer.deserializeOrReject(consumerRecord.topic(), consumerRecord.key());
+      if (!recordPersister.isRetained(healthCheckHeader)) {
+        throw new IllegalArgumentException(String.format("HealthCheck timestamp %d is older than the retained partitions", healthCheckHeader.getHealthCheckTimestamp()));
+      }
+      return healthCheckHeader;
+    } catch (Exception e) {
+      deadLetterQueue.add(consumerRecord, e);
+      return null;
+    }
+  }
+
+  /**
+   * Deserialize the data of a raw HealthCheck record, handing the record to the {@link #deadLetterQueue} if the
+   * data is rejected.
+   * @param consumerRecord The raw HealthCheck record.
+   * @return The HealthCheck data, or null if it could not be deserialized.
+   */
+  private T deserializeValue(ConsumerRecord<byte[], byte[]> consumerRecord) {
+    try {
+      return valueDeserializer.deserializeOrReject(consumerRecord.topic(), consumerRecord.value());
+    } catch (Exception e) {
+      deadLetterQueue.add(consumerRecord, e);
+      return null;
+    }
+  }
+
+  /**
+   * Copy a HealthCheck record with a new key and value, keeping its metadata (including the serialized sizes used
+   * by the {@link #inFlightLimit}).
+   * @param consumerRecord The HealthCheck record to copy.
+   * @param key The new key.
+   * @param value The new value.
+   * @param <K> The type of the new key.
+   * @param <V> The type of the new value.
+   * @return The copied HealthCheck record.
+   */
+  private <K, V> ConsumerRecord<K, V> copyRecord(ConsumerRecord<?, ?> consumerRecord, K key, V value) {
+    return new ConsumerRecord<>(
+        consumerRecord.topic(),
+        consumerRecord.partition(),
+        consumerRecord.offset(),
+        consumerRecord.timestamp(),
+        consumerRecord.timestampType(),
+        null,
+        consumerRecord.serializedKeySize(),
+        consumerRecord.serializedValueSize(),
+        key,
+        value,
+        consumerRecord.headers()
+    );
+  }
+
+  /**
+   * Seek the partitions of HealthCheck messages that could not be persisted back to the first of these messages once
+   * their backoff has passed, so that they are polled again. Until then, the partitions are paused, so that no
+   * further messages of them are polled only to be polled again. Partitions that have been revoked in the meantime
+   * are skipped, as their next owner resumes from the stored offset.
+   */
+  private void rewindPartitions() {
+    if (pendingRewinds.isEmpty()) {
+      return;
+    }
+    Set<TopicPartition> assignedPartitions = kafkaConsumer.assignment();
+    Set<TopicPartition> pausedPartitions = kafkaConsumer.paused();
+    long currentTime = System.currentTimeMillis();
+    List<TopicPartition> waitingPartitions = new ArrayList<>();
+    for (Map.Entry<TopicPartition, PendingRewind> rewindEntry : new ArrayList<>(pendingRewinds.entrySet())) {
+      TopicPartition topicPartition = rewindEntry.getKey();
+      PendingRewind pendingRewind = rewindEntry.getValue();
+      if (!assignedPartitions.contains(topicPartition)) {
+        pendingRewinds.remove(topicPartition, pendingRewind);
+      } else if (currentTime < pendingRewind.dueTime) {
+        if (!pausedPartitions.contains(topicPartition)) {
+          waitingPartitions.add(topicPartition);
+        }
+      } else if (pendingRewinds.remove(topicPartition, pendingRewind)) {
+        logger.info("{} seeking back to offset {} for topic '{}' partition {}", consumerName, pendingRewind.offset, topicPartition.topic(), topicPartition.partition());
+        kafkaConsumer.seek(topicPartition, pendingRewind.offset);
+        if (pausedPartitions.contains(topicPartition)) {
+          kafkaConsumer.resume(Collections.singletonList(topicPartition));
+        }
+      }
+    }
+    if (!waitingPartitions.isEmpty()) {
+      logger.info("{} pausing partitions {} until their records are polled again", consumerName, waitingPartitions);
+      kafkaConsumer.pause(waitingPartitions);
+    }
+  }
+
+  /**
+   * Pause the partitions that have HealthCheck messages awaiting processing while the {@link #inFlightLimit} is
+   * exceeded, and resume all paused partitions once the worker threads have caught up. Paused partitions are still
+   * polled so that the consumer group membership is kept alive, but the broker returns no messages for them.
+   */
+  private void applyBackpressure() {
+    Set<TopicPartition> pausedPartitions = kafkaConsumer.paused();
+    if (inFlightLimit.isExceeded()) {
+      List<TopicPartition> busyPartitions = kafkaConsumer.assignment().stream()
+          .filter(topicPartition -> !pausedPartitions.contains(topicPartition))
+          .filter(topicPartition -> offsetTracker.getPendingCount(topicPartition) > 0)
+          .collect(Collectors.toList());
+      if (!busyPartitions.isEmpty()) {
+        logger.warn("{} has {} records ({} bytes) awaiting processing - pausing partitions {}", consumerName, inFlightLimit.getInFlightRecords(), inFlightLimit.getInFlightBytes(), busyPartitions);
+        kafkaConsumer.pause(busyPartitions);
+      }
+    } else {
+      //Partitions that are waiting to be sought back stay paused until then
+      List<TopicPartition> resumedPartitions = pausedPartitions.stream()
+          .filter(topicPartition -> !pendingRewinds.containsKey(topicPartition))
+          .collect(Collectors.toList());
+      if (!resumedPartitions.isEmpty()) {
+        logger.info("{} has caught up on processing - resuming partitions {}", consumerName, resumedPartitions);
+        kafkaConsumer.resume(resumedPartitions);
+      }
+    }
+  }
+
+  /**
+   * Determine the worker lane of a HealthCheck record in {@link ProcessingMode#KEY_ORDERED} mode.
+   * @param consumerRecord The received raw HealthCheck record.
+   * @param healthCheckHeader The deserialized header of the record, or null if it could not be deserialized.
+   * @return The index of the worker lane.
+   */
+  private int getLane(ConsumerRecord<byte[], byte[]> consumerRecord, HealthCheckHeader healthCheckHeader) {
+    //Records whose header could not be deserialized have been dead-lettered, so any lane will do
+    int laneKey = ((healthCheckHeader != null) && (healthCheckHeader.getSystemUUID() != null)) ?
+        healthCheckHeader.getSystemUUID().hashCode() :
+        consumerRecord.partition();
+    return Math.floorMod(laneKey, laneExecutors.size());
+  }
+
+  /**
+   * Process HealthCheck records that are received from the Kafka consumer. Records of partitions that are waiting to
+   * be sought back to an earlier offset are skipped, as they are polled again anyway. A batch that cannot be persisted
+   * is polled again after a backoff; once the records of a partition have failed {@link #MAX_PERSIST_ATTEMPTS} times
+   * from the same offset onwards, the batch is handed to the {@link #deadLetterQueue} instead, so that a record that
+   * can never be persisted does not hold its partition back forever.
+   * @param rawRecords The received raw HealthCheck records, for the dead-letter stage.
+   * @param consumerRecords The received HealthCheck records, in the order of the raw records.
+   */
+  private void processMessages(List<ConsumerRecord<byte[], byte[]>> rawRecords, List<ConsumerRecord<HealthCheckHeader, T>> consumerRecords) {
+    List<ConsumerRecord<HealthCheckHeader, T>> batchRecords = new ArrayList<>();
+    List<ConsumerRecord<HealthCheckHeader, T>> validRecords = new ArrayList<>();
+    List<ConsumerRecord<byte[], byte[]>> validRawRecords = new ArrayList<>();
+    boolean isPersisted = false;
+    try {
+      for (int recordIndex = 0; recordIndex < consumerRecords.size(); recordIndex++) {
+        ConsumerRecord<HealthCheckHeader, T> consumerRecord = consumerRecords.get(recordIndex);
+        PendingRewind pendingRewind = pendingRewinds.get(new TopicPartition(consumerRecord.topic(), consumerRecord.partition()));
+        if ((pendingRewind != null) && (consumerRecord.offset() >= pendingRewind.offset)) {
+          continue;
+        }
+        batchRecords.add(consumerRecord);
+        //Persist the records only if the header and the data were deserialized properly; the other records
+        //have already been handed to the dead-letter stage
+        if ((consumerRecord.key() != null) && (consumerRecord.value() != null)) {
+          logger.debug("Record received for '{}' in {}: {}", consumerRecord.topic(), consumerName, consumerRecord.value());
+          validRecords.add(consumerRecord);
+          validRawRecords.add(rawRecords.get(recordIndex));
+        }
+      }
+      //Determine the offsets that this batch advances, so that a transactional database can commit them
+      //together with the records
+      Map<TopicPartition, Long> batchOffsets = offsetTracker.peek(batchRecords);
+      isPersisted = validRecords.isEmpty() || recordPersister.persistBatch(validRecords, batchOffsets);
+    } finally {
+      Map<TopicPartition, long[]> offsetRanges = getOffsetRanges(batchRecords);
+      if (isPersisted) {
+        offsetRanges.forEach((topicPartition, offsetRange) ->
+            persistFailures.computeIfPresent(topicPartition, (failedPartition, persistFailure) ->
+                ((offsetRange[0] <= persistFailure.offset) && (persistFailure.offset <= offsetRange[1])) ? null : persistFailure
+            )
+        );
+      } else if (!batchRecords.isEmpty()) {
+        isPersisted = retryLater(offsetRanges, validRawRecords);
+      }
+      if (isPersisted) {
+        completeRecords(batchRecords);
+      }
+      //Records that are not completed are left in flight, so that they hold the offsets back until they are
+      //polled again
+      inFlightLimit.release(consumerRecords);
+    }
+  }
+
+  /**
+   * Process the HealthCheck records of a worker lane in {@link ProcessingMode#KEY_ORDERED} mode. A batch that cannot
+   * be persisted is retried within the lane after a backoff rather than polled again, so that no later records of
+   * the lane's systems are persisted ahead of it; once it has failed {@link #MAX_PERSIST_ATTEMPTS} times, it is handed
+   * to the {@link #deadLetterQueue} instead. A batch that is still being retried when the consumer stops is left in
+   * flight, so that it is polled again after a restart.
+   * @param rawRecords The received raw HealthCheck records, for the dead-letter stage.
+   * @param consumerRecords The received HealthCheck records, in the order of the raw records.
+   */
+  private void processLaneMessages(List<ConsumerRecord<byte[], byte[]>> rawRecords, List<ConsumerRecord<HealthCheckHeader, T>> consumerRecords) {
+    List<ConsumerRecord<HealthCheckHeader, T>> validRecords = new ArrayList<>();
+    List<ConsumerRecord<byte[], byte[]>> validRawRecords = new ArrayList<>();
+    boolean isProcessed = false;
+    try {
+      for (int recordIndex = 0; recordIndex < consumerRecords.size(); recordIndex++) {
+        ConsumerRecord<HealthCheckHeader, T> consumerRecord = consumerRecords.get(recordIndex);
+        //Persist the records only if the header and the data were deserialized properly; the other records
+        //have already been handed to the dead-letter stage
+        if ((consumerRecord.key() != null) && (consumerRecord.value() != null)) {
+          logger.debug("Record received for '{}' in {}: {}", consumerRecord.topic(), consumerName, consumerRecord.value());
+          validRecords.add(consumerRecord);
+          validRawRecords.add(rawRecords.get(recordIndex));
+        }
+      }
+      Map<TopicPartition, Long> batchOffsets = offsetTracker.peek(consumerRecords);
+      int attempts = 0;
+      while (!isProcessed) {
+        isProcessed = validRecords.isEmpty() || recordPersister.persistBatch(validRecords, batchOffsets);
+        if (!isProcessed) {
+          attempts++;
+          if (attempts >= MAX_PERSIST_ATTEMPTS) {
+            deadLetterRecords(validRawRecords, attempts);
+            isProcessed = true;
+          } else if (!isRunning.get()) {
+            logger.warn("{} could not persist a batch of records (attempt {} of {}) - leaving them to be polled again after a restart", consumerName, attempts, MAX_PERSIST_ATTEMPTS);
+            return;
+          } else {
+            long backoff = getPersistRetryBackoff(attempts);
+            logger.warn("{} could not persist a batch of records (attempt {} of {}) - retrying in {}ms", consumerName, attempts, MAX_PERSIST_ATTEMPTS, backoff);
+            Thread.sleep(backoff);
+          }
+        }
+      }
+    } catch (InterruptedException ie) {
+      logger.warn("{} interrupted while retrying a batch of records - leaving them to be polled again after a restart", consumerName);
+      Thread.currentThread().interrupt();
+    } finally {
+      if (isProcessed) {
+        completeRecords(consumerRecords);
+      }
+      inFlightLimit.release(consumerRecords);
+    }
+  }
 
-    //Set offsets for each topic/partition combo to the highest-encountered offset number
-    offsetsMap.forEach((partition, offset) -> {
+  /**
+   * Mark HealthCheck records as processed and set offsets for each topic/partition combo whose run of contiguous
+   * processed records has advanced. Records of the same partition that are still being processed by other threads
+   * hold the offset back, so that they are re-polled after a restart.
+   * @param consumerRecords The processed HealthCheck records.
+   */
+  private void completeRecords(List<ConsumerRecord<HealthCheckHeader, T>> consumerRecords) {
+    offsetTracker.complete(consumerRecords).forEach((partition, offset) -> {
       try {
         logger.debug("Setting offset to {} for topic '{}' partition '{}'", offset, partition.topic(), partition.partition());
         recordPersister.updateOffset(partition, offset);
@@ -224,4 +731,190 @@ public class MessageConsumerImpl<T> implements MessageConsumer {
       }
     });
   }
+
+  /**
+   * Hand the raw records of a batch that could not be persisted to the {@link #deadLetterQueue}.
+   * @param validRawRecords The raw records of the batch that were to be persisted.
+   * @param attempts The number of failed attempts at persisting the batch.
+   */
+  private void deadLetterRecords(List<ConsumerRecord<byte[], byte[]>> validRawRecords, int attempts) {
+    logger.error("{} could not persist a batch of {} records after {} attempts - dead-lettering them", consumerName, validRawRecords.size(), attempts);
+    IllegalStateException persistError = new IllegalStateException(String.format("Record could not be persisted after %d attempts", attempts));
+    validRawRecords.forEach(rawRecord -> deadLetterQueue.add(rawRecord, persistError));
+  }
+
+  /**
+   * Determine the delay before a batch of HealthCheck records that could not be persisted is attempted again.
+   * @param attempts The number of failed attempts at persisting the batch.
+   * @return The delay (in milliseconds).
+   */
+  private long getPersistRetryBackoff(int attempts) {
+    return Math.min(PERSIST_RETRY_BACKOFF << (attempts - 1), MAX_PERSIST_RETRY_BACKOFF);
+  }
+
+  /**
+   * Arrange for a batch of HealthCheck records that could not be persisted to be polled again after a backoff, unless
+   * the records of one of its partitions have failed too often, in which case the batch is dead-lettered.
+   * @param offsetRanges The lowest and highest offset of the batch's records of each topic/partition combo.
+   * @param validRawRecords The raw records of the batch that were to be persisted.
+   * @return Whether the batch was dead-lettered, so that its records count as processed.
+   */
+  private boolean retryLater(Map<TopicPartition, long[]> offsetRanges, List<ConsumerRecord<byte[], byte[]>> validRawRecords) {
+    int attempts = 0;
+    for (Map.Entry<TopicPartition, long[]> offsetRange : offsetRanges.entrySet()) {
+      long failedOffset = offsetRange.getValue()[0];
+      //A failure behind an earlier failure of the partition is not counted, as it is polled again anyway
+      PersistFailure persistFailure = persistFailures.merge(
+          offsetRange.getKey(),
+          new PersistFailure(failedOffset, 1),
+          (previousFailure, newFailure) -> (failedOffset <= previousFailure.offset) ?
+              new PersistFailure(failedOffset, previousFailure.attempts + 1) :
+              previousFailure
+      );
+      attempts = Math.max(attempts, persistFailure.attempts);
+    }
+    if (attempts >= MAX_PERSIST_ATTEMPTS) {
+      deadLetterRecords(validRawRecords, attempts);
+      offsetRanges.keySet().forEach(persistFailures::remove);
+      return true;
+    }
+    long backoff = getPersistRetryBackoff(attempts);
+    long dueTime = System.currentTimeMillis() + backoff;
+    offsetRanges.forEach((topicPartition, offsetRange) ->
+        pendingRewinds.merge(topicPartition, new PendingRewind(offsetRange[0], dueTime), PendingRewind::merge)
+    );
+    logger.warn("{} could not persist a batch of records (attempt {} of {}) - polling them again in {}ms", consumerName, attempts, MAX_PERSIST_ATTEMPTS, backoff);
+    return false;
+  }
+
+  /**
+   * Determine the lowest and highest offset of HealthCheck records for each topic/partition combo.
+   * @param consumerRecords The HealthCheck records.
+   * @return The lowest and highest offset of the records of each topic/partition combo.
+   */
+  private Map<TopicPartition, long[]> getOffsetRanges(List<ConsumerRecord<HealthCheckHeader, T>> consumerRecords) {
+    Map<TopicPartition, long[]> offsetRanges = new HashMap<>();
+    consumerRecords.forEach(consumerRecord ->
+        offsetRanges.merge(
+            new TopicPartition(consumerRecord.topic(), consumerRecord.partition()),
+            new long[]{consumerRecord.offset(), consumerRecord.offset()},
+            (offsetRange, recordRange) -> new long[]{Math.min(offsetRange[0], recordRange[0]), Math.max(offsetRange[1], recordRange[1])}
+        )
+    );
+    return offsetRanges;
+  }
+
+  // ============================ Inner Classes ============================79
+  /**
+   * Listener that keeps the stored offsets consistent when partitions move between the members of the consumer
+   * group, so that several collector instances can share the partitions of the same topics.
+   */
+  private class PartitionRebalanceListener implements ConsumerRebalanceListener {
+    /**
+     * Wait (at most {@link #brokerPollTimeout}) for the in-flight HealthCheck messages of the revoked partitions to
+     * finish processing, then persist their offsets so that the next owner of the partitions resumes where this
+     * consumer stopped.
+     * @param partitions The revoked partitions.
+     */
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+      logger.info("{} revoked partitions {}", consumerName, partitions);
+      long drainDeadline = System.currentTimeMillis() + brokerPollTimeout;
+      //Keep the poll watchdog from waking the consumer up while waiting
+      pollDeadline.getAndUpdate(deadline -> (deadline != 0L) ? Math.max(deadline, drainDeadline + brokerPollTimeout) : 0L);
+      //Records that could not be persisted are left to the next owner of their partition, so there is no point
+      //in waiting for the records of such a partition
+      partitions.forEach(persistFailures::remove);
+      Set<TopicPartition> drainedPartitions = partitions.stream()
+          .filter(topicPartition -> pendingRewinds.remove(topicPartition) == null)
+          .collect(Collectors.toSet());
+      while (drainedPartitions.stream().anyMatch(topicPartition -> offsetTracker.getPendingCount(topicPartition) > 0)) {
+        if (System.currentTimeMillis() > drainDeadline) {
+          logger.warn("{} timed out waiting for in-flight records of revoked partitions {}", consumerName, partitions);
+          break;
+        }
+        try {
+          Thread.sleep(REVOKE_CHECK_INTERVAL);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      try {
+        recordPersister.flushOffsets();
+      } catch (Exception e) {
+        logger.error("{} unable to persist offsets for revoked partitions {}: {}", consumerName, partitions, e.getMessage());
+      }
+      offsetTracker.remove(partitions);
+    }
+
+    /**
+     * Seek the newly-assigned partitions to their stored offsets.
+     * @param partitions The assigned partitions.
+     */
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+      recordPersister.getOffsets(partitions).forEach((topicPartition, topicPartitionOffset) -> {
+        logger.info("{} setting offset to {} for topic '{}' partition {}", consumerName, topicPartitionOffset, topicPartition.topic(), topicPartition.partition());
+        kafkaConsumer.seek(topicPartition, topicPartitionOffset);
+      });
+    }
+  }
+
+  /**
+   * A seek of a partition back to the first of its HealthCheck messages that could not be persisted.
+   */
+  private static class PendingRewind {
+    /**
+     * The offset to which the partition is sought back.
+     */
+    private final long offset;
+    /**
+     * The time (in milliseconds since the UNIX epoch) from which the partition is sought back.
+     */
+    private final long dueTime;
+
+    /**
+     * Pending rewind constructor.
+     * @param offset The offset to which the partition is sought back.
+     * @param dueTime The time (in milliseconds since the UNIX epoch) from which the partition is sought back.
+     */
+    PendingRewind(long offset, long dueTime) {
+      this.offset = offset;
+      this.dueTime = dueTime;
+    }
+
+    /**
+     * Merge two rewinds of the same partition.
+     * @param otherRewind The other rewind.
+     * @return The rewind to the earlier offset, which is due at the later time.
+     */
+    PendingRewind merge(PendingRewind otherRewind) {
+      return new PendingRewind(Math.min(offset, otherRewind.offset), Math.max(dueTime, otherRewind.dueTime));
+    }
+  }
+
+  /**
+   * The failed attempts at persisting the HealthCheck messages of a partition from an offset onwards.
+   */
+  private static class PersistFailure {
+    /**
+     * The offset of the first message of the failed attempts.
+     */
+    private final long offset;
+    /**
+     * The number of failed attempts.
+     */
+    private final int attempts;
+
+    /**
+     * Persist failure constructor.
+     * @param offset The offset of the first message of the failed attempts.
+     * @param attempts The number of failed attempts.
+     */
+    PersistFailure(long offset, int attempts) {
+      this.offset = offset;
+      this.attempts = attempts;
+    }
+  }
 }
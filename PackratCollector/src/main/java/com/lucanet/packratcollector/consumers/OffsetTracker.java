@@ -0,0 +1,178 @@
+package com.lucanet.packratcollector.consumers;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracker of the HealthCheck message offsets that have been handed out for processing, so that the stored offset of
+ * a {@link TopicPartition} is only ever advanced past messages that have finished processing.
+ * <p>
+ * Offsets are registered in the order they are polled and may be completed in any order; the committable offset of
+ * a partition is the offset following the highest contiguous run of completed messages.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class OffsetTracker {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * Lookup map of the in-flight offsets for each topic/partition combo.
+   */
+  private final Map<TopicPartition, PartitionOffsets> partitionOffsetsMap;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Tracker constructor.
+   */
+  public OffsetTracker() {
+    this.partitionOffsetsMap = new ConcurrentHashMap<>();
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Register polled HealthCheck messages as in-flight. This must be called from the polling thread before the
+   * messages are handed out for processing.
+   * @param records The polled HealthCheck messages.
+   */
+  public void register(Iterable<? extends ConsumerRecord<?, ?>> records) {
+    records.forEach(record ->
+        partitionOffsetsMap.computeIfAbsent(
+            new TopicPartition(record.topic(), record.partition()),
+            topicPartition -> new PartitionOffsets()
+        ).register(record.offset())
+    );
+  }
+
+  /**
+   * Mark HealthCheck messages as processed.
+   * @param records The processed HealthCheck messages.
+   * @return The new committable offset for each topic/partition combo whose committable offset advanced.
+   */
+  public Map<TopicPartition, Long> complete(Iterable<? extends ConsumerRecord<?, ?>> records) {
+    Map<TopicPartition, List<Long>> completedOffsetsMap = new HashMap<>();
+    records.forEach(record ->
+        completedOffsetsMap.computeIfAbsent(
+            new TopicPartition(record.topic(), record.partition()),
+            topicPartition -> new ArrayList<>()
+        ).add(record.offset())
+    );
+    Map<TopicPartition, Long> committableOffsetsMap = new HashMap<>();
+    completedOffsetsMap.forEach((topicPartition, completedOffsets) -> {
+      PartitionOffsets partitionOffsets = partitionOffsetsMap.get(topicPartition);
+      if (partitionOffsets != null) {
+        partitionOffsets.complete(completedOffsets).ifPresent(committableOffset ->
+            committableOffsetsMap.put(topicPartition, committableOffset)
+        );
+      }
+    });
+    return committableOffsetsMap;
+  }
+
+  /**
+   * Determine the committable offsets that completing HealthCheck messages would produce, without marking them as
+   * processed. This allows the offsets to be persisted together with the messages themselves.
+   * @param records The HealthCheck messages about to be processed.
+   * @return The committable offset for each topic/partition combo whose committable offset would advance.
+   */
+  public Map<TopicPartition, Long> peek(Iterable<? extends ConsumerRecord<?, ?>> records) {
+    Map<TopicPartition, Set<Long>> completedOffsetsMap = new HashMap<>();
+    records.forEach(record ->
+        completedOffsetsMap.computeIfAbsent(
+            new TopicPartition(record.topic(), record.partition()),
+            topicPartition -> new HashSet<>()
+        ).add(record.offset())
+    );
+    Map<TopicPartition, Long> committableOffsetsMap = new HashMap<>();
+    completedOffsetsMap.forEach((topicPartition, completedOffsets) -> {
+      PartitionOffsets partitionOffsets = partitionOffsetsMap.get(topicPartition);
+      if (partitionOffsets != null) {
+        partitionOffsets.peek(completedOffsets).ifPresent(committableOffset ->
+            committableOffsetsMap.put(topicPartition, committableOffset)
+        );
+      }
+    });
+    return committableOffsetsMap;
+  }
+
+  /**
+   * Stop tracking topic/partition combos, e.g. after they have been revoked from the consumer. Messages of these
+   * partitions that complete afterwards no longer advance any offset.
+   * @param topicPartitions The topic/partition combos to forget.
+   */
+  public void remove(Collection<TopicPartition> topicPartitions) {
+    topicPartitions.forEach(partitionOffsetsMap::remove);
+  }
+
+  /**
+   * Get the number of in-flight HealthCheck messages for a topic/partition combo.
+   * @param topicPartition The specified topic and partition.
+   * @return The number of registered messages that have not yet been committed.
+   */
+  public int getPendingCount(TopicPartition topicPartition) {
+    PartitionOffsets partitionOffsets = partitionOffsetsMap.get(topicPartition);
+    return (partitionOffsets != null) ? partitionOffsets.getPendingCount() : 0;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  // ============================ Inner Classes ============================79
+  /**
+   * The in-flight offsets of a single topic/partition combo.
+   */
+  private static class PartitionOffsets {
+    /**
+     * Registered offsets in ascending order, mapped to whether they have finished processing.
+     */
+    private final TreeMap<Long, Boolean> pendingOffsets = new TreeMap<>();
+
+    /**
+     * Register a polled offset.
+     * @param offset The polled offset.
+     */
+    synchronized void register(long offset) {
+      pendingOffsets.putIfAbsent(offset, Boolean.FALSE);
+    }
+
+    /**
+     * Mark offsets as processed and release the contiguous run of processed offsets at the head.
+     * @param completedOffsets The processed offsets.
+     * @return The offset following the released run, if any offsets were released.
+     */
+    synchronized OptionalLong complete(List<Long> completedOffsets) {
+      completedOffsets.forEach(offset -> pendingOffsets.replace(offset, Boolean.TRUE));
+      long lastReleasedOffset = -1L;
+      while ((!pendingOffsets.isEmpty()) && pendingOffsets.firstEntry().getValue()) {
+        lastReleasedOffset = pendingOffsets.pollFirstEntry().getKey();
+      }
+      return (lastReleasedOffset >= 0L) ? OptionalLong.of(lastReleasedOffset + 1) : OptionalLong.empty();
+    }
+
+    /**
+     * Determine the offset that would follow the released run if the specified offsets were processed.
+     * @param completedOffsets The offsets about to be processed.
+     * @return The offset following the run that would be released, if any offsets would be released.
+     */
+    synchronized OptionalLong peek(Set<Long> completedOffsets) {
+      long lastReleasedOffset = -1L;
+      for (Map.Entry<Long, Boolean> pendingOffset : pendingOffsets.entrySet()) {
+        if (pendingOffset.getValue() || completedOffsets.contains(pendingOffset.getKey())) {
+          lastReleasedOffset = pendingOffset.getKey();
+        } else {
+          break;
+        }
+      }
+      return (lastReleasedOffset >= 0L) ? OptionalLong.of(lastReleasedOffset + 1) : OptionalLong.empty();
+    }
+
+    /**
+     * Get the number of offsets that have not yet been released.
+     * @return The pending offset count.
+     */
+    synchronized int getPendingCount() {
+      return pendingOffsets.size();
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.lucanet.packratcollector.consumers;
+
+/**
+ * The strategies with which a {@link MessageConsumerImpl} hands polled HealthCheck messages to its worker threads.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public enum ProcessingMode {
+  /**
+   * Each polled batch of HealthCheck messages is processed as a whole by a single thread of a shared thread pool.
+   */
+  BATCH,
+  /**
+   * Each polled batch of HealthCheck messages is split into worker lanes by the system UUID of the messages. Every
+   * lane is processed by a dedicated thread, so that the HealthCheck messages of a system are persisted in order
+   * while different systems are persisted in parallel, even within a single partition.
+   */
+  KEY_ORDERED
+}
@@ -0,0 +1,227 @@
+package com.lucanet.packratcollector.deserializers;
+
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.groups.Default;
+import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.ConstraintDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Validator for {@link HealthCheckHeader} instances that checks the header's Bean Validation constraints with plain
+ * accessor calls instead of the reflective Bean Validation engine.
+ * <p>
+ * The constraints are read once from the {@link Validator}'s metadata, and the violation messages of every possible
+ * failure are rendered up front by the {@link Validator} itself, so that the reported messages are identical to
+ * those of {@link Validator#validate(Object, Class[])}. Only {@link NotNull}, {@link NotEmpty} and {@link Min}
+ * constraints on the known header properties can be compiled; {@link #compile(Validator)} yields nothing for any
+ * other constraint, in which case the Bean Validation engine must be used instead.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class CompiledHeaderValidator {
+  // =========================== Class Variables ===========================79
+  /**
+   * Accessors for the constrainable properties of a {@link HealthCheckHeader}, mapped by property name.
+   */
+  private static final Map<String, Function<HealthCheckHeader, Object>> PROPERTY_ACCESSORS;
+  /**
+   * The constraint types that can be compiled.
+   */
+  private static final Set<Class<? extends Annotation>> SUPPORTED_CONSTRAINTS = new HashSet<>(Arrays.asList(
+      NotNull.class,
+      NotEmpty.class,
+      Min.class
+  ));
+
+  static {
+    Map<String, Function<HealthCheckHeader, Object>> propertyAccessors = new HashMap<>();
+    propertyAccessors.put("serialId", HealthCheckHeader::getSerialId);
+    propertyAccessors.put("systemUUID", HealthCheckHeader::getSystemUUID);
+    propertyAccessors.put("sessionTimestamp", HealthCheckHeader::getSessionTimestamp);
+    propertyAccessors.put("healthCheckTimestamp", HealthCheckHeader::getHealthCheckTimestamp);
+    propertyAccessors.put("version", HealthCheckHeader::getVersion);
+    PROPERTY_ACCESSORS = Collections.unmodifiableMap(propertyAccessors);
+  }
+
+  // ============================ Class Methods ============================79
+  /**
+   * Compile the constraints of {@link HealthCheckHeader} as known to a {@link Validator}.
+   * @param validator The Bean Validation validator.
+   * @return The compiled validator, or nothing if the header has constraints that cannot be compiled.
+   */
+  public static Optional<CompiledHeaderValidator> compile(Validator validator) {
+    BeanDescriptor beanDescriptor = validator.getConstraintsForClass(HealthCheckHeader.class);
+    if (!beanDescriptor.getConstraintDescriptors().isEmpty()) {
+      return Optional.empty();
+    }
+    List<PropertyCheck> propertyChecks = new ArrayList<>();
+    for (PropertyDescriptor propertyDescriptor : beanDescriptor.getConstrainedProperties()) {
+      Function<HealthCheckHeader, Object> accessor = PROPERTY_ACCESSORS.get(propertyDescriptor.getPropertyName());
+      if ((accessor == null) || propertyDescriptor.isCascaded()) {
+        return Optional.empty();
+      }
+      boolean notEmpty = false;
+      Long min = null;
+      for (ConstraintDescriptor<?> constraintDescriptor : propertyDescriptor.getConstraintDescriptors()) {
+        Annotation constraint = constraintDescriptor.getAnnotation();
+        if (!SUPPORTED_CONSTRAINTS.contains(constraint.annotationType()) || !constraintDescriptor.getGroups().contains(Default.class)) {
+          return Optional.empty();
+        } else if (constraint instanceof NotEmpty) {
+          notEmpty = true;
+        } else if (constraint instanceof Min) {
+          min = (min == null) ? ((Min) constraint).value() : Math.max(min, ((Min) constraint).value());
+        }
+      }
+      Class<?> propertyClass = propertyDescriptor.getElementClass();
+      if ((notEmpty && (propertyClass != String.class)) || ((min != null) && (propertyClass != Integer.class) && (propertyClass != Long.class))) {
+        return Optional.empty();
+      }
+      String propertyName = propertyDescriptor.getPropertyName();
+      propertyChecks.add(new PropertyCheck(
+          accessor,
+          notEmpty,
+          min,
+          renderViolations(validator, propertyName, null),
+          notEmpty ? renderViolations(validator, propertyName, "") : Collections.emptyList(),
+          (min != null) ? renderViolations(validator, propertyName, (propertyClass == Integer.class) ? (Object) (int) (min - 1) : (Object) (min - 1)) : Collections.emptyList()
+      ));
+    }
+    return Optional.of(new CompiledHeaderValidator(propertyChecks));
+  }
+
+  /**
+   * Render the violation messages that the {@link Validator} reports for a property value.
+   * @param validator The Bean Validation validator.
+   * @param propertyName The name of the header property.
+   * @param value The property value.
+   * @return The violation messages in the form "property: message".
+   */
+  private static List<String> renderViolations(Validator validator, String propertyName, Object value) {
+    Set<ConstraintViolation<HealthCheckHeader>> violations = validator.validateValue(HealthCheckHeader.class, propertyName, value);
+    return Collections.unmodifiableList(
+        violations.stream()
+            .map(violation -> String.format("%s: %s", violation.getPropertyPath(), violation.getMessage()))
+            .collect(Collectors.toList())
+    );
+  }
+
+  // ============================   Variables    ===========================79
+  /**
+   * The checks of the constrained header properties.
+   */
+  private final List<PropertyCheck> propertyChecks;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Validator constructor.
+   * @param propertyChecks The checks of the constrained header properties.
+   */
+  private CompiledHeaderValidator(List<PropertyCheck> propertyChecks) {
+    this.propertyChecks = propertyChecks;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Validate a HealthCheck header. A valid header is checked without any allocation.
+   * @param healthCheckHeader The HealthCheck header.
+   * @return The violation messages in the form "property: message", or an empty list if the header is valid.
+   */
+  public List<String> validate(HealthCheckHeader healthCheckHeader) {
+    List<String> violations = Collections.emptyList();
+    for (int checkIndex = 0; checkIndex < propertyChecks.size(); checkIndex++) {
+      List<String> propertyViolations = propertyChecks.get(checkIndex).check(healthCheckHeader);
+      if (!propertyViolations.isEmpty()) {
+        if (violations.isEmpty()) {
+          violations = new ArrayList<>();
+        }
+        violations.addAll(propertyViolations);
+      }
+    }
+    return violations;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  // ============================ Inner Classes ============================79
+  /**
+   * The compiled constraints of a single header property, together with the pre-rendered violation messages for
+   * each way in which the constraints can fail.
+   */
+  private static class PropertyCheck {
+    /**
+     * Accessor for the property value.
+     */
+    private final Function<HealthCheckHeader, Object> accessor;
+    /**
+     * Whether the (String) property must not be empty.
+     */
+    private final boolean notEmpty;
+    /**
+     * The minimum value of the (numeric) property, or null if unbounded.
+     */
+    private final Long min;
+    /**
+     * The violation messages for a null value (empty if the property may be null).
+     */
+    private final List<String> nullViolations;
+    /**
+     * The violation messages for an empty value.
+     */
+    private final List<String> emptyViolations;
+    /**
+     * The violation messages for a value below {@link #min}.
+     */
+    private final List<String> belowMinViolations;
+
+    /**
+     * Property check constructor.
+     * @param accessor Accessor for the property value.
+     * @param notEmpty Whether the (String) property must not be empty.
+     * @param min The minimum value of the (numeric) property, or null if unbounded.
+     * @param nullViolations The violation messages for a null value.
+     * @param emptyViolations The violation messages for an empty value.
+     * @param belowMinViolations The violation messages for a value below the minimum.
+     */
+    PropertyCheck(
+        Function<HealthCheckHeader, Object> accessor,
+        boolean notEmpty,
+        Long min,
+        List<String> nullViolations,
+        List<String> emptyViolations,
+        List<String> belowMinViolations
+    ) {
+      this.accessor = accessor;
+      this.notEmpty = notEmpty;
+      this.min = min;
+      this.nullViolations = nullViolations;
+      this.emptyViolations = emptyViolations;
+      this.belowMinViolations = belowMinViolations;
+    }
+
+    /**
+     * Check the property of a HealthCheck header.
+     * @param healthCheckHeader The HealthCheck header.
+     * @return The violation messages of the property, or an empty list if the property is valid.
+     */
+    List<String> check(HealthCheckHeader healthCheckHeader) {
+      Object value = accessor.apply(healthCheckHeader);
+      if (value == null) {
+        return nullViolations;
+      } else if (notEmpty && ((String) value).isEmpty()) {
+        return emptyViolations;
+      } else if ((min != null) && (((Number) value).longValue() < min)) {
+        return belowMinViolations;
+      }
+      return Collections.emptyList();
+    }
+  }
+}
@@ -1,45 +1,33 @@
 package com.lucanet.packratcollector.deserializers;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lucanet.packratcommon.model.FileLines;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 /**
- * Implementation of {@link Deserializer} for processing HealthCheck message file data
+ * Implementation of {@link HealthCheckDeserializer} for processing HealthCheck message file data. The lines are not decoded
+ * here; the resulting {@link FileLines} decodes them in bounded chunks as they are persisted. Data compressed in any
+ * of the {@link PayloadCompression} formats is kept compressed and decompressed as a stream whenever it is read.
  * @see Deserializer
  * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
  */
-public class FileLinesDeserializer implements Deserializer<List<String>> {
+public class FileLinesDeserializer implements HealthCheckDeserializer<FileLines> {
   // =========================== Class Variables ===========================79
   // ============================ Class Methods ============================79
   // ============================   Variables    ===========================79
   /**
-   * Logger for the FileLinesDeserializer instance.
+   * The maximum size (in bytes) of the raw data of a single chunk of lines.
    */
-  private final Logger logger;
-  /**
-   * Mapper that will translate raw byte data to a list of strings.
-   */
-  private final ObjectMapper objectMapper;
-  /**
-   * Type reference for the {@link #objectMapper} to translate the raw byte data.
-   */
-  private final TypeReference<ArrayList<String>> typeReference;
+  private final int chunkMaxBytes;
 
   // ============================  Constructors  ===========================79
   /**
    * Deserializer constructor.
    */
   public FileLinesDeserializer() {
-    logger = LoggerFactory.getLogger(FileLinesDeserializer.class);
-    objectMapper = new ObjectMapper();
-    typeReference = new TypeReference<ArrayList<String>>() {};
+    chunkMaxBytes = FileLines.DEFAULT_CHUNK_MAX_BYTES;
   }
 
   // ============================ Public Methods ===========================79
@@ -54,23 +42,30 @@ public class FileLinesDeserializer implements Deserializer<List<String>> {
   }
 
   /**
-   * Deserialize the raw byte data into a list of strings.
+   * Deserialize the raw (possibly compressed) byte data into the lines of a file. The data is checked to be a
+   * non-empty JSON array of lines in a single streaming pass, without decoding the lines. A file without lines ("[]")
+   * is rejected, as it always has been, so that its message is dead-lettered instead of stored.
    * @param topic The topic that the raw HealthCheck data belongs to.
    * @param data The raw HealthCheck data.
-   * @return The file data represented by a list of strings.
+   * @return The file data represented by {@link FileLines}.
+   * @throws SerializationException Signifies that the data is missing, malformed or a file without lines.
    */
   @Override
-  public List<String> deserialize(String topic, byte[] data) {
-    List<String> deserializedList = null;
-    if ((data != null) && (data.length > 0)) { //Only attempt to deserialize if data is a non-empty byte array
-      try {
-        List<String> fileLines = objectMapper.readValue(data, typeReference);
-        if (!fileLines.isEmpty()) {
-          deserializedList = fileLines;
-        }
-      } catch (Exception e) {
-        logger.error(String.format("Error parsing value for '%s':", topic), e);
-      }
+  public FileLines deserializeOrReject(String topic, byte[] data) throws SerializationException {
+    if ((data == null) || (data.length == 0)) {
+      throw new SerializationException(String.format("No data for '%s'", topic));
+    }
+    FileLines deserializedList;
+    try {
+      PayloadCompression compression = PayloadCompression.detect(data);
+      deserializedList = (compression == PayloadCompression.NONE) ?
+          FileLines.read(data, chunkMaxBytes) :
+          FileLines.read(() -> compression.openStream(data), data.length, chunkMaxBytes);
+    } catch (Exception e) {
+      throw new SerializationException(String.format("Error parsing value for '%s': %s", topic, e.getMessage()), e);
+    }
+    if (deserializedList == null) {
+      throw new SerializationException(String.format("Empty value for '%s'", topic));
     }
     return deserializedList;
   }
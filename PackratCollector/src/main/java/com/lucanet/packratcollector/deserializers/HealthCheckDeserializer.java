@@ -0,0 +1,41 @@
+package com.lucanet.packratcollector.deserializers;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Interface for the {@link Deserializer} implementations of HealthCheck message data, which report why they reject
+ * raw data instead of merely returning null.
+ * @param <T> The type of the deserialized data.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public interface HealthCheckDeserializer<T> extends Deserializer<T> {
+  // ========================= Interface Variables =========================79
+  // ============================ Public Methods ===========================79
+  /**
+   * Deserialize raw HealthCheck message data.
+   * @param topic The topic that the raw data belongs to.
+   * @param data The raw data.
+   * @return The deserialized data; never null.
+   * @throws SerializationException Signifies that the data is missing, malformed or violates constraints. The cause
+   * (if any) is the underlying parsing error.
+   */
+  T deserializeOrReject(String topic, byte[] data) throws SerializationException;
+
+  // =========================== Default Methods ===========================79
+  /**
+   * Deserialize raw HealthCheck message data, returning null for rejected data.
+   * @param topic The topic that the raw data belongs to.
+   * @param data The raw data.
+   * @return The deserialized data, or null if the data was rejected.
+   * @see #deserializeOrReject(String, byte[])
+   */
+  @Override
+  default T deserialize(String topic, byte[] data) {
+    try {
+      return deserializeOrReject(topic, data);
+    } catch (SerializationException se) {
+      return null;
+    }
+  }
+}
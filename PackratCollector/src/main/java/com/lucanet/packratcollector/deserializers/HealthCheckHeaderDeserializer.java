@@ -1,26 +1,28 @@
 package com.lucanet.packratcollector.deserializers;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.validation.ConstraintViolation;
 import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Implementation of {@link Deserializer} for processing HealthCheck message header data.
+ * Implementation of {@link HealthCheckDeserializer} for processing HealthCheck message header data.
  * @see Deserializer
  * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
  */
-public class HealthCheckHeaderDeserializer implements Deserializer<HealthCheckHeader> {
+public class HealthCheckHeaderDeserializer implements HealthCheckDeserializer<HealthCheckHeader> {
   // =========================== Class Variables ===========================79
   // ============================ Class Methods ============================79
   // ============================   Variables    ===========================79
@@ -29,13 +31,18 @@ public class HealthCheckHeaderDeserializer implements Deserializer<HealthCheckHe
    */
   private final Logger logger;
   /**
-   * Mapper that will translate raw byte data to a {@link HealthCheckHeader}.
+   * Factory for the parsers that read the raw header data.
    */
-  private final ObjectMapper objectMapper;
+  private final JsonFactory jsonFactory;
   /**
    * Validator for ensuring properly-formatted HealthCheckHeader instances
    */
   private final Validator validator;
+  /**
+   * Fast path for checking the constraints of HealthCheckHeader instances, or null if the constraints could not be
+   * compiled and the {@link #validator} must be used.
+   */
+  private final CompiledHeaderValidator compiledValidator;
 
   // ============================  Constructors  ===========================79
   /**
@@ -43,9 +50,13 @@ public class HealthCheckHeaderDeserializer implements Deserializer<HealthCheckHe
    */
   public HealthCheckHeaderDeserializer() {
     logger = LoggerFactory.getLogger(HealthCheckHeaderDeserializer.class);
-    objectMapper = new ObjectMapper();
+    jsonFactory = new JsonFactory();
     ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
     this.validator = validatorFactory.getValidator();
+    this.compiledValidator = CompiledHeaderValidator.compile(validator).orElse(null);
+    if (compiledValidator == null) {
+      logger.info("HealthCheckHeader has custom constraints - using Bean Validation for every header");
+    }
   }
 
   // ============================ Public Methods ===========================79
@@ -64,27 +75,25 @@ public class HealthCheckHeaderDeserializer implements Deserializer<HealthCheckHe
    * @param topic The topic that the raw HealthCheck header data belongs to.
    * @param data The raw HealthCheck header data.
    * @return The HealthCheck header data represented by a {@link HealthCheckHeader}.
+   * @throws SerializationException Signifies that the header is missing, malformed or violates its constraints.
    */
   @Override
-  public HealthCheckHeader deserialize(String topic, byte[] data) {
-    HealthCheckHeader deserializedHeader = null;
-    if ((data != null) && (data.length > 0)) { //Only attempt to deserialize if data is a non-empty byte array
-      try {
-        HealthCheckHeader healthCheckHeader = objectMapper.readValue(data, HealthCheckHeader.class);
-        Set<ConstraintViolation<HealthCheckHeader>> violations = validator.validate(healthCheckHeader);
-        if (violations.isEmpty()) {
-          deserializedHeader = healthCheckHeader;
-        } else {
-          String violationsStr = violations.stream()
-              .map(violation -> String.format("%s: %s", violation.getPropertyPath(), violation.getMessage()))
-              .collect(Collectors.joining("; "));
-          logger.warn("Constraint violations for deserializing HealthCheckHeader: {}", violationsStr);
-        }
-      } catch (Exception e) {
-        logger.error("Error deserializing HealthCheckHeader:", e);
-      }
+  public HealthCheckHeader deserializeOrReject(String topic, byte[] data) throws SerializationException {
+    if ((data == null) || (data.length == 0)) {
+      throw new SerializationException(String.format("No header for '%s'", topic));
+    }
+    HealthCheckHeader healthCheckHeader;
+    List<String> violations;
+    try {
+      healthCheckHeader = parseHeader(data);
+      violations = validate(healthCheckHeader);
+    } catch (Exception e) {
+      throw new SerializationException(String.format("Error parsing header for '%s': %s", topic, e.getMessage()), e);
     }
-    return deserializedHeader;
+    if (!violations.isEmpty()) {
+      throw new SerializationException(String.format("Constraint violations for header of '%s': %s", topic, String.join("; ", violations)));
+    }
+    return healthCheckHeader;
   }
 
   /**
@@ -97,4 +106,111 @@ public class HealthCheckHeaderDeserializer implements Deserializer<HealthCheckHe
 
   // ========================== Protected Methods ==========================79
   // =========================== Private Methods ===========================79
+  /**
+   * Parse raw JSON header data into a {@link HealthCheckHeader} with a single streaming pass, rather than binding it
+   * through an ObjectMapper.
+   * @param data The raw JSON header data.
+   * @return The parsed HealthCheckHeader.
+   * @throws IllegalArgumentException Signifies that the raw header data is malformed.
+   */
+  private HealthCheckHeader parseHeader(byte[] data) throws IllegalArgumentException {
+    try (JsonParser jsonParser = jsonFactory.createParser(data)) {
+      HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+      if (jsonParser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException("HealthCheckHeader data is not a JSON object");
+      }
+      for (JsonToken token = jsonParser.nextToken(); token != JsonToken.END_OBJECT; token = jsonParser.nextToken()) {
+        if (token != JsonToken.FIELD_NAME) {
+          throw new IllegalArgumentException(String.format("Unexpected token %s in HealthCheckHeader data", token));
+        }
+        String fieldName = jsonParser.getCurrentName();
+        JsonToken valueToken = jsonParser.nextToken();
+        switch (fieldName) {
+          case "serialId":
+            healthCheckHeader.setSerialId(readString(jsonParser, valueToken));
+            break;
+          case "systemUUID":
+            healthCheckHeader.setSystemUUID(readString(jsonParser, valueToken));
+            break;
+          case "sessionTimestamp":
+            healthCheckHeader.setSessionTimestamp((valueToken != JsonToken.VALUE_NULL) ? readLong(jsonParser, valueToken) : null);
+            break;
+          case "healthCheckTimestamp":
+            healthCheckHeader.setHealthCheckTimestamp((valueToken != JsonToken.VALUE_NULL) ? readLong(jsonParser, valueToken) : null);
+            break;
+          case "version":
+            if (valueToken != JsonToken.VALUE_NULL) {
+              long versionValue = readLong(jsonParser, valueToken);
+              if ((versionValue < Integer.MIN_VALUE) || (versionValue > Integer.MAX_VALUE)) {
+                throw new IllegalArgumentException(String.format("HealthCheckHeader version %d is out of range", versionValue));
+              }
+              healthCheckHeader.setVersion((int) versionValue);
+            }
+            break;
+          case "uniqueId":
+            //Derived property - ignored
+            jsonParser.skipChildren();
+            break;
+          default:
+            throw new IllegalArgumentException(String.format("Unrecognized field '%s' in HealthCheckHeader data", fieldName));
+        }
+      }
+      return healthCheckHeader;
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException(String.format("Malformed HealthCheckHeader data: %s", ioe.getMessage()), ioe);
+    }
+  }
+
+  /**
+   * Read a textual header property. Scalar values of other types are taken as their textual representation.
+   * @param jsonParser The parser, positioned on the value.
+   * @param valueToken The token of the value.
+   * @return The textual value, or null for a JSON null.
+   * @throws IOException Signifies malformed JSON data.
+   */
+  private String readString(JsonParser jsonParser, JsonToken valueToken) throws IOException {
+    if (valueToken == JsonToken.VALUE_NULL) {
+      return null;
+    } else if (!valueToken.isScalarValue()) {
+      throw new IllegalArgumentException(String.format("Expected a textual value in HealthCheckHeader data, but found %s", valueToken));
+    }
+    return jsonParser.getText();
+  }
+
+  /**
+   * Read a numeric header property. Numeric strings are accepted as well.
+   * @param jsonParser The parser, positioned on the value.
+   * @param valueToken The token of the value.
+   * @return The numeric value.
+   * @throws IOException Signifies malformed JSON data.
+   */
+  private long readLong(JsonParser jsonParser, JsonToken valueToken) throws IOException {
+    switch (valueToken) {
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return jsonParser.getLongValue();
+      case VALUE_STRING:
+        try {
+          return Long.parseLong(jsonParser.getText().trim());
+        } catch (NumberFormatException nfe) {
+          throw new IllegalArgumentException(String.format("Expected a numeric value in HealthCheckHeader data, but found '%s'", jsonParser.getText()), nfe);
+        }
+      default:
+        throw new IllegalArgumentException(String.format("Expected a numeric value in HealthCheckHeader data, but found %s", valueToken));
+    }
+  }
+
+  /**
+   * Check the constraints of a HealthCheckHeader, using the {@link #compiledValidator} if available.
+   * @param healthCheckHeader The deserialized HealthCheckHeader.
+   * @return The constraint violations in the form "property: message", or an empty list if the header is valid.
+   */
+  private List<String> validate(HealthCheckHeader healthCheckHeader) {
+    if (compiledValidator != null) {
+      return compiledValidator.validate(healthCheckHeader);
+    }
+    return validator.validate(healthCheckHeader).stream()
+        .map(violation -> String.format("%s: %s", violation.getPropertyPath(), violation.getMessage()))
+        .collect(Collectors.toList());
+  }
 }
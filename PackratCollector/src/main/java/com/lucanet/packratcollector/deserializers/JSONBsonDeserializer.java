@@ -0,0 +1,185 @@
+package com.lucanet.packratcollector.deserializers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonWriter;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.Decimal128;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Implementation of {@link HealthCheckDeserializer} for processing HealthCheck message JSON data directly into BSON.
+ * <p>
+ * The JSON tokens are streamed from a {@link JsonParser} straight into a {@link BsonBinaryWriter}, so that no
+ * intermediate object tree is built and the resulting {@link RawBsonDocument} is persisted without being encoded
+ * again. Data compressed in any of the {@link PayloadCompression} formats is decompressed as a stream while it is
+ * parsed.
+ * @see Deserializer
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class JSONBsonDeserializer implements HealthCheckDeserializer<RawBsonDocument> {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * Factory for the parsers that read the raw byte data.
+   */
+  private final JsonFactory jsonFactory;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Deserializer constructor.
+   */
+  public JSONBsonDeserializer() {
+    jsonFactory = new JsonFactory();
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Configure the deserializer. Currently, this method is not used.
+   * @param configs Configs in key/value pairs.
+   * @param isKey Whether is for key or value.
+   */
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    //No-Op
+  }
+
+  /**
+   * Deserialize the raw byte data into a BSON document. Only non-empty JSON objects are accepted.
+   * @param topic The topic that the raw HealthCheck data belongs to.
+   * @param data The raw HealthCheck data.
+   * @return The JSON data represented by a {@link RawBsonDocument}.
+   * @throws SerializationException Signifies that the data is missing, malformed or an empty JSON object.
+   */
+  @Override
+  public RawBsonDocument deserializeOrReject(String topic, byte[] data) throws SerializationException {
+    if ((data == null) || (data.length == 0)) {
+      throw new SerializationException(String.format("No data for '%s'", topic));
+    }
+    PayloadCompression compression = PayloadCompression.detect(data);
+    try (JsonParser jsonParser = (compression == PayloadCompression.NONE) ? jsonFactory.createParser(data) : jsonFactory.createParser(compression.openStream(data))) {
+      if (jsonParser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException(String.format("Expected a JSON object, but found %s", jsonParser.getCurrentToken()));
+      }
+      if (jsonParser.nextToken() == JsonToken.END_OBJECT) {
+        throw new SerializationException(String.format("Empty value for '%s'", topic));
+      }
+      BasicOutputBuffer outputBuffer = new BasicOutputBuffer(data.length);
+      try (BsonBinaryWriter bsonWriter = new BsonBinaryWriter(outputBuffer)) {
+        bsonWriter.writeStartDocument();
+        transcodeFields(jsonParser, bsonWriter);
+        bsonWriter.writeEndDocument();
+      }
+      return new RawBsonDocument(outputBuffer.getInternalBuffer(), 0, outputBuffer.getPosition());
+    } catch (SerializationException se) {
+      throw se;
+    } catch (Exception e) {
+      throw new SerializationException(String.format("Error parsing value for '%s': %s", topic, e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Shut down the deserializer. Currently, this method is not used.
+   */
+  @Override
+  public void close() {
+    //No-Op
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Write the fields of a JSON object until its closing brace.
+   * @param jsonParser The parser, positioned on the first field name of the object.
+   * @param bsonWriter The writer of the enclosing BSON document.
+   * @throws IOException Signifies malformed JSON data.
+   */
+  private void transcodeFields(JsonParser jsonParser, BsonWriter bsonWriter) throws IOException {
+    for (JsonToken token = jsonParser.getCurrentToken(); token != JsonToken.END_OBJECT; token = jsonParser.nextToken()) {
+      if (token != JsonToken.FIELD_NAME) {
+        throw new IOException(String.format("Expected a field name, but found %s", token));
+      }
+      bsonWriter.writeName(jsonParser.getCurrentName());
+      transcodeValue(jsonParser, jsonParser.nextToken(), bsonWriter);
+    }
+  }
+
+  /**
+   * Write a single JSON value, including any nested objects and arrays.
+   * @param jsonParser The parser, positioned on the value.
+   * @param token The token of the value.
+   * @param bsonWriter The writer of the enclosing BSON document or array.
+   * @throws IOException Signifies malformed JSON data.
+   */
+  private void transcodeValue(JsonParser jsonParser, JsonToken token, BsonWriter bsonWriter) throws IOException {
+    if (token == null) {
+      throw new IOException("Unexpected end of JSON data");
+    }
+    switch (token) {
+      case START_OBJECT:
+        bsonWriter.writeStartDocument();
+        jsonParser.nextToken();
+        transcodeFields(jsonParser, bsonWriter);
+        bsonWriter.writeEndDocument();
+        break;
+      case START_ARRAY:
+        bsonWriter.writeStartArray();
+        for (JsonToken elementToken = jsonParser.nextToken(); elementToken != JsonToken.END_ARRAY; elementToken = jsonParser.nextToken()) {
+          transcodeValue(jsonParser, elementToken, bsonWriter);
+        }
+        bsonWriter.writeEndArray();
+        break;
+      case VALUE_STRING:
+        bsonWriter.writeString(jsonParser.getText());
+        break;
+      case VALUE_NUMBER_INT:
+        switch (jsonParser.getNumberType()) {
+          case INT:
+            bsonWriter.writeInt32(jsonParser.getIntValue());
+            break;
+          case LONG:
+            bsonWriter.writeInt64(jsonParser.getLongValue());
+            break;
+          default:
+            writeBigNumber(new BigDecimal(jsonParser.getBigIntegerValue()), bsonWriter);
+        }
+        break;
+      case VALUE_NUMBER_FLOAT:
+        bsonWriter.writeDouble(jsonParser.getDoubleValue());
+        break;
+      case VALUE_TRUE:
+        bsonWriter.writeBoolean(true);
+        break;
+      case VALUE_FALSE:
+        bsonWriter.writeBoolean(false);
+        break;
+      case VALUE_NULL:
+        bsonWriter.writeNull();
+        break;
+      default:
+        throw new IOException(String.format("Unexpected JSON token %s", token));
+    }
+  }
+
+  /**
+   * Write an integer that does not fit into 64 bits, as a Decimal128 if possible and as a double otherwise.
+   * @param value The integer value.
+   * @param bsonWriter The writer of the enclosing BSON document or array.
+   */
+  private void writeBigNumber(BigDecimal value, BsonWriter bsonWriter) {
+    try {
+      bsonWriter.writeDecimal128(new Decimal128(value));
+    } catch (NumberFormatException nfe) {
+      bsonWriter.writeDouble(value.doubleValue());
+    }
+  }
+}
@@ -3,26 +3,23 @@ package com.lucanet.packratcollector.deserializers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Implementation of {@link Deserializer} for processing HealthCheck message JSON data.
+ * Implementation of {@link HealthCheckDeserializer} for processing HealthCheck message JSON data. Data compressed in any of the
+ * {@link PayloadCompression} formats is decompressed as a stream while it is parsed.
  * @see Deserializer
  * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
  */
-public class JSONDeserializer implements Deserializer<Map<String, Object>> {
+public class JSONDeserializer implements HealthCheckDeserializer<Map<String, Object>> {
   // =========================== Class Variables ===========================79
   // ============================ Class Methods ============================79
   // ============================   Variables    ===========================79
-  /**
-   * Logger for the JSONDeserializer instance.
-   */
-  private final Logger logger;
   /**
    * Mapper that will translate raw byte data to a map of objects.
    */
@@ -37,7 +34,6 @@ public class JSONDeserializer implements Deserializer<Map<String, Object>> {
    * Deserializer constructor.
    */
   public JSONDeserializer() {
-    logger = LoggerFactory.getLogger(JSONDeserializer.class);
     objectMapper = new ObjectMapper();
     typeReference = new TypeReference<HashMap<String, Object>>() { };
   }
@@ -54,25 +50,34 @@ public class JSONDeserializer implements Deserializer<Map<String, Object>> {
   }
 
   /**
-   * Deserialize the raw byte data into a map of objects.
+   * Deserialize the raw byte data into a map of objects. Only non-empty JSON objects are accepted.
    * @param topic The topic that the raw HealthCheck data belongs to.
    * @param data The raw HealthCheck data.
    * @return The JSON data represented by a map of objects.
+   * @throws SerializationException Signifies that the data is missing, malformed or an empty JSON object.
    */
   @Override
-  public Map<String, Object> deserialize(String topic, byte[] data) {
-    Map<String, Object> deserializedJSON = null;
-    if ((data != null) && (data.length > 0)) { //Only attempt to deserialize if data is a non-empty byte array
-      try {
-        Map<String, Object> deserializedData = objectMapper.readValue(data, typeReference);
-        if (!deserializedData.isEmpty()) {
-          deserializedJSON = deserializedData;
+  public Map<String, Object> deserializeOrReject(String topic, byte[] data) throws SerializationException {
+    if ((data == null) || (data.length == 0)) {
+      throw new SerializationException(String.format("No data for '%s'", topic));
+    }
+    Map<String, Object> deserializedData;
+    try {
+      PayloadCompression compression = PayloadCompression.detect(data);
+      if (compression == PayloadCompression.NONE) {
+        deserializedData = objectMapper.readValue(data, typeReference);
+      } else {
+        try (InputStream decompressedStream = compression.openStream(data)) {
+          deserializedData = objectMapper.readValue(decompressedStream, typeReference);
         }
-      } catch (Exception e) {
-        logger.error(String.format("Error parsing value for '%s':", topic), e);
       }
+    } catch (Exception e) {
+      throw new SerializationException(String.format("Error parsing value for '%s': %s", topic, e.getMessage()), e);
+    }
+    if (deserializedData.isEmpty()) {
+      throw new SerializationException(String.format("Empty value for '%s'", topic));
     }
-    return deserializedJSON;
+    return deserializedData;
   }
 
   /**
@@ -0,0 +1,132 @@
+package com.lucanet.packratcollector.deserializers;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+import org.xerial.snappy.SnappyFramedInputStream;
+import org.xerial.snappy.SnappyInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Enumeration of the compression formats of HealthCheck message data. A format is recognized by the magic bytes at
+ * the start of the data, none of which can start a JSON document.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public enum PayloadCompression {
+  /**
+   * Uncompressed data.
+   */
+  NONE(new byte[0]) {
+    @Override
+    protected InputStream decompress(InputStream compressedStream) {
+      return compressedStream;
+    }
+  },
+  /**
+   * Data compressed in the gzip format.
+   */
+  GZIP(new byte[]{0x1f, (byte) 0x8b}) {
+    @Override
+    protected InputStream decompress(InputStream compressedStream) throws IOException {
+      return new GZIPInputStream(compressedStream);
+    }
+  },
+  /**
+   * Data compressed in the LZ4 frame format.
+   */
+  LZ4(new byte[]{0x04, 0x22, 0x4d, 0x18}) {
+    @Override
+    protected InputStream decompress(InputStream compressedStream) throws IOException {
+      return new LZ4FrameInputStream(compressedStream);
+    }
+  },
+  /**
+   * Data compressed in the stream format of snappy-java.
+   */
+  SNAPPY(new byte[]{(byte) 0x82, 'S', 'N', 'A', 'P', 'P', 'Y', 0}) {
+    @Override
+    protected InputStream decompress(InputStream compressedStream) throws IOException {
+      return new SnappyInputStream(compressedStream);
+    }
+  },
+  /**
+   * Data compressed in the Snappy framing format.
+   */
+  SNAPPY_FRAMED(new byte[]{(byte) 0xff, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y'}) {
+    @Override
+    protected InputStream decompress(InputStream compressedStream) throws IOException {
+      return new SnappyFramedInputStream(compressedStream);
+    }
+  };
+
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  /**
+   * Detect the compression format of HealthCheck message data.
+   * @param data The raw HealthCheck data.
+   * @return The compression format, or {@link #NONE} if the data does not start with the magic bytes of any format.
+   */
+  public static PayloadCompression detect(byte[] data) {
+    for (PayloadCompression compression : values()) {
+      if ((compression != NONE) && compression.matches(data)) {
+        return compression;
+      }
+    }
+    return NONE;
+  }
+
+  // ============================   Variables    ===========================79
+  /**
+   * The magic bytes at the start of data in this format.
+   */
+  private final byte[] magicBytes;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Compression format constructor.
+   * @param magicBytes The magic bytes at the start of data in this format.
+   */
+  PayloadCompression(byte[] magicBytes) {
+    this.magicBytes = magicBytes;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Open a stream that decompresses data in this format while it is read.
+   * @param data The raw HealthCheck data.
+   * @return The stream of the decompressed data.
+   * @throws IOException Signifies that the data is not in this format.
+   */
+  public InputStream openStream(byte[] data) throws IOException {
+    return decompress(new ByteArrayInputStream(data));
+  }
+
+  // ========================== Protected Methods ==========================79
+  /**
+   * Wrap a stream of data in this format with a decompressing stream.
+   * @param compressedStream The stream of the compressed data.
+   * @return The stream of the decompressed data.
+   * @throws IOException Signifies that the data is not in this format.
+   */
+  protected abstract InputStream decompress(InputStream compressedStream) throws IOException;
+
+  // =========================== Private Methods ===========================79
+  /**
+   * Determine whether data starts with the magic bytes of this format.
+   * @param data The raw HealthCheck data.
+   * @return Whether the data is in this format.
+   */
+  private boolean matches(byte[] data) {
+    if (data.length < magicBytes.length) {
+      return false;
+    }
+    for (int byteIndex = 0; byteIndex < magicBytes.length; byteIndex++) {
+      if (data[byteIndex] != magicBytes[byteIndex]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
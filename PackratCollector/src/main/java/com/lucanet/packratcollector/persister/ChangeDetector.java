@@ -0,0 +1,249 @@
+package com.lucanet.packratcollector.persister;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.bson.RawBsonDocument;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Detector of unchanged HealthCheck data for the HealthCheck types that are stored on change.
+ * <p>
+ * For every computer, the detector remembers the hash of the data of the last stored HealthCheck of each of these
+ * types, together with that HealthCheck's metadata. A later HealthCheck of the same session with identical data
+ * need not be stored; the stored record's validity is extended to it instead. The remembered hashes are kept in a
+ * bounded cache that evicts the least recently used computers first; an evicted computer simply has its next
+ * HealthCheck stored again.
+ * <p>
+ * A remembered HealthCheck is pending until its write has been {@link #markStored confirmed}. Its record cannot be
+ * found in the database before then, so validity extensions for it are {@link #deferValidity deferred} and handed
+ * back once the write is confirmed.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+class ChangeDetector {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The HealthCheck types that are stored on change.
+   */
+  private final Set<String> storeOnChangeTypes;
+  /**
+   * The last stored HealthCheck of each HealthCheck type and computer, in order of least recent use.
+   */
+  private final LinkedHashMap<CacheKey, StoredHealthCheck> lastStoredMap;
+  /**
+   * Mapper for hashing HealthCheck data that is not already held as raw bytes.
+   */
+  private final ObjectMapper objectMapper;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Change detector constructor.
+   * @param storeOnChangeTypes The HealthCheck types that are stored on change.
+   * @param cacheSize The maximum number of HealthCheck type and computer pairs whose last stored HealthCheck is remembered.
+   */
+  ChangeDetector(Collection<String> storeOnChangeTypes, int cacheSize) {
+    this.storeOnChangeTypes = new HashSet<>(storeOnChangeTypes);
+    this.storeOnChangeTypes.remove("");
+    this.lastStoredMap = new LinkedHashMap<CacheKey, StoredHealthCheck>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<CacheKey, StoredHealthCheck> eldest) {
+        return size() > cacheSize;
+      }
+    };
+    this.objectMapper = new ObjectMapper();
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Determine whether a HealthCheck type is stored on change.
+   * @param healthCheckType The HealthCheck type.
+   * @return Whether HealthChecks of the type with unchanged data are not stored.
+   */
+  boolean isStoreOnChange(String healthCheckType) {
+    return storeOnChangeTypes.contains(healthCheckType);
+  }
+
+  /**
+   * Compare a HealthCheck with the last stored HealthCheck of the same type and computer. If its data has changed
+   * (or it belongs to a different session), it is remembered as the last stored HealthCheck, pending its write.
+   * @param healthCheckType The HealthCheck type.
+   * @param healthCheckHeader The HealthCheck's metadata.
+   * @param data The HealthCheck data.
+   * @return The metadata of the stored HealthCheck with identical data, or null if the HealthCheck must be stored.
+   */
+  synchronized HealthCheckHeader findUnchanged(String healthCheckType, HealthCheckHeader healthCheckHeader, Object data) {
+    byte[] dataHash = hashData(data);
+    if (dataHash == null) {
+      return null;
+    }
+    CacheKey cacheKey = new CacheKey(healthCheckType, healthCheckHeader.getSystemUUID());
+    StoredHealthCheck lastStored = lastStoredMap.get(cacheKey);
+    if ((lastStored != null)
+        && Objects.equals(lastStored.healthCheckHeader.getSessionTimestamp(), healthCheckHeader.getSessionTimestamp())
+        && Arrays.equals(lastStored.dataHash, dataHash)) {
+      return lastStored.healthCheckHeader;
+    }
+    lastStoredMap.put(cacheKey, new StoredHealthCheck(healthCheckHeader, dataHash));
+    return null;
+  }
+
+  /**
+   * Confirm that a remembered HealthCheck has been written, so that its record can be extended from now on.
+   * @param healthCheckType The HealthCheck type.
+   * @param healthCheckHeader The HealthCheck's metadata.
+   * @return The HealthCheck timestamp up to which the record's validity was deferred while it was being written, or
+   *         null if there is none.
+   */
+  synchronized Long markStored(String healthCheckType, HealthCheckHeader healthCheckHeader) {
+    StoredHealthCheck lastStored = lastStoredMap.get(new CacheKey(healthCheckType, healthCheckHeader.getSystemUUID()));
+    if ((lastStored == null) || !lastStored.healthCheckHeader.equals(healthCheckHeader)) {
+      return null;
+    }
+    Long validUntil = lastStored.deferredValidUntil;
+    lastStored.isPending = false;
+    lastStored.deferredValidUntil = null;
+    return validUntil;
+  }
+
+  /**
+   * Defer the extension of a remembered HealthCheck's validity until its write has been confirmed, if it is still
+   * pending.
+   * @param healthCheckType The HealthCheck type.
+   * @param healthCheckHeader The remembered HealthCheck's metadata.
+   * @param validUntil The HealthCheck timestamp up to which the record is valid.
+   * @return Whether the extension was deferred; if not, the record must be extended in the database.
+   */
+  synchronized boolean deferValidity(String healthCheckType, HealthCheckHeader healthCheckHeader, long validUntil) {
+    StoredHealthCheck lastStored = lastStoredMap.get(new CacheKey(healthCheckType, healthCheckHeader.getSystemUUID()));
+    if ((lastStored == null) || !lastStored.isPending || !lastStored.healthCheckHeader.equals(healthCheckHeader)) {
+      return false;
+    }
+    lastStored.deferredValidUntil = (lastStored.deferredValidUntil == null) ?
+        validUntil :
+        Math.max(lastStored.deferredValidUntil, validUntil);
+    return true;
+  }
+
+  /**
+   * Forget a HealthCheck that was remembered as stored but could not be written (or whose record could not be
+   * found), so that the next HealthCheck of its computer is stored again.
+   * @param healthCheckType The HealthCheck type.
+   * @param healthCheckHeader The HealthCheck's metadata.
+   */
+  synchronized void forget(String healthCheckType, HealthCheckHeader healthCheckHeader) {
+    CacheKey cacheKey = new CacheKey(healthCheckType, healthCheckHeader.getSystemUUID());
+    StoredHealthCheck lastStored = lastStoredMap.get(cacheKey);
+    if ((lastStored != null) && lastStored.healthCheckHeader.equals(healthCheckHeader)) {
+      lastStoredMap.remove(cacheKey);
+    }
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Compute the SHA-256 hash of HealthCheck data. Raw BSON documents are hashed as they are; any other data is
+   * hashed in its JSON representation.
+   * @param data The HealthCheck data.
+   * @return The hash of the data, or null if the data cannot be hashed.
+   */
+  private byte[] hashData(Object data) {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException("SHA-256 is not supported by this JVM", nsae);
+    }
+    if (data instanceof RawBsonDocument) {
+      ByteBuffer dataBuffer = ((RawBsonDocument) data).getByteBuffer().asNIO();
+      messageDigest.update(dataBuffer);
+    } else {
+      try {
+        messageDigest.update(objectMapper.writeValueAsBytes(data));
+      } catch (JsonProcessingException jpe) {
+        return null;
+      }
+    }
+    return messageDigest.digest();
+  }
+
+  // ============================ Inner Classes ============================79
+  /**
+   * Key of the cache of last stored HealthChecks.
+   */
+  private static class CacheKey {
+    /**
+     * The HealthCheck type.
+     */
+    private final String healthCheckType;
+    /**
+     * The computer (in the form of a UUID entity).
+     */
+    private final String systemUUID;
+
+    /**
+     * Cache key constructor.
+     * @param healthCheckType The HealthCheck type.
+     * @param systemUUID The computer (in the form of a UUID entity).
+     */
+    CacheKey(String healthCheckType, String systemUUID) {
+      this.healthCheckType = healthCheckType;
+      this.systemUUID = systemUUID;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      CacheKey that = (CacheKey) o;
+
+      return healthCheckType.equals(that.healthCheckType) && Objects.equals(systemUUID, that.systemUUID);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * healthCheckType.hashCode() + Objects.hashCode(systemUUID);
+    }
+  }
+
+  /**
+   * The last stored HealthCheck of a HealthCheck type and computer.
+   */
+  private static class StoredHealthCheck {
+    /**
+     * The metadata of the stored HealthCheck.
+     */
+    private final HealthCheckHeader healthCheckHeader;
+    /**
+     * The hash of the data of the stored HealthCheck.
+     */
+    private final byte[] dataHash;
+    /**
+     * Whether the write of the stored HealthCheck has not been confirmed yet.
+     */
+    private boolean isPending;
+    /**
+     * The HealthCheck timestamp up to which the validity of the stored HealthCheck was extended while it was pending,
+     * or null if there is none.
+     */
+    private Long deferredValidUntil;
+
+    /**
+     * Stored HealthCheck constructor.
+     * @param healthCheckHeader The metadata of the stored HealthCheck.
+     * @param dataHash The hash of the data of the stored HealthCheck.
+     */
+    StoredHealthCheck(HealthCheckHeader healthCheckHeader, byte[] dataHash) {
+      this.healthCheckHeader = healthCheckHeader;
+      this.dataHash = dataHash;
+      this.isPending = true;
+      this.deferredValidUntil = null;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package com.lucanet.packratcollector.persister;
+
+import com.lucanet.packratcommon.db.DatabaseConnection;
+import com.lucanet.packratcommon.model.DeadLetter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dead-letter stage for HealthCheck messages that cannot be processed, e.g. because their header or data cannot be
+ * deserialized or is rejected.
+ * <p>
+ * The raw messages are buffered in memory and written to the database in batches in the background, so that a burst
+ * of bad messages costs a few bulk writes instead of stalling the message consumers. Logging is rate-limited as
+ * well: the first failure of a topic is logged right away, and any further failures of the topic are summarized once
+ * per log interval. Should the database fall too far behind, further dead letters are dropped (and counted) rather
+ * than blocking the message consumers.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+@Service
+public class DeadLetterQueue {
+  // =========================== Class Variables ===========================79
+  /**
+   * The maximum number of batches of dead letters that are kept in memory while waiting to be written.
+   */
+  private static final int MAX_PENDING_BATCHES = 10;
+
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The logger for the DeadLetterQueue instance.
+   */
+  private final Logger logger;
+  /**
+   * The database persistence object.
+   */
+  private final DatabaseConnection databaseConnection;
+  /**
+   * The number of dead letters written to the database in a single batch.
+   */
+  private final int batchSize;
+  /**
+   * The interval (in milliseconds) at which further failures of a topic are summarized in the log.
+   */
+  private final long logInterval;
+  /**
+   * The dead letters that have not been written to the database yet. Guarded by the queue's monitor.
+   */
+  private List<DeadLetter> pendingDeadLetters;
+  /**
+   * The number of failures of each topic since its last log entry. A topic is present as long as its failures are
+   * being summarized instead of logged individually. Guarded by the queue's monitor.
+   */
+  private final Map<String, Long> unloggedCounts;
+  /**
+   * The number of dead letters dropped since the last summary, because too many were waiting to be written. Guarded
+   * by the queue's monitor.
+   */
+  private long droppedCount;
+  /**
+   * Scheduler that periodically flushes the {@link #pendingDeadLetters} and summarizes the logged failures.
+   */
+  private final ScheduledExecutorService flushScheduler;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Dead-letter queue constructor.
+   * @param databaseConnection The database persistence object.
+   * @param batchSize The number of dead letters written to the database in a single batch.
+   * @param flushInterval The interval (in milliseconds) at which pending dead letters are written to the database.
+   * @param logInterval The interval (in milliseconds) at which further failures of a topic are summarized in the log.
+   */
+  public DeadLetterQueue(
+      DatabaseConnection databaseConnection,
+      @Value("${packrat.deadletter.batchSize}") int batchSize,
+      @Value("${packrat.deadletter.flushInterval}") long flushInterval,
+      @Value("${packrat.deadletter.logInterval}") long logInterval
+  ) {
+    this.logger = LoggerFactory.getLogger(DeadLetterQueue.class);
+    this.databaseConnection = databaseConnection;
+    this.batchSize = batchSize;
+    this.logInterval = logInterval;
+    this.pendingDeadLetters = new ArrayList<>();
+    this.unloggedCounts = new HashMap<>();
+    this.droppedCount = 0L;
+    this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread flushThread = new Thread(runnable, "deadletter-flush");
+      flushThread.setDaemon(true);
+      return flushThread;
+    });
+    this.flushScheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    this.flushScheduler.scheduleWithFixedDelay(this::logSummary, logInterval, logInterval, TimeUnit.MILLISECONDS);
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Add a raw HealthCheck message that could not be processed. A full batch of dead letters is written to the
+   * database right away (in the background).
+   * @param consumerRecord The raw HealthCheck message.
+   * @param error The error that caused the failure.
+   */
+  public void add(ConsumerRecord<byte[], byte[]> consumerRecord, Exception error) {
+    Throwable cause = (error.getCause() != null) ? error.getCause() : error;
+    DeadLetter deadLetter = new DeadLetter(
+        consumerRecord.topic(),
+        consumerRecord.partition(),
+        consumerRecord.offset(),
+        consumerRecord.timestamp(),
+        consumerRecord.key(),
+        consumerRecord.value(),
+        cause.getClass().getName(),
+        error.getMessage(),
+        System.currentTimeMillis()
+    );
+    logger.debug(String.format("Dead-lettering '%s' record %d:", consumerRecord.topic(), consumerRecord.offset()), error);
+    boolean batchFull;
+    synchronized (this) {
+      if (unloggedCounts.putIfAbsent(deadLetter.getTopic(), 0L) == null) {
+        logger.warn("Dead-lettering '{}' record {}: {} ({}) - further failures of this topic are summarized every {}ms", deadLetter.getTopic(), deadLetter.getOffset(), deadLetter.getErrorMessage(), deadLetter.getErrorClass(), logInterval);
+      } else {
+        unloggedCounts.merge(deadLetter.getTopic(), 1L, Long::sum);
+      }
+      if (pendingDeadLetters.size() >= (batchSize * MAX_PENDING_BATCHES)) {
+        droppedCount++;
+        return;
+      }
+      pendingDeadLetters.add(deadLetter);
+      batchFull = (pendingDeadLetters.size() == batchSize);
+    }
+    if (batchFull) {
+      flushScheduler.execute(this::flushQuietly);
+    }
+  }
+
+  /**
+   * Write all pending dead letters to the database. If the write fails, the dead letters are kept for the next flush.
+   */
+  public void flush() {
+    List<DeadLetter> flushedDeadLetters;
+    synchronized (this) {
+      if (pendingDeadLetters.isEmpty()) {
+        return;
+      }
+      flushedDeadLetters = pendingDeadLetters;
+      pendingDeadLetters = new ArrayList<>();
+    }
+    try {
+      int persistedCount = databaseConnection.persistDeadLetters(flushedDeadLetters);
+      logger.debug("Persisted {} of {} dead letters", persistedCount, flushedDeadLetters.size());
+    } catch (RuntimeException re) {
+      synchronized (this) {
+        flushedDeadLetters.addAll(pendingDeadLetters);
+        pendingDeadLetters = flushedDeadLetters;
+      }
+      throw re;
+    }
+  }
+
+  /**
+   * Stop the background flushes and write any pending dead letters to the database.
+   */
+  @PreDestroy
+  public void shutdown() {
+    flushScheduler.shutdown();
+    try {
+      flushScheduler.awaitTermination(1L, TimeUnit.MINUTES);
+    } catch (InterruptedException ie) {
+      //No-Op - flushing anyway
+    }
+    logSummary();
+    flush();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Flush the pending dead letters from the {@link #flushScheduler}, logging instead of propagating errors so that
+   * the scheduled flushes keep running.
+   */
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      logger.error("Error flushing dead letters: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Log the number of failures of each topic since its last log entry. Topics without further failures are logged
+   * individually again on their next failure.
+   */
+  private synchronized void logSummary() {
+    unloggedCounts.forEach((topic, unloggedCount) -> {
+      if (unloggedCount > 0) {
+        logger.warn("Dead-lettered {} more '{}' records in the last {}ms", unloggedCount, topic, logInterval);
+      }
+    });
+    unloggedCounts.values().removeIf(unloggedCount -> unloggedCount == 0);
+    unloggedCounts.replaceAll((topic, unloggedCount) -> 0L);
+    if (droppedCount > 0) {
+      logger.error("Dropped {} dead letters: {} dead letters are already waiting to be written", droppedCount, batchSize * MAX_PENDING_BATCHES);
+      droppedCount = 0L;
+    }
+  }
+}
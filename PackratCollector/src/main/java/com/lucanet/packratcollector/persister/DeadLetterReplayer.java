@@ -0,0 +1,94 @@
+package com.lucanet.packratcollector.persister;
+
+import com.lucanet.packratcollector.config.PackratCollectorConfig;
+import com.lucanet.packratcommon.db.DatabaseConnection;
+import com.lucanet.packratcommon.model.DeadLetter;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JMX-managed replay of dead letters. Replayed dead letters are re-published unchanged (or as fixed in the database)
+ * to their original topics, so that they pass through the regular message consumers again; should they still fail,
+ * they are dead-lettered anew under their new offsets.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+@Component
+@ManagedResource(objectName = "com.lucanet.packratcollector:name=DeadLetterReplayer", description = "Replay of HealthCheck messages that could not be processed")
+public class DeadLetterReplayer {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The logger for the DeadLetterReplayer instance.
+   */
+  private final Logger logger;
+  /**
+   * The common message consumer configuration properties.
+   */
+  private final PackratCollectorConfig packratCollectorConfig;
+  /**
+   * The database persistence object.
+   */
+  private final DatabaseConnection databaseConnection;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Replayer constructor.
+   * @param packratCollectorConfig The common message consumer configuration properties.
+   * @param databaseConnection The database persistence object.
+   */
+  public DeadLetterReplayer(PackratCollectorConfig packratCollectorConfig, DatabaseConnection databaseConnection) {
+    this.logger = LoggerFactory.getLogger(DeadLetterReplayer.class);
+    this.packratCollectorConfig = packratCollectorConfig;
+    this.databaseConnection = databaseConnection;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Re-publish the oldest dead letters to their original topics and remove the re-published dead letters from the
+   * database. Replaying stops at the first dead letter that cannot be re-published.
+   * @param topic The topic of the dead letters, or an empty string for the dead letters of all topics.
+   * @param maxCount The maximum number of dead letters to replay.
+   * @return The number of replayed dead letters.
+   */
+  @ManagedOperation(description = "Re-publish the oldest dead letters of a topic (or of all topics if blank) to their original topics")
+  @ManagedOperationParameters({
+      @ManagedOperationParameter(name = "topic", description = "The topic of the dead letters, or blank for all topics"),
+      @ManagedOperationParameter(name = "maxCount", description = "The maximum number of dead letters to replay")
+  })
+  public int replay(String topic, int maxCount) {
+    List<DeadLetter> deadLetters = databaseConnection.getDeadLetters(((topic == null) || topic.trim().isEmpty()) ? null : topic.trim(), maxCount);
+    List<DeadLetter> replayedDeadLetters = new ArrayList<>(deadLetters.size());
+    try (KafkaProducer<byte[], byte[]> kafkaProducer = new KafkaProducer<>(packratCollectorConfig.generateProducerProperties())) {
+      for (DeadLetter deadLetter : deadLetters) {
+        try {
+          kafkaProducer.send(new ProducerRecord<>(deadLetter.getTopic(), deadLetter.getKey(), deadLetter.getValue())).get();
+          replayedDeadLetters.add(deadLetter);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch (Exception e) {
+          logger.error("Error replaying dead letter {}: {}", deadLetter, e.getMessage());
+          break;
+        }
+      }
+    } finally {
+      databaseConnection.removeDeadLetters(replayedDeadLetters);
+    }
+    logger.info("Replayed {} of {} dead letters", replayedDeadLetters.size(), deadLetters.size());
+    return replayedDeadLetters.size();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+}
@@ -0,0 +1,172 @@
+package com.lucanet.packratcollector.persister;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Filter of the HealthCheck keys that were recently seen for persistence, used to spot likely duplicates (e.g. from
+ * replayed messages or agent retries) before they are written.
+ * <p>
+ * Each topic has its own rolling Bloom filter of two generations: keys are added to the current generation and looked
+ * up in both, and once the current generation holds its capacity of keys it becomes the previous generation and a
+ * fresh one is started. The filter thus always remembers at least the last capacity keys of a topic, at the expected
+ * false positive rate. A positive only means that a key is likely to be stored already; a key that is not found has
+ * certainly not been seen recently.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+class RecentKeyFilter {
+  // =========================== Class Variables ===========================79
+  /**
+   * The FNV-1a 64-bit offset basis.
+   */
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  /**
+   * The FNV-1a 64-bit prime.
+   */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The number of keys held by a generation before it is rotated out.
+   */
+  private final int capacity;
+  /**
+   * The number of bits of each generation.
+   */
+  private final int bitCount;
+  /**
+   * The number of bits set for each key.
+   */
+  private final int hashCount;
+  /**
+   * The rolling filter of each topic.
+   */
+  private final Map<String, TopicFilter> topicFilterMap;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Recent key filter constructor.
+   * @param capacity The number of keys of each topic that are remembered at least, or 0 to disable the filter.
+   * @param falsePositiveRate The expected rate at which keys that were not seen are reported as seen.
+   */
+  RecentKeyFilter(int capacity, double falsePositiveRate) {
+    this.capacity = capacity;
+    if (capacity > 0) {
+      this.bitCount = (int) Math.min(
+          Integer.MAX_VALUE,
+          Math.max(64L, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))))
+      );
+      this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+    } else {
+      this.bitCount = 0;
+      this.hashCount = 0;
+    }
+    this.topicFilterMap = new HashMap<>();
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Determine whether the filter is enabled.
+   * @return Whether keys are remembered.
+   */
+  boolean isEnabled() {
+    return capacity > 0;
+  }
+
+  /**
+   * Look up a HealthCheck key and remember it.
+   * @param healthCheckType The HealthCheck type.
+   * @param uniqueId The unique ID of the HealthCheck.
+   * @return Whether the key was likely seen before; always false if the filter is disabled.
+   */
+  synchronized boolean checkAndPut(String healthCheckType, String uniqueId) {
+    if (!isEnabled()) {
+      return false;
+    }
+    long keyHash = hashKey(uniqueId);
+    int firstHash = (int) keyHash;
+    int secondHash = (int) (keyHash >>> 32);
+    int[] bitIndexes = new int[hashCount];
+    for (int hashIndex = 0; hashIndex < hashCount; hashIndex++) {
+      //Double hashing (Kirsch-Mitzenmacher): the i-th hash is h1 + i * h2
+      bitIndexes[hashIndex] = Math.floorMod(firstHash + (hashIndex * secondHash), bitCount);
+    }
+    TopicFilter topicFilter = topicFilterMap.computeIfAbsent(healthCheckType, topic -> new TopicFilter());
+    if (containsAll(topicFilter.currentBits, bitIndexes)) {
+      return true;
+    }
+    boolean seenPreviously = (topicFilter.previousBits != null) && containsAll(topicFilter.previousBits, bitIndexes);
+    if (topicFilter.currentCount >= capacity) {
+      topicFilter.previousBits = topicFilter.currentBits;
+      topicFilter.currentBits = new BitSet(bitCount);
+      topicFilter.currentCount = 0;
+    }
+    for (int bitIndex : bitIndexes) {
+      topicFilter.currentBits.set(bitIndex);
+    }
+    topicFilter.currentCount++;
+    return seenPreviously;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Compute the 64-bit FNV-1a hash of a HealthCheck key.
+   * @param uniqueId The unique ID of the HealthCheck.
+   * @return The hash of the key.
+   */
+  private long hashKey(String uniqueId) {
+    long keyHash = FNV_OFFSET_BASIS;
+    for (byte keyByte : uniqueId.getBytes(StandardCharsets.UTF_8)) {
+      keyHash ^= (keyByte & 0xff);
+      keyHash *= FNV_PRIME;
+    }
+    return keyHash;
+  }
+
+  /**
+   * Determine whether all bits of a key are set in a generation.
+   * @param bits The bits of the generation.
+   * @param bitIndexes The bits of the key.
+   * @return Whether the key is likely held by the generation.
+   */
+  private boolean containsAll(BitSet bits, int[] bitIndexes) {
+    for (int bitIndex : bitIndexes) {
+      if (!bits.get(bitIndex)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // ============================ Inner Classes ============================79
+  /**
+   * The rolling filter of a topic.
+   */
+  private class TopicFilter {
+    /**
+     * The bits of the generation that keys are added to.
+     */
+    private BitSet currentBits;
+    /**
+     * The number of keys added to the current generation.
+     */
+    private int currentCount;
+    /**
+     * The bits of the generation before the current one, or null if there is none yet.
+     */
+    private BitSet previousBits;
+
+    /**
+     * Topic filter constructor.
+     */
+    TopicFilter() {
+      this.currentBits = new BitSet(bitCount);
+      this.currentCount = 0;
+      this.previousBits = null;
+    }
+  }
+}
@@ -4,6 +4,9 @@ import com.lucanet.packratcommon.model.HealthCheckHeader;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Interface for interactions with the data persistence layer.
  * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
@@ -17,18 +20,52 @@ public interface RecordPersister {
    * @return The message offset.
    */
   long getOffset(TopicPartition topicPartition);
+  /**
+   * Get the message offsets for multiple {@link TopicPartition} instances at once.
+   * @param topicPartitions The specified topics and partitions.
+   * @return The message offset of each topic and partition.
+   */
+  Map<TopicPartition, Long> getOffsets(Collection<TopicPartition> topicPartitions);
   /**
    * Set the message offset for the specified {@link TopicPartition}.
    * @param topicPartition The specified topic and partition.
    * @param offset The specified message offset.
    */
   void updateOffset(TopicPartition topicPartition, long offset);
+  /**
+   * Write any message offsets that have been set but not yet persisted.
+   */
+  void flushOffsets();
   /**
    * Persist the received HealthCheck message.
    * @param record The HealthCheck message.
    * @param <T> HealthCheck data type.
    */
   <T> void persistRecord(ConsumerRecord<HealthCheckHeader, T> record);
+  /**
+   * Determine whether a HealthCheck message is still retained by the database, i.e. whether persisting it makes sense.
+   * @param healthCheckHeader The HealthCheck message's metadata.
+   * @return Whether the HealthCheck message is retained.
+   */
+  boolean isRetained(HealthCheckHeader healthCheckHeader);
+  /**
+   * Persist a batch of received HealthCheck messages. The messages are grouped by topic and each group is
+   * written to the database in bulk.
+   * @param records The HealthCheck messages.
+   * @param <T> HealthCheck data type.
+   */
+  <T> void persistBatch(Iterable<ConsumerRecord<HealthCheckHeader, T>> records);
+  /**
+   * Persist a batch of received HealthCheck messages together with the message offsets that processing the batch
+   * advances. If the database supports it, the messages and offsets are persisted atomically; otherwise the
+   * offsets are ignored and must be set with {@link #updateOffset(TopicPartition, long)}.
+   * @param records The HealthCheck messages.
+   * @param offsets The new message offset of each topic and partition advanced by the batch.
+   * @param <T> HealthCheck data type.
+   * @return Whether the batch was persisted; if not, none of its messages and offsets are persisted and the messages
+   * must be consumed again.
+   */
+  <T> boolean persistBatch(Iterable<ConsumerRecord<HealthCheckHeader, T>> records, Map<TopicPartition, Long> offsets);
 
   // =========================== Default Methods ===========================79
 }
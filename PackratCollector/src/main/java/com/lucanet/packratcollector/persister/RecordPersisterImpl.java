@@ -1,11 +1,21 @@
 package com.lucanet.packratcollector.persister;
 
+import com.lucanet.packratcommon.db.BatchWriteResult;
 import com.lucanet.packratcommon.db.DatabaseConnection;
+import com.lucanet.packratcommon.db.WriteBehindOffsetStore;
 import com.lucanet.packratcommon.model.HealthCheckHeader;
+import com.lucanet.packratcommon.model.HealthCheckRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.stream.Collectors;
+
 /**
  * Wrapper class around DatabaseConnection to keep loose coupling between Kafka messaging and the database.
  * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
@@ -15,18 +25,57 @@ public class RecordPersisterImpl implements RecordPersister {
   // =========================== Class Variables ===========================79
   // ============================ Class Methods ============================79
   // ============================   Variables    ===========================79
+  /**
+   * The logger for the RecordPersisterImpl instance.
+   */
+  private final Logger logger;
   /**
    * The database persistence object.
    */
   private final DatabaseConnection databaseConnection;
+  /**
+   * The in-memory message offsets, which are written to the database in the background.
+   */
+  private final WriteBehindOffsetStore offsetStore;
+  /**
+   * The detector of unchanged HealthCheck data for the HealthCheck types that are stored on change.
+   */
+  private final ChangeDetector changeDetector;
+  /**
+   * The filter of recently persisted HealthCheck keys, which spots likely duplicates before they are written.
+   */
+  private final RecentKeyFilter recentKeyFilter;
+  /**
+   * The aggregator of HealthCheck records into rollups, for the HealthCheck types that are rolled up.
+   */
+  private final RollupAggregator rollupAggregator;
 
   // ============================  Constructors  ===========================79
   /**
    * Persister constructor.
    * @param databaseConnection The database persistence object.
+   * @param offsetsFlushInterval The interval (in milliseconds) at which updated message offsets are written to the database.
+   * @param storeOnChangeTopics The HealthCheck types whose HealthChecks are only stored when their data changes.
+   * @param storeOnChangeCacheSize The maximum number of HealthCheck type and computer pairs whose last stored HealthCheck is remembered.
+   * @param recentKeysCapacity The number of recently persisted HealthCheck keys of each topic that are remembered at least, or 0 to remember none.
+   * @param recentKeysFalsePositiveRate The expected rate at which HealthCheck keys are wrongly taken for recently persisted ones.
+   * @param rollupTopics The HealthCheck types whose HealthChecks are rolled up per minute and per hour.
    */
-  public RecordPersisterImpl(DatabaseConnection databaseConnection) {
+  public RecordPersisterImpl(
+      DatabaseConnection databaseConnection,
+      @Value("${packrat.offsets.flushInterval}") long offsetsFlushInterval,
+      @Value("#{'${packrat.storeOnChange.topics}'.split(',')}") List<String> storeOnChangeTopics,
+      @Value("${packrat.storeOnChange.cacheSize}") int storeOnChangeCacheSize,
+      @Value("${packrat.recentKeys.capacity}") int recentKeysCapacity,
+      @Value("${packrat.recentKeys.falsePositiveRate}") double recentKeysFalsePositiveRate,
+      @Value("#{'${packrat.rollups.topics}'.split(',')}") List<String> rollupTopics
+  ) {
+    this.logger = LoggerFactory.getLogger(RecordPersisterImpl.class);
     this.databaseConnection = databaseConnection;
+    this.offsetStore = new WriteBehindOffsetStore(databaseConnection, offsetsFlushInterval);
+    this.changeDetector = new ChangeDetector(storeOnChangeTopics, storeOnChangeCacheSize);
+    this.recentKeyFilter = new RecentKeyFilter(recentKeysCapacity, recentKeysFalsePositiveRate);
+    this.rollupAggregator = new RollupAggregator(rollupTopics);
   }
 
   // ============================ Public Methods ===========================79
@@ -37,17 +86,42 @@ public class RecordPersisterImpl implements RecordPersister {
    */
   @Override
   public long getOffset(TopicPartition topicPartition) {
-    return databaseConnection.getOffset(topicPartition.topic(), topicPartition.partition());
+    return offsetStore.getOffset(topicPartition.topic(), topicPartition.partition());
   }
 
   /**
-   * Set the message offset for the specified {@link TopicPartition}.
+   * Get the message offsets for multiple {@link TopicPartition} instances, loading the offsets of all of their
+   * topics with a single query. Partitions without a stored offset start at offset 0.
+   * @param topicPartitions The specified topics and partitions.
+   * @return The message offset of each topic and partition.
+   */
+  @Override
+  public Map<TopicPartition, Long> getOffsets(Collection<TopicPartition> topicPartitions) {
+    offsetStore.load(topicPartitions.stream().map(TopicPartition::topic).collect(Collectors.toSet()));
+    Map<TopicPartition, Long> offsetsMap = new HashMap<>();
+    topicPartitions.forEach(topicPartition ->
+        offsetsMap.put(topicPartition, offsetStore.getOffset(topicPartition.topic(), topicPartition.partition()))
+    );
+    return offsetsMap;
+  }
+
+  /**
+   * Set the message offset for the specified {@link TopicPartition}. The offset is written to the database with the
+   * next background flush.
    * @param topicPartition The specified topic and partition.
    * @param offset The specified message offset.
    */
   @Override
   public void updateOffset(TopicPartition topicPartition, long offset) {
-    databaseConnection.updateOffset(topicPartition.topic(), topicPartition.partition(), offset);
+    offsetStore.updateOffset(topicPartition.topic(), topicPartition.partition(), offset);
+  }
+
+  /**
+   * Write any message offsets that have been set but not yet persisted.
+   */
+  @Override
+  public void flushOffsets() {
+    offsetStore.flush();
   }
 
   /**
@@ -60,6 +134,252 @@ public class RecordPersisterImpl implements RecordPersister {
     databaseConnection.persistRecord(record.topic(), record.key(), record.value());
   }
 
+  /**
+   * Determine whether a HealthCheck message is still retained by the database, i.e. whether its partition has not
+   * expired. Messages without a HealthCheck timestamp are left to the database to reject.
+   * @param healthCheckHeader The HealthCheck message's metadata.
+   * @return Whether the HealthCheck message is retained.
+   */
+  @Override
+  public boolean isRetained(HealthCheckHeader healthCheckHeader) {
+    return (healthCheckHeader.getHealthCheckTimestamp() == null) || databaseConnection.isRetained(healthCheckHeader.getHealthCheckTimestamp());
+  }
+
+  /**
+   * Persist a batch of received HealthCheck messages. The messages are grouped by topic and each group is
+   * written to the database in bulk; a failure in one group does not prevent the other groups from being written.
+   * Messages of topics that are stored on change only extend the validity of the stored record if their data is
+   * unchanged; the validity is extended once the batch's own records are written, as these may be the records that
+   * are extended. Messages whose keys were recently persisted already are written so that an existing record is
+   * skipped instead of rejected. The newly persisted messages of topics that are rolled up are then merged into the
+   * rollups.
+   * @param records The HealthCheck messages.
+   * @param <T> HealthCheck data type.
+   */
+  @Override
+  public <T> void persistBatch(Iterable<ConsumerRecord<HealthCheckHeader, T>> records) {
+    Map<String, Map<HealthCheckHeader, Long>> topicValidityMap = new HashMap<>();
+    Map<String, List<HealthCheckRecord<T>>> topicRecordsMap = groupByTopic(records, topicValidityMap);
+    topicRecordsMap.forEach((topic, healthCheckRecords) -> {
+      try {
+        BatchWriteResult batchWriteResult = databaseConnection.persistRecords(topic, healthCheckRecords, findLikelyDuplicates(topic, healthCheckRecords));
+        logger.debug("Persisted {} of {} records for topic '{}'", batchWriteResult.getPersistedCount(), healthCheckRecords.size(), topic);
+        confirmStored(topic, healthCheckRecords, batchWriteResult, topicValidityMap);
+        updateRollups(topic, healthCheckRecords, batchWriteResult);
+      } catch (IllegalArgumentException iae) {
+        logger.error("Unable to write {} '{}' records: topic does not exist in database", healthCheckRecords.size(), topic);
+        healthCheckRecords.forEach(healthCheckRecord -> forgetStored(topic, healthCheckRecord.getHealthCheckHeader()));
+      } catch (Exception e) {
+        logger.error("Error persisting {} '{}' records: {}", healthCheckRecords.size(), topic, e.getMessage());
+        healthCheckRecords.forEach(healthCheckRecord -> forgetStored(topic, healthCheckRecord.getHealthCheckHeader()));
+      }
+    });
+    extendValidity(topicValidityMap);
+  }
+
+  /**
+   * Persist a batch of received HealthCheck messages together with the message offsets that processing the batch
+   * advances. If the database is transactional, all messages and offsets are written in a single transaction, so
+   * that replayed messages are never persisted twice; otherwise this falls back to
+   * {@link #persistBatch(Iterable)} and the offsets are ignored. Validities are extended and rollups are updated once
+   * the transaction is committed.
+   * @param records The HealthCheck messages.
+   * @param offsets The new message offset of each topic and partition advanced by the batch.
+   * @param <T> HealthCheck data type.
+   * @return Whether the transaction was committed; always true if the database is not transactional.
+   */
+  @Override
+  public <T> boolean persistBatch(Iterable<ConsumerRecord<HealthCheckHeader, T>> records, Map<TopicPartition, Long> offsets) {
+    if (!databaseConnection.isTransactional()) {
+      persistBatch(records);
+      return true;
+    }
+    Map<String, Map<HealthCheckHeader, Long>> topicValidityMap = new HashMap<>();
+    Map<String, List<HealthCheckRecord<T>>> topicRecordsMap = groupByTopic(records, topicValidityMap);
+    Map<String, Map<Integer, Long>> newOffsets = new HashMap<>();
+    offsets.forEach((topicPartition, offset) ->
+        newOffsets.computeIfAbsent(topicPartition.topic(), topic -> new HashMap<>()).put(topicPartition.partition(), offset)
+    );
+    try {
+      Map<String, BatchWriteResult> topicResultsMap = databaseConnection.persistRecordsWithOffsets(topicRecordsMap, newOffsets);
+      topicResultsMap.forEach((topic, batchWriteResult) ->
+          logger.debug("Persisted {} of {} records for topic '{}'", batchWriteResult.getPersistedCount(), topicRecordsMap.get(topic).size(), topic)
+      );
+      offsetStore.markPersisted(newOffsets);
+      topicResultsMap.forEach((topic, batchWriteResult) -> confirmStored(topic, topicRecordsMap.get(topic), batchWriteResult, topicValidityMap));
+      extendValidity(topicValidityMap);
+      topicResultsMap.forEach((topic, batchWriteResult) -> updateRollups(topic, topicRecordsMap.get(topic), batchWriteResult));
+      return true;
+    } catch (Exception e) {
+      logger.error("Error persisting records for topics {}: {}", topicRecordsMap.keySet(), e.getMessage());
+      forgetStored(topicRecordsMap);
+      return false;
+    }
+  }
+
+  /**
+   * Write any pending message offsets before the database connection is closed.
+   */
+  @PreDestroy
+  public void shutdown() {
+    offsetStore.shutdown();
+  }
+
   // ========================== Protected Methods ==========================79
   // =========================== Private Methods ===========================79
+  /**
+   * Group HealthCheck messages by topic. Messages of topics that are stored on change whose data is identical to
+   * the last stored HealthCheck of their computer are not grouped; instead, the stored HealthCheck is made valid up
+   * to the latest of them.
+   * @param records The HealthCheck messages.
+   * @param topicValidityMap Map into which the HealthCheck timestamp up to which each stored HealthCheck is valid is
+   *                         put, mapped by topic and then by the stored HealthCheck's metadata.
+   * @param <T> HealthCheck data type.
+   * @return The HealthCheck records to be written, mapped by topic.
+   */
+  private <T> Map<String, List<HealthCheckRecord<T>>> groupByTopic(Iterable<ConsumerRecord<HealthCheckHeader, T>> records, Map<String, Map<HealthCheckHeader, Long>> topicValidityMap) {
+    Map<String, List<HealthCheckRecord<T>>> topicRecordsMap = new LinkedHashMap<>();
+    records.forEach(record -> {
+      if (changeDetector.isStoreOnChange(record.topic())) {
+        HealthCheckHeader storedHeader = changeDetector.findUnchanged(record.topic(), record.key(), record.value());
+        if (storedHeader != null) {
+          topicValidityMap.computeIfAbsent(record.topic(), topic -> new HashMap<>())
+              .merge(storedHeader, record.key().getHealthCheckTimestamp(), Math::max);
+          return;
+        }
+      }
+      topicRecordsMap.computeIfAbsent(record.topic(), topic -> new ArrayList<>())
+          .add(new HealthCheckRecord<>(record.key(), record.value()));
+    });
+    return topicRecordsMap;
+  }
+
+  /**
+   * Find the HealthCheck records of a topic whose keys were recently persisted already (or occur earlier in the same
+   * batch), remembering the keys of all of them.
+   * @param topic The topic of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @param <T> HealthCheck data type.
+   * @return The positions of the HealthCheck records that are likely to exist already.
+   */
+  private <T> BitSet findLikelyDuplicates(String topic, List<HealthCheckRecord<T>> healthCheckRecords) {
+    BitSet likelyDuplicates = new BitSet(healthCheckRecords.size());
+    if (recentKeyFilter.isEnabled()) {
+      for (int recordIndex = 0; recordIndex < healthCheckRecords.size(); recordIndex++) {
+        if (recentKeyFilter.checkAndPut(topic, healthCheckRecords.get(recordIndex).getUniqueId())) {
+          likelyDuplicates.set(recordIndex);
+        }
+      }
+    }
+    return likelyDuplicates;
+  }
+
+  /**
+   * Merge the newly persisted HealthCheck records of a topic into its rollups, if the topic is rolled up. Records that
+   * were already stored or could not be written are left out, so that replayed messages are not counted twice. A
+   * failure to update the rollups is logged, as the records themselves are persisted.
+   * @param topic The topic of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records that were written.
+   * @param batchWriteResult The result of writing the HealthCheck records.
+   * @param <T> HealthCheck data type.
+   */
+  private <T> void updateRollups(String topic, List<HealthCheckRecord<T>> healthCheckRecords, BatchWriteResult batchWriteResult) {
+    if (!rollupAggregator.isRolledUp(topic)) {
+      return;
+    }
+    Set<Integer> skippedIndexes = new HashSet<>(batchWriteResult.getDuplicateIndexes());
+    skippedIndexes.addAll(batchWriteResult.getFailedIndexes().keySet());
+    List<HealthCheckRecord<T>> persistedRecords = new ArrayList<>();
+    for (int recordIndex = 0; recordIndex < healthCheckRecords.size(); recordIndex++) {
+      if (!skippedIndexes.contains(recordIndex)) {
+        persistedRecords.add(healthCheckRecords.get(recordIndex));
+      }
+    }
+    if (persistedRecords.isEmpty()) {
+      return;
+    }
+    try {
+      int rollupCount = databaseConnection.updateRollups(topic, rollupAggregator.aggregate(persistedRecords));
+      logger.debug("Updated {} rollups of {} records for topic '{}'", rollupCount, persistedRecords.size(), topic);
+    } catch (Exception e) {
+      logger.error("Error updating rollups of {} '{}' records: {}", persistedRecords.size(), topic, e.getMessage());
+    }
+  }
+
+  /**
+   * Confirm the writes of the HealthCheck records of a topic that is stored on change, forgetting the records that
+   * could not be written. Validity extensions that were deferred while the records were being written (by other
+   * batches) are collected for extending.
+   * @param topic The topic of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records that were written.
+   * @param batchWriteResult The result of writing the HealthCheck records.
+   * @param topicValidityMap Map into which the deferred validities are put, mapped by topic and then by the stored
+   *                         HealthCheck's metadata.
+   * @param <T> HealthCheck data type.
+   */
+  private <T> void confirmStored(String topic, List<HealthCheckRecord<T>> healthCheckRecords, BatchWriteResult batchWriteResult, Map<String, Map<HealthCheckHeader, Long>> topicValidityMap) {
+    if (!changeDetector.isStoreOnChange(topic)) {
+      return;
+    }
+    for (int recordIndex = 0; recordIndex < healthCheckRecords.size(); recordIndex++) {
+      HealthCheckHeader healthCheckHeader = healthCheckRecords.get(recordIndex).getHealthCheckHeader();
+      if (batchWriteResult.getFailedIndexes().containsKey(recordIndex)) {
+        changeDetector.forget(topic, healthCheckHeader);
+      } else {
+        Long validUntil = changeDetector.markStored(topic, healthCheckHeader);
+        if (validUntil != null) {
+          topicValidityMap.computeIfAbsent(topic, validityTopic -> new HashMap<>()).merge(healthCheckHeader, validUntil, Math::max);
+        }
+      }
+    }
+  }
+
+  /**
+   * Extend the validity of stored HealthChecks. Extensions of HealthChecks that are still being written by another
+   * batch are deferred until that write is confirmed. If a stored HealthCheck cannot be found, none of the topic's
+   * HealthChecks are assumed to be stored any more, so that the next HealthCheck of each of their computers is
+   * stored again.
+   * @param topicValidityMap The HealthCheck timestamp up to which each stored HealthCheck is valid, mapped by topic and
+   *                         then by the stored HealthCheck's metadata.
+   */
+  private void extendValidity(Map<String, Map<HealthCheckHeader, Long>> topicValidityMap) {
+    topicValidityMap.forEach((topic, validUntilMap) -> {
+      validUntilMap.entrySet().removeIf(validUntilEntry -> changeDetector.deferValidity(topic, validUntilEntry.getKey(), validUntilEntry.getValue()));
+      if (validUntilMap.isEmpty()) {
+        return;
+      }
+      try {
+        long foundCount = databaseConnection.extendValidity(topic, validUntilMap);
+        if (foundCount < validUntilMap.size()) {
+          logger.warn("Found only {} of {} unchanged records to extend for topic '{}'", foundCount, validUntilMap.size(), topic);
+          validUntilMap.keySet().forEach(storedHeader -> changeDetector.forget(topic, storedHeader));
+        }
+      } catch (Exception e) {
+        logger.error("Error extending {} unchanged '{}' records: {}", validUntilMap.size(), topic, e.getMessage());
+        validUntilMap.keySet().forEach(storedHeader -> changeDetector.forget(topic, storedHeader));
+      }
+    });
+  }
+
+  /**
+   * Forget a HealthCheck that could not be written, if its topic is stored on change.
+   * @param topic The topic of the HealthCheck.
+   * @param healthCheckHeader The HealthCheck's metadata.
+   */
+  private void forgetStored(String topic, HealthCheckHeader healthCheckHeader) {
+    if (changeDetector.isStoreOnChange(topic)) {
+      changeDetector.forget(topic, healthCheckHeader);
+    }
+  }
+
+  /**
+   * Forget HealthChecks that could not be written, for those of their topics that are stored on change.
+   * @param topicRecordsMap The HealthCheck records, mapped by topic.
+   * @param <T> HealthCheck data type.
+   */
+  private <T> void forgetStored(Map<String, List<HealthCheckRecord<T>>> topicRecordsMap) {
+    topicRecordsMap.forEach((topic, healthCheckRecords) ->
+        healthCheckRecords.forEach(healthCheckRecord -> forgetStored(topic, healthCheckRecord.getHealthCheckHeader()))
+    );
+  }
 }
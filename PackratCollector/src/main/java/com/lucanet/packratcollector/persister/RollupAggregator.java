@@ -0,0 +1,130 @@
+package com.lucanet.packratcollector.persister;
+
+import com.lucanet.packratcommon.model.HealthCheckRecord;
+import com.lucanet.packratcommon.model.Rollup;
+import com.lucanet.packratcommon.model.RollupResolution;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.types.Decimal128;
+
+import java.util.*;
+
+/**
+ * Aggregator of HealthCheck records into rollups of the numeric fields of their data, per computer and per window of
+ * each {@link RollupResolution}. Numeric fields are found in nested objects as well and are identified by their dotted
+ * path within the data; arrays, booleans, non-finite numbers, fields whose names cannot be used in a MongoDB field
+ * path and fields named {@link Rollup#STATS_KEY}, under which the statistics of a field are stored, are not rolled up.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+class RollupAggregator {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The HealthCheck types whose HealthChecks are rolled up.
+   */
+  private final Set<String> rollupTopics;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Rollup aggregator constructor.
+   * @param rollupTopics The HealthCheck types whose HealthChecks are rolled up.
+   */
+  RollupAggregator(Collection<String> rollupTopics) {
+    this.rollupTopics = new HashSet<>(rollupTopics);
+    this.rollupTopics.remove("");
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Determine whether the HealthChecks of a HealthCheck type are rolled up.
+   * @param healthCheckType The HealthCheck type.
+   * @return Whether the HealthChecks are rolled up.
+   */
+  boolean isRolledUp(String healthCheckType) {
+    return rollupTopics.contains(healthCheckType);
+  }
+
+  /**
+   * Aggregate HealthCheck records into rollups.
+   * @param healthCheckRecords The HealthCheck records.
+   * @param <T> HealthCheck data type.
+   * @return The rollups of the HealthCheck records, one per computer, resolution and window.
+   */
+  <T> Collection<Rollup> aggregate(Collection<HealthCheckRecord<T>> healthCheckRecords) {
+    Map<List<Object>, Rollup> rollupMap = new LinkedHashMap<>();
+    healthCheckRecords.forEach(healthCheckRecord -> {
+      Map<String, Double> fieldValues = new LinkedHashMap<>();
+      collectFields("", healthCheckRecord.getData(), fieldValues);
+      if (fieldValues.isEmpty()) {
+        return;
+      }
+      for (RollupResolution resolution : RollupResolution.values()) {
+        long windowStart = resolution.getWindowStart(healthCheckRecord.getHealthCheckTimestamp());
+        rollupMap.computeIfAbsent(
+            Arrays.asList(healthCheckRecord.getSystemUUID(), resolution, windowStart),
+            rollupKey -> new Rollup(healthCheckRecord.getSerialId(), healthCheckRecord.getSystemUUID(), resolution, windowStart)
+        ).add(fieldValues);
+      }
+    });
+    return rollupMap.values();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Collect the numeric fields of a value of HealthCheck data.
+   * @param fieldPath The dotted path of the value within the data, or an empty string for the data itself.
+   * @param value The value.
+   * @param fieldValues Map into which the numeric fields are put, mapped by their path.
+   */
+  private void collectFields(String fieldPath, Object value, Map<String, Double> fieldValues) {
+    if (value instanceof BsonDocument) {
+      for (Map.Entry<String, BsonValue> fieldEntry : ((BsonDocument) value).entrySet()) {
+        if (isRollupFieldName(fieldEntry.getKey())) {
+          collectFields(fieldPath + "." + fieldEntry.getKey(), fieldEntry.getValue(), fieldValues);
+        }
+      }
+    } else if (value instanceof Map) {
+      for (Map.Entry<?, ?> fieldEntry : ((Map<?, ?>) value).entrySet()) {
+        String fieldName = String.valueOf(fieldEntry.getKey());
+        if (isRollupFieldName(fieldName)) {
+          collectFields(fieldPath + "." + fieldName, fieldEntry.getValue(), fieldValues);
+        }
+      }
+    } else if (value instanceof BsonValue) {
+      BsonValue bsonValue = (BsonValue) value;
+      if (bsonValue.isNumber()) {
+        putValue(fieldPath, bsonValue.asNumber().doubleValue(), fieldValues);
+      } else if (bsonValue.isDecimal128()) {
+        Decimal128 decimalValue = bsonValue.asDecimal128().getValue();
+        if (!decimalValue.isNaN() && !decimalValue.isInfinite()) {
+          putValue(fieldPath, decimalValue.bigDecimalValue().doubleValue(), fieldValues);
+        }
+      }
+    } else if (value instanceof Number) {
+      putValue(fieldPath, ((Number) value).doubleValue(), fieldValues);
+    }
+  }
+
+  /**
+   * Put a numeric field, unless its value is not finite.
+   * @param fieldPath The dotted path of the field within the data.
+   * @param value The value of the field.
+   * @param fieldValues Map into which the numeric field is put, mapped by its path.
+   */
+  private void putValue(String fieldPath, double value, Map<String, Double> fieldValues) {
+    if (!fieldPath.isEmpty() && !Double.isNaN(value) && !Double.isInfinite(value)) {
+      fieldValues.put(fieldPath.substring(1), value);
+    }
+  }
+
+  /**
+   * Determine whether a field can be rolled up by its name.
+   * @param fieldName The name of the field.
+   * @return Whether the name can be used in a MongoDB field path and does not clash with the stored statistics.
+   */
+  private boolean isRollupFieldName(String fieldName) {
+    return !fieldName.isEmpty() && (fieldName.indexOf('.') < 0) && !fieldName.startsWith("$") && !fieldName.equals(Rollup.STATS_KEY);
+  }
+}
@@ -0,0 +1,116 @@
+package com.lucanet.packratcollector.consumers;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link OffsetTracker}
+ */
+@DisplayName("Validate the Offset Tracker")
+class OffsetTrackerTest {
+
+  private static final String TOPIC = "Test Topic";
+  private static final TopicPartition PARTITION_ZERO = new TopicPartition(TOPIC, 0);
+  private static final TopicPartition PARTITION_ONE = new TopicPartition(TOPIC, 1);
+
+  @Test
+  @DisplayName("Completing batches in order")
+  void inOrderCompletionTest() {
+    OffsetTracker offsetTracker = new OffsetTracker();
+    List<ConsumerRecord<String, String>> firstBatch = generateRecords(0, 0, 5);
+    List<ConsumerRecord<String, String>> secondBatch = generateRecords(0, 5, 10);
+    offsetTracker.register(firstBatch);
+    offsetTracker.register(secondBatch);
+
+    Map<TopicPartition, Long> firstOffsets = offsetTracker.complete(firstBatch);
+    Map<TopicPartition, Long> secondOffsets = offsetTracker.complete(secondBatch);
+    assertAll("In-Order Completion",
+        () -> assertEquals(Collections.singletonMap(PARTITION_ZERO, 5L), firstOffsets),
+        () -> assertEquals(Collections.singletonMap(PARTITION_ZERO, 10L), secondOffsets),
+        () -> assertEquals(0, offsetTracker.getPendingCount(PARTITION_ZERO))
+    );
+  }
+
+  @Test
+  @DisplayName("Completing a later batch before an earlier batch of the same partition")
+  void outOfOrderCompletionTest() {
+    OffsetTracker offsetTracker = new OffsetTracker();
+    List<ConsumerRecord<String, String>> firstBatch = generateRecords(0, 0, 5);
+    List<ConsumerRecord<String, String>> secondBatch = generateRecords(0, 5, 10);
+    offsetTracker.register(firstBatch);
+    offsetTracker.register(secondBatch);
+
+    Map<TopicPartition, Long> secondOffsets = offsetTracker.complete(secondBatch);
+    int pendingCount = offsetTracker.getPendingCount(PARTITION_ZERO);
+    Map<TopicPartition, Long> firstOffsets = offsetTracker.complete(firstBatch);
+    assertAll("Out-Of-Order Completion",
+        () -> assertTrue(secondOffsets.isEmpty()),
+        () -> assertEquals(10, pendingCount),
+        () -> assertEquals(Collections.singletonMap(PARTITION_ZERO, 10L), firstOffsets)
+    );
+  }
+
+  @Test
+  @DisplayName("Completing a partial batch with gaps in the offsets")
+  void partialCompletionTest() {
+    OffsetTracker offsetTracker = new OffsetTracker();
+    List<ConsumerRecord<String, String>> batch = Arrays.asList(
+        generateRecord(0, 2),
+        generateRecord(0, 4),
+        generateRecord(0, 7),
+        generateRecord(1, 3)
+    );
+    offsetTracker.register(batch);
+
+    Map<TopicPartition, Long> offsets = offsetTracker.complete(Arrays.asList(batch.get(0), batch.get(2), batch.get(3)));
+    assertAll("Partial Completion",
+        () -> assertEquals(Long.valueOf(3L), offsets.get(PARTITION_ZERO)),
+        () -> assertEquals(Long.valueOf(4L), offsets.get(PARTITION_ONE)),
+        () -> assertEquals(2, offsetTracker.getPendingCount(PARTITION_ZERO)),
+        () -> assertEquals(Long.valueOf(8L), offsetTracker.complete(Collections.singletonList(batch.get(1))).get(PARTITION_ZERO))
+    );
+  }
+
+  @Test
+  @DisplayName("Peeking at the offsets of a batch without completing it")
+  void peekTest() {
+    OffsetTracker offsetTracker = new OffsetTracker();
+    List<ConsumerRecord<String, String>> firstBatch = generateRecords(0, 0, 5);
+    List<ConsumerRecord<String, String>> secondBatch = generateRecords(0, 5, 10);
+    offsetTracker.register(firstBatch);
+    offsetTracker.register(secondBatch);
+
+    Map<TopicPartition, Long> blockedOffsets = offsetTracker.peek(secondBatch);
+    Map<TopicPartition, Long> firstOffsets = offsetTracker.peek(firstBatch);
+    int pendingCount = offsetTracker.getPendingCount(PARTITION_ZERO);
+    offsetTracker.complete(secondBatch);
+    Map<TopicPartition, Long> combinedOffsets = offsetTracker.peek(firstBatch);
+    assertAll("Peek",
+        () -> assertTrue(blockedOffsets.isEmpty()),
+        () -> assertEquals(Collections.singletonMap(PARTITION_ZERO, 5L), firstOffsets),
+        () -> assertEquals(10, pendingCount),
+        () -> assertEquals(Collections.singletonMap(PARTITION_ZERO, 10L), combinedOffsets)
+    );
+  }
+
+  private List<ConsumerRecord<String, String>> generateRecords(int partition, long startOffset, long endOffset) {
+    return LongStream.range(startOffset, endOffset)
+        .mapToObj(offset -> generateRecord(partition, offset))
+        .collect(Collectors.toList());
+  }
+
+  private ConsumerRecord<String, String> generateRecord(int partition, long offset) {
+    return new ConsumerRecord<>(TOPIC, partition, offset, "KEY", "VALUE");
+  }
+}
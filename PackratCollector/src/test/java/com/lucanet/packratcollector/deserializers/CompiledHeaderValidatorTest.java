@@ -0,0 +1,78 @@
+package com.lucanet.packratcollector.deserializers;
+
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link CompiledHeaderValidator}
+ */
+@DisplayName("Validate the Compiled HealthCheckHeader Validator")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CompiledHeaderValidatorTest {
+
+  private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+  private final CompiledHeaderValidator compiledValidator = CompiledHeaderValidator.compile(validator)
+      .orElseThrow(() -> new IllegalStateException("HealthCheckHeader constraints could not be compiled"));
+
+  @Test
+  @DisplayName("Validating a valid header")
+  void validHeaderTest() {
+    assertTrue(compiledValidator.validate(generateHealthCheckHeader("Serial-AAAA", "System-AAAA1111", 1111111111L, 1111111111L, 1)).isEmpty());
+  }
+
+  @ParameterizedTest
+  @MethodSource("getInvalidHeaders")
+  @DisplayName("Validating invalid headers with the same messages as Bean Validation")
+  void invalidHeaderTest(HealthCheckHeader invalidHeader) {
+    Set<String> expectedViolations = validator.validate(invalidHeader).stream()
+        .map(violation -> String.format("%s: %s", violation.getPropertyPath(), violation.getMessage()))
+        .collect(Collectors.toSet());
+    Set<String> compiledViolations = new HashSet<>(compiledValidator.validate(invalidHeader));
+    assertAll("Invalid Header",
+        () -> assertFalse(compiledViolations.isEmpty()),
+        () -> assertEquals(expectedViolations, compiledViolations)
+    );
+  }
+
+  private Stream<HealthCheckHeader> getInvalidHeaders() {
+    return Stream.of(
+        generateHealthCheckHeader(null, "System-AAAA1111", 1111111111L, 1111111111L, 1),
+        generateHealthCheckHeader("", "System-AAAA1111", 1111111111L, 1111111111L, 1),
+        generateHealthCheckHeader("Serial-AAAA", "", 1111111111L, 1111111111L, 1),
+        generateHealthCheckHeader("Serial-AAAA", "System-AAAA1111", null, 1111111111L, 1),
+        generateHealthCheckHeader("Serial-AAAA", "System-AAAA1111", 1111111111L, null, 1),
+        generateHealthCheckHeader("Serial-AAAA", "System-AAAA1111", 1111111111L, 1111111111L, null),
+        generateHealthCheckHeader("Serial-AAAA", "System-AAAA1111", 1111111111L, 1111111111L, 0),
+        new HealthCheckHeader()
+    );
+  }
+
+  private HealthCheckHeader generateHealthCheckHeader(
+      String serialId,
+      String systemUUID,
+      Long sessionTimestamp,
+      Long healthCheckTimestamp,
+      Integer version
+  ) {
+    HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+    healthCheckHeader.setSerialId(serialId);
+    healthCheckHeader.setSystemUUID(systemUUID);
+    healthCheckHeader.setSessionTimestamp(sessionTimestamp);
+    healthCheckHeader.setHealthCheckTimestamp(healthCheckTimestamp);
+    healthCheckHeader.setVersion(version);
+    return healthCheckHeader;
+  }
+}
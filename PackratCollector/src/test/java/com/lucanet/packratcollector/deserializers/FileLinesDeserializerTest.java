@@ -1,26 +1,121 @@
 package com.lucanet.packratcollector.deserializers;
 
+import com.lucanet.packratcommon.model.FileLines;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.apache.kafka.common.errors.SerializationException;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.xerial.snappy.SnappyFramedOutputStream;
+import org.xerial.snappy.SnappyOutputStream;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Implementation of {@link AbstractDeserializerTest} for testing the {@link FileLinesDeserializer}
  */
 @DisplayName("Validate the FileLines Deserializer")
-class FileLinesDeserializerTest extends AbstractDeserializerTest<List<String>> {
+class FileLinesDeserializerTest extends AbstractDeserializerTest<FileLines> {
 
   FileLinesDeserializerTest() {
     super(new FileLinesDeserializer());
   }
 
+  @Test
+  @DisplayName("Decoding the lines in bounded chunks")
+  void chunkedDecodingTest() throws IOException {
+    List<String> lines = IntStream.range(0, 100)
+        .mapToObj(index -> String.format("LINE %03d", index))
+        .collect(Collectors.toList());
+    byte[] rawLines = lines.stream()
+        .map(line -> String.format("\"%s\"", line))
+        .collect(Collectors.joining(",", "[", "]"))
+        .getBytes(StandardCharsets.UTF_8);
+    FileLines fileLines = FileLines.read(rawLines, 100);
+    List<List<String>> chunks = new ArrayList<>();
+    fileLines.chunks().forEachRemaining(chunks::add);
+    assertAll("Chunked Decoding",
+        () -> assertEquals(100, fileLines.getLineCount()),
+        () -> assertEquals(10, chunks.size()),
+        () -> assertTrue(chunks.stream().allMatch(chunk -> chunk.size() == 10)),
+        () -> assertEquals(lines, chunks.stream().flatMap(List::stream).collect(Collectors.toList())),
+        () -> assertEquals(lines, fileLines.toList())
+    );
+  }
+
+  @Test
+  @DisplayName("Content-defined chunks survive inserted lines")
+  void contentDefinedChunksTest() throws IOException {
+    List<String> lines = IntStream.range(0, 1000)
+        .mapToObj(index -> String.format("LINE %04d", index))
+        .collect(Collectors.toList());
+    List<String> shiftedLines = new ArrayList<>(lines);
+    shiftedLines.add(0, "INSERTED LINE");
+    List<List<String>> chunks = readContentDefinedChunks(lines);
+    List<List<String>> shiftedChunks = readContentDefinedChunks(shiftedLines);
+    assertAll("Content-Defined Chunks",
+        () -> assertTrue(chunks.size() > 1),
+        () -> assertEquals(lines, chunks.stream().flatMap(List::stream).collect(Collectors.toList())),
+        () -> assertEquals(chunks.subList(1, chunks.size()), shiftedChunks.subList(1, shiftedChunks.size()))
+    );
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = PayloadCompression.class, mode = EnumSource.Mode.EXCLUDE, names = "NONE")
+  @DisplayName("Deserializing compressed data")
+  void compressedDataTest(PayloadCompression compression) throws IOException {
+    byte[] rawLines = "[\"LINE ONE\",\"LINE TWO\",\"LINE THREE\"]".getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream compressedData = new ByteArrayOutputStream();
+    try (OutputStream compressingStream = openCompressingStream(compression, compressedData)) {
+      compressingStream.write(rawLines);
+    }
+    FileLines fileLines = new FileLinesDeserializer().deserialize("Test Topic", compressedData.toByteArray());
+    assertAll("Compressed Data",
+        () -> assertEquals(compression, PayloadCompression.detect(compressedData.toByteArray())),
+        () -> assertNotNull(fileLines),
+        () -> assertEquals(Arrays.asList("LINE ONE", "LINE TWO", "LINE THREE"), fileLines.toList())
+    );
+  }
+
+  @Test
+  @DisplayName("Reading a file without lines")
+  void noLinesTest() throws IOException {
+    assertNull(FileLines.read("[]".getBytes(StandardCharsets.UTF_8), FileLines.DEFAULT_CHUNK_MAX_BYTES));
+  }
+
+  @Test
+  @DisplayName("Rejecting a file without lines")
+  void emptyFileTest() {
+    FileLinesDeserializer fileLinesDeserializer = new FileLinesDeserializer();
+    byte[] emptyFile = "[]".getBytes(StandardCharsets.UTF_8);
+    SerializationException rejection = assertThrows(SerializationException.class, () ->
+        fileLinesDeserializer.deserializeOrReject("Test Topic", emptyFile)
+    );
+    assertAll("Empty File",
+        () -> assertEquals("Empty value for 'Test Topic'", rejection.getMessage()),
+        () -> assertNull(fileLinesDeserializer.deserialize("Test Topic", emptyFile))
+    );
+  }
+
   @Override
-  protected List<String> getNormalInstance() {
-    return Arrays.asList("LINE ONE", "LINE TWO", "LINE THREE");
+  protected FileLines getNormalInstance() {
+    try {
+      return FileLines.read("[\"LINE ONE\",\"LINE TWO\",\"LINE THREE\"]".getBytes(StandardCharsets.UTF_8), FileLines.DEFAULT_CHUNK_MAX_BYTES);
+    } catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
   }
 
   @Override
@@ -34,7 +129,33 @@ class FileLinesDeserializerTest extends AbstractDeserializerTest<List<String>> {
   }
 
   @Override
-  protected List<String> getEmptyInstance() {
-    return Collections.emptyList();
+  protected FileLines getEmptyInstance() {
+    //FileLines cannot hold a file without lines, so the "[]" payload is covered by emptyFileTest() instead
+    return null;
+  }
+
+  private List<List<String>> readContentDefinedChunks(List<String> lines) throws IOException {
+    byte[] rawLines = lines.stream()
+        .map(line -> String.format("\"%s\"", line))
+        .collect(Collectors.joining(",", "[", "]"))
+        .getBytes(StandardCharsets.UTF_8);
+    List<List<String>> chunks = new ArrayList<>();
+    FileLines.read(rawLines, FileLines.DEFAULT_CHUNK_MAX_BYTES).contentDefinedChunks().forEachRemaining(chunks::add);
+    return chunks;
+  }
+
+  private OutputStream openCompressingStream(PayloadCompression compression, OutputStream outputStream) throws IOException {
+    switch (compression) {
+      case GZIP:
+        return new GZIPOutputStream(outputStream);
+      case LZ4:
+        return new LZ4FrameOutputStream(outputStream);
+      case SNAPPY:
+        return new SnappyOutputStream(outputStream);
+      case SNAPPY_FRAMED:
+        return new SnappyFramedOutputStream(outputStream);
+      default:
+        return outputStream;
+    }
   }
 }
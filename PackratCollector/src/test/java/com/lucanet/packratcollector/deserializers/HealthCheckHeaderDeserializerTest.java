@@ -1,11 +1,16 @@
 package com.lucanet.packratcollector.deserializers;
 
 import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.apache.kafka.common.errors.SerializationException;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 /**
  * Implementation of {@link AbstractDeserializerTest} for testing the {@link HealthCheckHeaderDeserializer}
  */
@@ -16,6 +21,25 @@ class HealthCheckHeaderDeserializerTest extends AbstractDeserializerTest<HealthC
     super(new HealthCheckHeaderDeserializer());
   }
 
+  @Test
+  @DisplayName("Reporting why a header is rejected")
+  void rejectionTest() {
+    HealthCheckHeaderDeserializer deserializer = new HealthCheckHeaderDeserializer();
+    SerializationException violationException = assertThrows(SerializationException.class, () -> deserializer.deserializeOrReject(
+        "Test Topic",
+        "{\"serialId\":\"Serial-AAAA\",\"systemUUID\":\"System-AAAA1111\",\"sessionTimestamp\":1111111111,\"healthCheckTimestamp\":1111111111,\"version\":-1}".getBytes(StandardCharsets.UTF_8)
+    ));
+    SerializationException parseException = assertThrows(SerializationException.class, () -> deserializer.deserializeOrReject(
+        "Test Topic",
+        "{\"serialId\":".getBytes(StandardCharsets.UTF_8)
+    ));
+    assertAll("Rejection",
+        () -> assertTrue(violationException.getMessage().contains("version")),
+        () -> assertNotNull(parseException.getCause()),
+        () -> assertThrows(SerializationException.class, () -> deserializer.deserializeOrReject("Test Topic", new byte[0]))
+    );
+  }
+
   @Override
   protected HealthCheckHeader getNormalInstance() {
     return generateHealthCheckHeader(
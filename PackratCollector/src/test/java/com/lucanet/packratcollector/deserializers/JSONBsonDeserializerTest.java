@@ -0,0 +1,69 @@
+package com.lucanet.packratcollector.deserializers;
+
+import org.bson.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link JSONBsonDeserializer}
+ */
+@DisplayName("Validate the JSON-to-BSON Deserializer")
+class JSONBsonDeserializerTest {
+
+  private final JSONBsonDeserializer deserializer = new JSONBsonDeserializer();
+
+  @Test
+  @DisplayName("Deserializing an ideal instance")
+  void normalDeserializationTest() {
+    RawBsonDocument deserializedDocument = deserialize(
+        "{\"TEST ONE\":1,\"TEST TWO\":\"two\",\"TEST THREE\":{\"NESTED\":[3000000000,3.5,true,null,{}]}}"
+    );
+    BsonDocument expectedDocument = new BsonDocument()
+        .append("TEST ONE", new BsonInt32(1))
+        .append("TEST TWO", new BsonString("two"))
+        .append("TEST THREE", new BsonDocument("NESTED", new BsonArray(Arrays.asList(
+            new BsonInt64(3000000000L),
+            new BsonDouble(3.5),
+            BsonBoolean.TRUE,
+            BsonNull.VALUE,
+            new BsonDocument()
+        ))));
+    assertAll("Normal Instance",
+        () -> assertNotNull(deserializedDocument),
+        () -> assertEquals(expectedDocument, deserializedDocument)
+    );
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"\"Invalid One\"", "2", "true", "[]", "{\"TRUNCATED\":[1,2"})
+  @DisplayName("Deserializing invalid data types")
+  void invalidTypesTest(String invalidType) {
+    assertNull(deserialize(invalidType), () -> String.format("Object %s did not deserialize to null as expected!", invalidType));
+  }
+
+  @Test
+  @DisplayName("Deserializing an empty instance of the data type")
+  void noDataTest() {
+    assertNull(deserialize("{}"));
+  }
+
+  @Test
+  @DisplayName("Deserializing null input")
+  void nullInputTest() {
+    assertAll("Null Input",
+        () -> assertNull(deserializer.deserialize("Test Topic", new byte[0])),
+        () -> assertNull(deserializer.deserialize("Test Topic", null))
+    );
+  }
+
+  private RawBsonDocument deserialize(String json) {
+    return deserializer.deserialize("Test Topic", json.getBytes(StandardCharsets.UTF_8));
+  }
+}
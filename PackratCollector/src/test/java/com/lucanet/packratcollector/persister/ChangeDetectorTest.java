@@ -0,0 +1,80 @@
+package com.lucanet.packratcollector.persister;
+
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link ChangeDetector}
+ */
+@DisplayName("Validate the Change Detector")
+class ChangeDetectorTest {
+
+  private static final String TOPIC = "Test Topic";
+  private static final String SYSTEM_UUID = "f8e3c0b2-7a1d-4c5e-9b6f-0d2a4e8c1f3b";
+
+  @Test
+  @DisplayName("Detecting unchanged data within a session")
+  void unchangedDataTest() {
+    ChangeDetector changeDetector = new ChangeDetector(Collections.singletonList(TOPIC), 10);
+    HealthCheckHeader firstHeader = generateHeader(1000L, 1001L);
+    HealthCheckHeader secondHeader = generateHeader(1000L, 1002L);
+    HealthCheckHeader thirdHeader = generateHeader(1000L, 1003L);
+    HealthCheckHeader nextSessionHeader = generateHeader(2000L, 2001L);
+    Map<String, Object> data = Collections.singletonMap("cpuCount", 8);
+    Map<String, Object> changedData = Collections.singletonMap("cpuCount", 16);
+    assertAll("Unchanged Data",
+        () -> assertNull(changeDetector.findUnchanged(TOPIC, firstHeader, data)),
+        () -> assertEquals(firstHeader, changeDetector.findUnchanged(TOPIC, secondHeader, data)),
+        () -> assertNull(changeDetector.findUnchanged(TOPIC, thirdHeader, changedData)),
+        () -> assertEquals(thirdHeader, changeDetector.findUnchanged(TOPIC, secondHeader, changedData)),
+        () -> assertNull(changeDetector.findUnchanged(TOPIC, nextSessionHeader, changedData)),
+        () -> assertTrue(changeDetector.isStoreOnChange(TOPIC)),
+        () -> assertFalse(changeDetector.isStoreOnChange("Other Topic"))
+    );
+  }
+
+  @Test
+  @DisplayName("Storing data again after forgetting a failed write")
+  void forgetTest() {
+    ChangeDetector changeDetector = new ChangeDetector(Collections.singletonList(TOPIC), 10);
+    HealthCheckHeader firstHeader = generateHeader(1000L, 1001L);
+    HealthCheckHeader secondHeader = generateHeader(1000L, 1002L);
+    Map<String, Object> data = Collections.singletonMap("cpuCount", 8);
+    assertNull(changeDetector.findUnchanged(TOPIC, firstHeader, data));
+    changeDetector.forget(TOPIC, firstHeader);
+    assertNull(changeDetector.findUnchanged(TOPIC, secondHeader, data));
+  }
+
+  @Test
+  @DisplayName("Deferring the extension of a record that is still being written")
+  void deferValidityTest() {
+    ChangeDetector changeDetector = new ChangeDetector(Collections.singletonList(TOPIC), 10);
+    HealthCheckHeader firstHeader = generateHeader(1000L, 1001L);
+    HealthCheckHeader secondHeader = generateHeader(1000L, 1002L);
+    Map<String, Object> data = Collections.singletonMap("cpuCount", 8);
+    assertNull(changeDetector.findUnchanged(TOPIC, firstHeader, data));
+    assertEquals(firstHeader, changeDetector.findUnchanged(TOPIC, secondHeader, data));
+    assertAll("Deferred Validity",
+        () -> assertTrue(changeDetector.deferValidity(TOPIC, firstHeader, 1002L)),
+        () -> assertEquals(Long.valueOf(1002L), changeDetector.markStored(TOPIC, firstHeader)),
+        () -> assertFalse(changeDetector.deferValidity(TOPIC, firstHeader, 1003L)),
+        () -> assertNull(changeDetector.markStored(TOPIC, firstHeader))
+    );
+  }
+
+  private HealthCheckHeader generateHeader(long sessionTimestamp, long healthCheckTimestamp) {
+    HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+    healthCheckHeader.setSerialId("TEST-SERIAL");
+    healthCheckHeader.setSystemUUID(SYSTEM_UUID);
+    healthCheckHeader.setSessionTimestamp(sessionTimestamp);
+    healthCheckHeader.setHealthCheckTimestamp(healthCheckTimestamp);
+    healthCheckHeader.setVersion(1);
+    return healthCheckHeader;
+  }
+}
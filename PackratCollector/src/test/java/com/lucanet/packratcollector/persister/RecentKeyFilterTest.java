@@ -0,0 +1,52 @@
+package com.lucanet.packratcollector.persister;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link RecentKeyFilter}
+ */
+@DisplayName("Validate the Recent Key Filter")
+class RecentKeyFilterTest {
+
+  private static final String TOPIC = "Test Topic";
+
+  @Test
+  @DisplayName("Spotting recently seen keys per topic")
+  void recentKeysTest() {
+    RecentKeyFilter recentKeyFilter = new RecentKeyFilter(1000, 0.01);
+    assertAll("Recent Keys",
+        () -> assertFalse(recentKeyFilter.checkAndPut(TOPIC, "Serial-AAAA_System-AAAA1111_1111111111")),
+        () -> assertTrue(recentKeyFilter.checkAndPut(TOPIC, "Serial-AAAA_System-AAAA1111_1111111111")),
+        () -> assertFalse(recentKeyFilter.checkAndPut("Other Topic", "Serial-AAAA_System-AAAA1111_1111111111")),
+        () -> assertFalse(recentKeyFilter.checkAndPut(TOPIC, "Serial-AAAA_System-AAAA1111_2222222222"))
+    );
+  }
+
+  @Test
+  @DisplayName("Remembering at least the capacity of keys at the expected false positive rate")
+  void rollingGenerationsTest() {
+    RecentKeyFilter recentKeyFilter = new RecentKeyFilter(1000, 0.01);
+    IntStream.range(0, 1500).forEach(keyIndex -> recentKeyFilter.checkAndPut(TOPIC, "Key-" + keyIndex));
+    assertTrue(IntStream.range(500, 1500).allMatch(keyIndex -> recentKeyFilter.checkAndPut(TOPIC, "Key-" + keyIndex)));
+    long falsePositiveCount = IntStream.range(0, 1000)
+        .filter(keyIndex -> recentKeyFilter.checkAndPut(TOPIC, "Probe-" + keyIndex))
+        .count();
+    assertTrue(falsePositiveCount < 50, "False positives: " + falsePositiveCount);
+  }
+
+  @Test
+  @DisplayName("Reporting no duplicates when disabled")
+  void disabledTest() {
+    RecentKeyFilter recentKeyFilter = new RecentKeyFilter(0, 0.01);
+    recentKeyFilter.checkAndPut(TOPIC, "Key-1");
+    assertAll("Disabled",
+        () -> assertFalse(recentKeyFilter.isEnabled()),
+        () -> assertFalse(recentKeyFilter.checkAndPut(TOPIC, "Key-1"))
+    );
+  }
+}
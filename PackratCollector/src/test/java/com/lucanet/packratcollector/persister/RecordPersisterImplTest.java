@@ -0,0 +1,196 @@
+package com.lucanet.packratcollector.persister;
+
+import com.lucanet.packratcommon.db.BatchWriteResult;
+import com.lucanet.packratcommon.db.DatabaseConnection;
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import com.lucanet.packratcommon.model.HealthCheckRecord;
+import com.lucanet.packratcommon.model.Rollup;
+import com.lucanet.packratcommon.model.RollupResolution;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link RecordPersisterImpl}
+ */
+@DisplayName("Validate the Record Persister")
+class RecordPersisterImplTest {
+
+  private static final String TOPIC = "DynamicSystemStats";
+  private static final String STORE_ON_CHANGE_TOPIC = "StaticSystemStats";
+
+  @Test
+  @DisplayName("Rolling up a replayed bucketed record only once")
+  void replayedRollupTest() {
+    StubDatabase stubDatabase = new StubDatabase(false);
+    RecordPersisterImpl recordPersister = buildPersister(stubDatabase);
+    try {
+      recordPersister.persistBatch(Collections.singletonList(buildRecord(0L)));
+      recordPersister.persistBatch(Collections.singletonList(buildRecord(1L)));
+    } finally {
+      recordPersister.shutdown();
+    }
+    assertRolledUpOnce(stubDatabase);
+  }
+
+  @Test
+  @DisplayName("Rolling up a replayed bucketed record only once within transactions")
+  void replayedTransactionalRollupTest() {
+    StubDatabase stubDatabase = new StubDatabase(true);
+    RecordPersisterImpl recordPersister = buildPersister(stubDatabase);
+    TopicPartition topicPartition = new TopicPartition(TOPIC, 0);
+    try {
+      assertTrue(recordPersister.persistBatch(Collections.singletonList(buildRecord(0L)), Collections.singletonMap(topicPartition, 1L)));
+      assertTrue(recordPersister.persistBatch(Collections.singletonList(buildRecord(0L)), Collections.singletonMap(topicPartition, 1L)));
+    } finally {
+      recordPersister.shutdown();
+    }
+    assertRolledUpOnce(stubDatabase);
+  }
+
+  @Test
+  @DisplayName("Extending a record that is written in the same batch")
+  void sameBatchValidityTest() {
+    StubDatabase stubDatabase = new StubDatabase(false);
+    RecordPersisterImpl recordPersister = buildPersister(stubDatabase);
+    try {
+      recordPersister.persistBatch(Arrays.asList(
+          buildStoreOnChangeRecord(0L, 1500000010L, 8),
+          buildStoreOnChangeRecord(1L, 1500000020L, 8)
+      ));
+      recordPersister.persistBatch(Collections.singletonList(buildStoreOnChangeRecord(2L, 1500000030L, 8)));
+    } finally {
+      recordPersister.shutdown();
+    }
+    assertAll("Validity",
+        () -> assertEquals(1, stubDatabase.storedKeys.size()),
+        () -> assertEquals(Long.valueOf(1500000030L), stubDatabase.validUntilMap.get(buildStoreOnChangeRecord(0L, 1500000010L, 8).key().getUniqueId()))
+    );
+  }
+
+  private void assertRolledUpOnce(StubDatabase stubDatabase) {
+    Map<RollupResolution, Long> countMap = new EnumMap<>(RollupResolution.class);
+    stubDatabase.rollups.forEach(rollup -> countMap.merge(rollup.getResolution(), rollup.getCount(), Long::sum));
+    assertAll("Rollup Counts",
+        () -> assertEquals(2, stubDatabase.persistCount),
+        () -> assertEquals(1L, countMap.get(RollupResolution.MINUTE).longValue()),
+        () -> assertEquals(1L, countMap.get(RollupResolution.HOUR).longValue())
+    );
+  }
+
+  private RecordPersisterImpl buildPersister(StubDatabase stubDatabase) {
+    DatabaseConnection databaseConnection = (DatabaseConnection) Proxy.newProxyInstance(
+        DatabaseConnection.class.getClassLoader(),
+        new Class<?>[]{DatabaseConnection.class},
+        stubDatabase
+    );
+    return new RecordPersisterImpl(
+        databaseConnection, 60000L, Collections.singletonList(STORE_ON_CHANGE_TOPIC), 100, 1000, 0.01, Collections.singletonList(TOPIC)
+    );
+  }
+
+  private ConsumerRecord<HealthCheckHeader, Map<String, Object>> buildRecord(long offset) {
+    HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+    healthCheckHeader.setSerialId("Serial-AAAA");
+    healthCheckHeader.setSystemUUID("System-AAAA1111");
+    healthCheckHeader.setSessionTimestamp(1500000000L);
+    healthCheckHeader.setHealthCheckTimestamp(1500000010L);
+    healthCheckHeader.setVersion(1);
+    return new ConsumerRecord<>(TOPIC, 0, offset, healthCheckHeader, Collections.singletonMap("cpuLoad", 2.0));
+  }
+
+  private ConsumerRecord<HealthCheckHeader, Map<String, Object>> buildStoreOnChangeRecord(long offset, long healthCheckTimestamp, int cpuCount) {
+    HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+    healthCheckHeader.setSerialId("Serial-AAAA");
+    healthCheckHeader.setSystemUUID("System-AAAA1111");
+    healthCheckHeader.setSessionTimestamp(1500000000L);
+    healthCheckHeader.setHealthCheckTimestamp(healthCheckTimestamp);
+    healthCheckHeader.setVersion(1);
+    return new ConsumerRecord<>(STORE_ON_CHANGE_TOPIC, 0, offset, healthCheckHeader, Collections.singletonMap("cpuCount", cpuCount));
+  }
+
+  /**
+   * Stand-in for a database that reports HealthChecks that are already stored as duplicates (as the buckets of a
+   * bucketed topic do), only extends the validity of stored HealthChecks and captures the rollups that are written.
+   */
+  private static class StubDatabase implements InvocationHandler {
+
+    private final boolean transactional;
+    private final Set<String> storedKeys = new HashSet<>();
+    private final Map<String, Long> validUntilMap = new HashMap<>();
+    private final List<Rollup> rollups = new ArrayList<>();
+    private int persistCount = 0;
+
+    StubDatabase(boolean transactional) {
+      this.transactional = transactional;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "isTransactional":
+          return transactional;
+        case "persistRecords":
+          return persistBuckets((List<?>) args[1]);
+        case "persistRecordsWithOffsets":
+          Map<String, BatchWriteResult> topicResultsMap = new HashMap<>();
+          ((Map<?, ?>) args[0]).forEach((topic, healthCheckRecords) ->
+              topicResultsMap.put((String) topic, persistBuckets((List<?>) healthCheckRecords))
+          );
+          return topicResultsMap;
+        case "extendValidity":
+          long foundCount = 0L;
+          for (Map.Entry<?, ?> validUntilEntry : ((Map<?, ?>) args[1]).entrySet()) {
+            String uniqueId = ((HealthCheckHeader) validUntilEntry.getKey()).getUniqueId();
+            if (storedKeys.contains(uniqueId)) {
+              validUntilMap.merge(uniqueId, (Long) validUntilEntry.getValue(), Math::max);
+              foundCount++;
+            }
+          }
+          return foundCount;
+        case "updateRollups":
+          ((Collection<?>) args[1]).forEach(rollup -> rollups.add((Rollup) rollup));
+          return ((Collection<?>) args[1]).size();
+        default:
+          return defaultValue(method.getReturnType());
+      }
+    }
+
+    private BatchWriteResult persistBuckets(List<?> healthCheckRecords) {
+      persistCount++;
+      int persistedCount = 0;
+      List<Integer> duplicateIndexes = new ArrayList<>();
+      for (int recordIndex = 0; recordIndex < healthCheckRecords.size(); recordIndex++) {
+        if (storedKeys.add(((HealthCheckRecord<?>) healthCheckRecords.get(recordIndex)).getUniqueId())) {
+          persistedCount++;
+        } else {
+          duplicateIndexes.add(recordIndex);
+        }
+      }
+      return new BatchWriteResult(persistedCount, duplicateIndexes, Collections.emptyMap());
+    }
+
+    private Object defaultValue(Class<?> returnType) {
+      if (returnType == boolean.class) {
+        return false;
+      } else if (returnType == int.class) {
+        return 0;
+      } else if (returnType == long.class) {
+        return 0L;
+      } else if (returnType == List.class) {
+        return Collections.emptyList();
+      } else if (returnType == Map.class) {
+        return Collections.emptyMap();
+      }
+      return null;
+    }
+  }
+}
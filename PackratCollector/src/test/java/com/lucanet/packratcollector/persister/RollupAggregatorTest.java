@@ -0,0 +1,90 @@
+package com.lucanet.packratcollector.persister;
+
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import com.lucanet.packratcommon.model.HealthCheckRecord;
+import com.lucanet.packratcommon.model.Rollup;
+import com.lucanet.packratcommon.model.RollupResolution;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link RollupAggregator}
+ */
+@DisplayName("Validate the Rollup Aggregator")
+class RollupAggregatorTest {
+
+  private static final String TOPIC = "DynamicSystemStats";
+
+  @Test
+  @DisplayName("Rolling up numeric fields per computer and window")
+  void aggregateTest() {
+    RollupAggregator rollupAggregator = new RollupAggregator(Arrays.asList(TOPIC, ""));
+    List<HealthCheckRecord<Map<String, Object>>> healthCheckRecords = Arrays.asList(
+        buildRecord("System-AAAA1111", 1500000010L, 2.0, 100),
+        buildRecord("System-AAAA1111", 1500000050L, 4.0, 300),
+        buildRecord("System-AAAA1111", 1500000070L, 6.0, 200),
+        buildRecord("System-BBBB2222", 1500000010L, 1.0, 50)
+    );
+    Map<String, Rollup> rollupMap = new HashMap<>();
+    rollupAggregator.aggregate(healthCheckRecords).forEach(rollup ->
+        rollupMap.put(rollup.getSystemUUID() + "_" + rollup.getResolution() + "_" + rollup.getWindowStart(), rollup)
+    );
+    Rollup firstMinute = rollupMap.get("System-AAAA1111_MINUTE_1500000000");
+    Rollup hour = rollupMap.get("System-AAAA1111_HOUR_1499997600");
+    assertAll("Rollups",
+        () -> assertTrue(rollupAggregator.isRolledUp(TOPIC)),
+        () -> assertFalse(rollupAggregator.isRolledUp("")),
+        () -> assertEquals(5, rollupMap.size()),
+        () -> assertEquals(2L, firstMinute.getCount()),
+        () -> assertEquals(new HashSet<>(Arrays.asList("cpuLoad", "memory.used")), firstMinute.getFieldStatsMap().keySet()),
+        () -> assertEquals(2.0, firstMinute.getFieldStatsMap().get("cpuLoad").getMin()),
+        () -> assertEquals(4.0, firstMinute.getFieldStatsMap().get("cpuLoad").getMax()),
+        () -> assertEquals(6.0, firstMinute.getFieldStatsMap().get("cpuLoad").getSum()),
+        () -> assertEquals(20.0, firstMinute.getFieldStatsMap().get("cpuLoad").getSumOfSquares()),
+        () -> assertEquals(3L, hour.getCount()),
+        () -> assertEquals(600.0, hour.getFieldStatsMap().get("memory.used").getSum()),
+        () -> assertEquals(RollupResolution.HOUR, hour.getResolution())
+    );
+  }
+
+  @Test
+  @DisplayName("Skipping non-numeric and unaddressable fields")
+  void skippedFieldsTest() {
+    RollupAggregator rollupAggregator = new RollupAggregator(Collections.singletonList(TOPIC));
+    BsonDocument data = BsonDocument.parse(
+        "{\"cpuLoad\": 1.5, \"name\": \"host\", \"online\": true, \"cores\": [1, 2], \"a.b\": 3, \"$c\": 4, \"disk\": {\"free\": 10, \"_stats\": {\"min\": 1}}}"
+    );
+    Collection<Rollup> rollups = rollupAggregator.aggregate(Collections.singletonList(
+        new HealthCheckRecord<>(buildHeader("System-AAAA1111", 1500000010L), data)
+    ));
+    assertAll("Skipped Fields",
+        () -> assertEquals(2, rollups.size()),
+        () -> rollups.forEach(rollup ->
+            assertEquals(new HashSet<>(Arrays.asList("cpuLoad", "disk.free")), rollup.getFieldStatsMap().keySet())
+        )
+    );
+  }
+
+  private HealthCheckRecord<Map<String, Object>> buildRecord(String systemUUID, long healthCheckTimestamp, double cpuLoad, int memoryUsed) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("cpuLoad", cpuLoad);
+    data.put("memory", Collections.singletonMap("used", memoryUsed));
+    data.put("hostname", "host");
+    return new HealthCheckRecord<>(buildHeader(systemUUID, healthCheckTimestamp), data);
+  }
+
+  private HealthCheckHeader buildHeader(String systemUUID, long healthCheckTimestamp) {
+    HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+    healthCheckHeader.setSerialId("Serial-AAAA");
+    healthCheckHeader.setSystemUUID(systemUUID);
+    healthCheckHeader.setSessionTimestamp(1500000000L);
+    healthCheckHeader.setHealthCheckTimestamp(healthCheckTimestamp);
+    healthCheckHeader.setVersion(1);
+    return healthCheckHeader;
+  }
+}
@@ -0,0 +1,70 @@
+package com.lucanet.packratcommon.db;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DTO Class representing the per-record outcome of persisting a batch of HealthCheck records.
+ * <p>
+ * Record positions refer to the indexes of the list that was passed to {@link DatabaseConnection#persistRecords}.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class BatchWriteResult {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The number of HealthCheck records that were written to the database.
+   */
+  private final int persistedCount;
+  /**
+   * The positions of the HealthCheck records that were rejected because an entry with the same key already exists.
+   */
+  private final List<Integer> duplicateIndexes;
+  /**
+   * The positions of the HealthCheck records that failed for any other reason, mapped to the error message.
+   */
+  private final Map<Integer, String> failedIndexes;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Batch result constructor.
+   * @param persistedCount The number of HealthCheck records that were written to the database.
+   * @param duplicateIndexes The positions of the HealthCheck records that were rejected as duplicates.
+   * @param failedIndexes The positions of the HealthCheck records that failed for any other reason.
+   */
+  public BatchWriteResult(int persistedCount, List<Integer> duplicateIndexes, Map<Integer, String> failedIndexes) {
+    this.persistedCount = persistedCount;
+    this.duplicateIndexes = Collections.unmodifiableList(duplicateIndexes);
+    this.failedIndexes = Collections.unmodifiableMap(failedIndexes);
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Get the persisted record count.
+   * @return {@link #persistedCount}
+   */
+  public int getPersistedCount() {
+    return persistedCount;
+  }
+
+  /**
+   * Get the duplicate record positions.
+   * @return {@link #duplicateIndexes}
+   */
+  public List<Integer> getDuplicateIndexes() {
+    return duplicateIndexes;
+  }
+
+  /**
+   * Get the failed record positions.
+   * @return {@link #failedIndexes}
+   */
+  public Map<Integer, String> getFailedIndexes() {
+    return failedIndexes;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+}
@@ -1,7 +1,13 @@
 package com.lucanet.packratcommon.db;
 
+import com.lucanet.packratcommon.model.DeadLetter;
 import com.lucanet.packratcommon.model.HealthCheckHeader;
+import com.lucanet.packratcommon.model.HealthCheckRecord;
+import com.lucanet.packratcommon.model.Rollup;
+import com.lucanet.packratcommon.model.RollupResolution;
 
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -21,6 +27,68 @@ public interface DatabaseConnection {
    * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
    */
   <T> void persistRecord(String healthCheckType, HealthCheckHeader healthCheckHeader, T record) throws IllegalArgumentException;
+  /**
+   * Persist a batch of HealthCheck records of the same type. Failures of individual records (e.g. duplicate keys)
+   * do not prevent the remaining records from being persisted.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @param <T> The HealthCheck data type.
+   * @return The per-record outcome of the batch.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   */
+  <T> BatchWriteResult persistRecords(String healthCheckType, List<HealthCheckRecord<T>> healthCheckRecords) throws IllegalArgumentException;
+  /**
+   * Persist a batch of HealthCheck records of the same type, some of which are likely to exist already (e.g. because
+   * their messages are being replayed). The likely duplicates are written in a way that leaves existing records
+   * untouched without failing, and are reported as duplicates if they exist.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @param likelyDuplicates The positions of the HealthCheck records that are likely to exist already.
+   * @param <T> The HealthCheck data type.
+   * @return The per-record outcome of the batch.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   */
+  <T> BatchWriteResult persistRecords(String healthCheckType, List<HealthCheckRecord<T>> healthCheckRecords, BitSet likelyDuplicates) throws IllegalArgumentException;
+  /**
+   * Persist batches of HealthCheck records together with the message offsets they advance, such that either all of
+   * the records and offsets are persisted or none of them are. Records that already exist are left untouched, and
+   * HealthCheck types that do not exist in the database yet are created.
+   * @param healthCheckRecords The HealthCheck records, mapped by HealthCheck type.
+   * @param newOffsets The new message offsets, mapped by HealthCheck type and then by message partition.
+   * @param <T> The HealthCheck data type.
+   * @return The per-record outcome of the batch of each HealthCheck type.
+   * @throws UnsupportedOperationException Signifies that the database connection is not {@link #isTransactional()}.
+   */
+  <T> Map<String, BatchWriteResult> persistRecordsWithOffsets(Map<String, List<HealthCheckRecord<T>>> healthCheckRecords, Map<String, Map<Integer, Long>> newOffsets) throws UnsupportedOperationException;
+  /**
+   * Determine whether HealthCheck records and message offsets can be persisted atomically.
+   * @return Whether {@link #persistRecordsWithOffsets(Map, Map)} is supported.
+   */
+  boolean isTransactional();
+  /**
+   * Determine whether HealthCheck records of a point in time are still retained. Records that are no longer retained
+   * are rejected instead of being persisted.
+   * @param healthCheckTimestamp The HealthCheck timestamp of the records (in seconds since the UNIX epoch).
+   * @return Whether records of the HealthCheck timestamp are retained.
+   */
+  boolean isRetained(long healthCheckTimestamp);
+  /**
+   * Extend the validity of stored HealthCheck records of the same type, which stand for later HealthChecks with
+   * identical data. The validity of a record is never shortened, so extending it again is harmless.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param validUntilMap The HealthCheck timestamp up to which each record is valid, mapped by the record's metadata.
+   * @return The number of records that were found in the database.
+   */
+  long extendValidity(String healthCheckType, Map<HealthCheckHeader, Long> validUntilMap);
+
+  /**
+   * Rewrite the IDs of the stored records of the specified HealthCheck type into the configured key format.
+   * @param healthCheckType The specified HealthCheck type.
+   * @return The number of rewritten records.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   * @throws InterruptedException Signifies that the migration was interrupted.
+   */
+  long migrateKeys(String healthCheckType) throws IllegalArgumentException, InterruptedException;
   /**
    * Get the message offset for the specified HealthCheck type and message partition.
    * @param healthCheckType The specified HealthCheck type.
@@ -37,6 +105,45 @@ public interface DatabaseConnection {
    * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
    */
   void updateOffset(String healthCheckType, int partition, long newOffset) throws IllegalArgumentException;
+  /**
+   * Get the stored message offsets of every partition for the specified HealthCheck types.
+   * @param healthCheckTypes The specified HealthCheck types.
+   * @return The message offsets, mapped by HealthCheck type and then by message partition. Partitions without a
+   * stored offset are absent.
+   */
+  Map<String, Map<Integer, Long>> getOffsets(Collection<String> healthCheckTypes);
+  /**
+   * Set new message offsets for multiple HealthCheck types and message partitions at once. A stored offset is only
+   * replaced if the new offset is higher.
+   * @param newOffsets The new message offsets, mapped by HealthCheck type and then by message partition.
+   */
+  void updateOffsets(Map<String, Map<Integer, Long>> newOffsets);
+  /**
+   * Persist HealthCheck messages that could not be processed. Dead letters that are already stored are left
+   * untouched.
+   * @param deadLetters The dead letters.
+   * @return The number of dead letters that were persisted.
+   */
+  int persistDeadLetters(List<DeadLetter> deadLetters);
+  /**
+   * Request the stored HealthCheck messages that could not be processed, oldest failures first.
+   * @param topic The topic of the dead letters, or null for the dead letters of all topics.
+   * @param maxCount The maximum number of dead letters.
+   * @return The dead letters.
+   */
+  List<DeadLetter> getDeadLetters(String topic, int maxCount);
+  /**
+   * Remove stored HealthCheck messages that could not be processed, e.g. once they have been replayed.
+   * @param deadLetters The dead letters.
+   */
+  void removeDeadLetters(List<DeadLetter> deadLetters);
+  /**
+   * Merge rollups of HealthCheck data into the stored rollups of the same HealthCheck type, computer and window.
+   * @param healthCheckType The type of the rolled up HealthChecks.
+   * @param rollups The rollups.
+   * @return The number of rollups that were merged.
+   */
+  int updateRollups(String healthCheckType, Collection<Rollup> rollups);
   /**
    * Request a list of HealthCheck types that the database persists.
    * @return The list of persistable HealthCheck type.
@@ -66,6 +173,17 @@ public interface DatabaseConnection {
    * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
    */
   List<Map<String, Object>> getSessionHealthChecks(String healthCheckType, String systemUUID, Long sessionTimestamp) throws IllegalArgumentException;
+  /**
+   * Request the rollups of a computer's HealthChecks of the specified HealthCheck type within a time range.
+   * @param healthCheckType The specified HealthCheck type.
+   * @param systemUUID The specified computer (in the form of a UUID entity).
+   * @param resolution The time window over which the HealthChecks are rolled up.
+   * @param fromTimestamp The start of the time range (inclusive, in seconds since the UNIX epoch).
+   * @param toTimestamp The end of the time range (exclusive, in seconds since the UNIX epoch).
+   * @return The rollups whose windows start within the time range, in chronological order.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   */
+  List<Map<String, Object>> getRollups(String healthCheckType, String systemUUID, RollupResolution resolution, long fromTimestamp, long toTimestamp) throws IllegalArgumentException;
   /**
    * Request a map of all computer groups that have records in each HealthCheck type.
    * @return The map of all computer groups present (in the form of a serial ID for each computer group).
@@ -0,0 +1,20 @@
+package com.lucanet.packratcommon.db;
+
+import com.lucanet.packratcommon.model.FileLines;
+
+/**
+ * Enumeration of the ways in which HealthCheck file data ({@link FileLines}) is stored.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public enum FileStorageMode {
+  /**
+   * The lines are split into chunks of bounded size that are stored as a sequence of documents belonging to the
+   * HealthCheck record.
+   */
+  SEQUENTIAL,
+  /**
+   * The lines are split into content-defined chunks that are stored once under their content hash and shared by all
+   * HealthCheck records containing them; the records only hold references to their chunks.
+   */
+  CONTENT_ADDRESSED
+}
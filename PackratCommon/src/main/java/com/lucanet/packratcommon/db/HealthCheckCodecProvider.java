@@ -0,0 +1,54 @@
+package com.lucanet.packratcommon.db;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.lucanet.packratcommon.model.HealthCheckRecord;
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * {@link CodecProvider} for the HealthCheck model classes: {@link HealthCheckRecord} and the {@link JsonNode} data
+ * that it may contain. This must be registered ahead of the driver's default providers, as {@link JsonNode} would
+ * otherwise be encoded as a plain {@link Iterable}.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class HealthCheckCodecProvider implements CodecProvider {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The format in which the unique identifier of a HealthCheck record is written.
+   */
+  private final KeyFormat keyFormat;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Codec provider constructor.
+   * @param keyFormat The format in which the unique identifier of a HealthCheck record is written.
+   */
+  public HealthCheckCodecProvider(KeyFormat keyFormat) {
+    this.keyFormat = keyFormat;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Get the codec for a HealthCheck model class.
+   * @param clazz The class to encode or decode.
+   * @param registry The registry providing the codecs for nested values.
+   * @param <T> The class type.
+   * @return The codec for the class, or null if the class is not a HealthCheck model class.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+    if (HealthCheckRecord.class.isAssignableFrom(clazz)) {
+      return (Codec<T>) new HealthCheckRecordCodec(registry, keyFormat);
+    } else if (JsonNode.class.isAssignableFrom(clazz)) {
+      return (Codec<T>) new JsonNodeCodec();
+    }
+    return null;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+}
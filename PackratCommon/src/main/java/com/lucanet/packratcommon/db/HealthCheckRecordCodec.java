@@ -0,0 +1,206 @@
+package com.lucanet.packratcommon.db;
+
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import com.lucanet.packratcommon.model.HealthCheckRecord;
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Codec} that writes a {@link HealthCheckRecord} straight from its {@link HealthCheckHeader} and data,
+ * without building an intermediate document. The data is encoded with the codec registered for its class, and the
+ * "_id" in the configured {@link KeyFormat}.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+@SuppressWarnings("rawtypes")
+public class HealthCheckRecordCodec implements Codec<HealthCheckRecord> {
+  // =========================== Class Variables ===========================79
+  /**
+   * Lookup of the classes to which BSON values of the HealthCheck data are decoded.
+   */
+  private static final BsonTypeClassMap BSON_TYPE_CLASS_MAP = new BsonTypeClassMap();
+
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The registry providing the codecs for the HealthCheck data.
+   */
+  private final CodecRegistry codecRegistry;
+  /**
+   * The format in which the unique identifier of a HealthCheck record is written.
+   */
+  private final KeyFormat keyFormat;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Codec constructor.
+   * @param codecRegistry The registry providing the codecs for the HealthCheck data.
+   * @param keyFormat The format in which the unique identifier of a HealthCheck record is written.
+   */
+  public HealthCheckRecordCodec(CodecRegistry codecRegistry, KeyFormat keyFormat) {
+    this.codecRegistry = codecRegistry;
+    this.keyFormat = keyFormat;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Encode a HealthCheck record.
+   * @param writer The BSON writer.
+   * @param healthCheckRecord The HealthCheck record.
+   * @param encoderContext The encoder context.
+   */
+  @Override
+  public void encode(BsonWriter writer, HealthCheckRecord healthCheckRecord, EncoderContext encoderContext) {
+    HealthCheckHeader healthCheckHeader = healthCheckRecord.getHealthCheckHeader();
+    writer.writeStartDocument();
+    if (keyFormat == KeyFormat.STRING) {
+      writer.writeString(HealthCheckRecord.ID, healthCheckHeader.getUniqueId());
+    } else {
+      BsonValue key = keyFormat.encodeKey(healthCheckHeader);
+      writer.writeBinaryData(HealthCheckRecord.ID, key.asBinary());
+    }
+    writer.writeString(HealthCheckRecord.SERIAL_ID, healthCheckHeader.getSerialId());
+    writer.writeString(HealthCheckRecord.SYSTEM_UUID, healthCheckHeader.getSystemUUID());
+    writer.writeInt64(HealthCheckRecord.SESSION_TIMESTAMP, healthCheckHeader.getSessionTimestamp());
+    writer.writeInt64(HealthCheckRecord.HEALTHCHECK_TIMESTAMP, healthCheckHeader.getHealthCheckTimestamp());
+    writer.writeInt32(HealthCheckRecord.VERSION, healthCheckHeader.getVersion());
+    if (healthCheckRecord.getChunkCount() > 1) {
+      writer.writeInt32(HealthCheckRecord.CHUNK_COUNT, healthCheckRecord.getChunkCount());
+    }
+    if (healthCheckRecord.getChunkRefs() != null) {
+      writer.writeStartArray(HealthCheckRecord.CHUNK_REFS);
+      for (Object chunkRef : healthCheckRecord.getChunkRefs()) {
+        writer.writeBinaryData(new BsonBinary((byte[]) chunkRef));
+      }
+      writer.writeEndArray();
+    }
+    writer.writeName(HealthCheckRecord.DATA);
+    encodeData(writer, healthCheckRecord.getData(), encoderContext);
+    writer.writeEndDocument();
+  }
+
+  /**
+   * Decode a HealthCheck record. The data is decoded into the default classes of its BSON types (e.g. a
+   * {@link org.bson.Document} for an embedded document).
+   * @param reader The BSON reader.
+   * @param decoderContext The decoder context.
+   * @return The HealthCheck record.
+   */
+  @Override
+  public HealthCheckRecord decode(BsonReader reader, DecoderContext decoderContext) {
+    HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+    Object data = null;
+    int chunkCount = 1;
+    List<byte[]> chunkRefs = null;
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      switch (reader.readName()) {
+        case HealthCheckRecord.SERIAL_ID:
+          healthCheckHeader.setSerialId(reader.readString());
+          break;
+        case HealthCheckRecord.SYSTEM_UUID:
+          healthCheckHeader.setSystemUUID(reader.readString());
+          break;
+        case HealthCheckRecord.SESSION_TIMESTAMP:
+          healthCheckHeader.setSessionTimestamp(readNumber(reader).longValue());
+          break;
+        case HealthCheckRecord.HEALTHCHECK_TIMESTAMP:
+          healthCheckHeader.setHealthCheckTimestamp(readNumber(reader).longValue());
+          break;
+        case HealthCheckRecord.VERSION:
+          healthCheckHeader.setVersion(readNumber(reader).intValue());
+          break;
+        case HealthCheckRecord.CHUNK_COUNT:
+          chunkCount = readNumber(reader).intValue();
+          break;
+        case HealthCheckRecord.CHUNK_REFS:
+          chunkRefs = new ArrayList<>();
+          reader.readStartArray();
+          while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            chunkRefs.add(reader.readBinaryData().getData());
+          }
+          reader.readEndArray();
+          break;
+        case HealthCheckRecord.DATA:
+          data = decodeData(reader, decoderContext);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+    HealthCheckRecord<Object> healthCheckRecord = new HealthCheckRecord<>(healthCheckHeader, data);
+    healthCheckRecord.setChunkCount(chunkCount);
+    healthCheckRecord.setChunkRefs(chunkRefs);
+    return healthCheckRecord;
+  }
+
+  /**
+   * Get the class encoded by this codec.
+   * @return {@link HealthCheckRecord}
+   */
+  @Override
+  public Class<HealthCheckRecord> getEncoderClass() {
+    return HealthCheckRecord.class;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Encode the HealthCheck data with the codec registered for its class.
+   * @param writer The BSON writer.
+   * @param data The HealthCheck data.
+   * @param encoderContext The encoder context.
+   */
+  @SuppressWarnings("unchecked")
+  private void encodeData(BsonWriter writer, Object data, EncoderContext encoderContext) {
+    if (data == null) {
+      writer.writeNull();
+    } else {
+      Codec codec = codecRegistry.get(data.getClass());
+      encoderContext.encodeWithChildContext(codec, writer, data);
+    }
+  }
+
+  /**
+   * Decode the HealthCheck data into the default class of its BSON type.
+   * @param reader The BSON reader.
+   * @param decoderContext The decoder context.
+   * @return The HealthCheck data.
+   */
+  private Object decodeData(BsonReader reader, DecoderContext decoderContext) {
+    if (reader.getCurrentBsonType() == BsonType.NULL) {
+      reader.readNull();
+      return null;
+    }
+    return decoderContext.decodeWithChildContext(codecRegistry.get(BSON_TYPE_CLASS_MAP.get(reader.getCurrentBsonType())), reader);
+  }
+
+  /**
+   * Read a numeric value that may have been stored as any BSON number type.
+   * @param reader The BSON reader.
+   * @return The numeric value.
+   */
+  private Number readNumber(BsonReader reader) {
+    switch (reader.getCurrentBsonType()) {
+      case INT32:
+        return reader.readInt32();
+      case INT64:
+        return reader.readInt64();
+      case DOUBLE:
+        return reader.readDouble();
+      default:
+        return reader.readDecimal128().bigDecimalValue();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package com.lucanet.packratcommon.db;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.Decimal128;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * {@link Codec} that writes a Jackson {@link JsonNode} tree straight to BSON, so that HealthCheck data held as a
+ * JSON tree does not need to be converted into a map first.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class JsonNodeCodec implements Codec<JsonNode> {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * Factory for the nodes of decoded JSON trees.
+   */
+  private final JsonNodeFactory jsonNodeFactory;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Codec constructor.
+   */
+  public JsonNodeCodec() {
+    this.jsonNodeFactory = JsonNodeFactory.instance;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Encode a JSON tree.
+   * @param writer The BSON writer.
+   * @param jsonNode The root node of the JSON tree.
+   * @param encoderContext The encoder context.
+   */
+  @Override
+  public void encode(BsonWriter writer, JsonNode jsonNode, EncoderContext encoderContext) {
+    switch (jsonNode.getNodeType()) {
+      case OBJECT:
+        writer.writeStartDocument();
+        Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields();
+        while (fields.hasNext()) {
+          Map.Entry<String, JsonNode> field = fields.next();
+          writer.writeName(field.getKey());
+          encode(writer, field.getValue(), encoderContext);
+        }
+        writer.writeEndDocument();
+        break;
+      case ARRAY:
+        writer.writeStartArray();
+        for (JsonNode element : jsonNode) {
+          encode(writer, element, encoderContext);
+        }
+        writer.writeEndArray();
+        break;
+      case NUMBER:
+        encodeNumber(writer, jsonNode);
+        break;
+      case BOOLEAN:
+        writer.writeBoolean(jsonNode.booleanValue());
+        break;
+      case BINARY:
+        try {
+          writer.writeBinaryData(new BsonBinary(jsonNode.binaryValue()));
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+        break;
+      case NULL:
+      case MISSING:
+        writer.writeNull();
+        break;
+      default:
+        writer.writeString(jsonNode.asText());
+    }
+  }
+
+  /**
+   * Decode a BSON value into a JSON tree.
+   * @param reader The BSON reader.
+   * @param decoderContext The decoder context.
+   * @return The root node of the JSON tree.
+   */
+  @Override
+  public JsonNode decode(BsonReader reader, DecoderContext decoderContext) {
+    switch (reader.getCurrentBsonType()) {
+      case DOCUMENT:
+        ObjectNode objectNode = jsonNodeFactory.objectNode();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+          String fieldName = reader.readName();
+          objectNode.set(fieldName, decode(reader, decoderContext));
+        }
+        reader.readEndDocument();
+        return objectNode;
+      case ARRAY:
+        ArrayNode arrayNode = jsonNodeFactory.arrayNode();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+          arrayNode.add(decode(reader, decoderContext));
+        }
+        reader.readEndArray();
+        return arrayNode;
+      case INT32:
+        return jsonNodeFactory.numberNode(reader.readInt32());
+      case INT64:
+        return jsonNodeFactory.numberNode(reader.readInt64());
+      case DOUBLE:
+        return jsonNodeFactory.numberNode(reader.readDouble());
+      case DECIMAL128:
+        return jsonNodeFactory.numberNode(reader.readDecimal128().bigDecimalValue());
+      case BOOLEAN:
+        return jsonNodeFactory.booleanNode(reader.readBoolean());
+      case STRING:
+        return jsonNodeFactory.textNode(reader.readString());
+      case BINARY:
+        return jsonNodeFactory.binaryNode(reader.readBinaryData().getData());
+      case NULL:
+        reader.readNull();
+        return jsonNodeFactory.nullNode();
+      default:
+        reader.skipValue();
+        return jsonNodeFactory.nullNode();
+    }
+  }
+
+  /**
+   * Get the class encoded by this codec.
+   * @return {@link JsonNode}
+   */
+  @Override
+  public Class<JsonNode> getEncoderClass() {
+    return JsonNode.class;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Encode a numeric JSON node with the narrowest matching BSON number type.
+   * @param writer The BSON writer.
+   * @param jsonNode The numeric JSON node.
+   */
+  private void encodeNumber(BsonWriter writer, JsonNode jsonNode) {
+    switch (jsonNode.numberType()) {
+      case INT:
+        writer.writeInt32(jsonNode.intValue());
+        break;
+      case LONG:
+        writer.writeInt64(jsonNode.longValue());
+        break;
+      case BIG_INTEGER:
+        writer.writeDecimal128(new Decimal128(new BigDecimal(jsonNode.bigIntegerValue())));
+        break;
+      case BIG_DECIMAL:
+        writer.writeDecimal128(new Decimal128(jsonNode.decimalValue()));
+        break;
+      default:
+        writer.writeDouble(jsonNode.doubleValue());
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package com.lucanet.packratcommon.db;
+
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import org.bson.BsonBinary;
+import org.bson.BsonString;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Enumeration of the formats in which the unique identifier of a HealthCheck record is stored as its "_id".
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public enum KeyFormat {
+  /**
+   * The string representation returned by {@link HealthCheckHeader#getUniqueId()}.
+   */
+  STRING(BsonType.STRING) {
+    /**
+     * Encode the unique identifier of a HealthCheck record.
+     * @param healthCheckHeader The HealthCheck record's metadata.
+     * @return The unique identifier as a {@link BsonString}.
+     */
+    @Override
+    public BsonValue encodeKey(HealthCheckHeader healthCheckHeader) {
+      return new BsonString(healthCheckHeader.getUniqueId());
+    }
+  },
+  /**
+   * A binary representation carrying the same uniqueness as {@link #STRING}. A system UUID in canonical form is
+   * stored as its 16 bytes, making the key a fixed 33 bytes: a tag byte, the UUID, and the two timestamps as 8-byte
+   * longs. Any other system UUID is stored as its UTF-8 bytes under a different tag byte, followed by the two
+   * timestamps.
+   */
+  BINARY(BsonType.BINARY) {
+    /**
+     * Encode the unique identifier of a HealthCheck record.
+     * @param healthCheckHeader The HealthCheck record's metadata.
+     * @return The unique identifier as a {@link BsonBinary}.
+     */
+    @Override
+    public BsonValue encodeKey(HealthCheckHeader healthCheckHeader) {
+      String systemUUID = healthCheckHeader.getSystemUUID();
+      UUID canonicalUUID = parseCanonicalUUID(systemUUID);
+      ByteBuffer keyBuffer;
+      if (canonicalUUID != null) {
+        keyBuffer = ByteBuffer.allocate(1 + 16 + TIMESTAMPS_LENGTH)
+            .put(UUID_KEY_TAG)
+            .putLong(canonicalUUID.getMostSignificantBits())
+            .putLong(canonicalUUID.getLeastSignificantBits());
+      } else {
+        byte[] systemUUIDBytes = systemUUID.getBytes(StandardCharsets.UTF_8);
+        keyBuffer = ByteBuffer.allocate(1 + systemUUIDBytes.length + TIMESTAMPS_LENGTH)
+            .put(TEXT_KEY_TAG)
+            .put(systemUUIDBytes);
+      }
+      keyBuffer
+          .putLong(healthCheckHeader.getSessionTimestamp())
+          .putLong(healthCheckHeader.getHealthCheckTimestamp());
+      return new BsonBinary(keyBuffer.array());
+    }
+  };
+
+  // =========================== Class Variables ===========================79
+  /**
+   * Length of the two timestamps at the end of a binary key.
+   */
+  private static final int TIMESTAMPS_LENGTH = 2 * Long.BYTES;
+  /**
+   * Tag of a binary key that contains the 16 bytes of a canonical system UUID.
+   */
+  private static final byte UUID_KEY_TAG = 1;
+  /**
+   * Tag of a binary key that contains the UTF-8 bytes of a system UUID.
+   */
+  private static final byte TEXT_KEY_TAG = 2;
+
+  // ============================ Class Methods ============================79
+  /**
+   * Parse a system UUID, provided that it is in the canonical (lower-case) form that {@link UUID#toString()} returns.
+   * Other forms are not parsed, as they would not survive the conversion back to their string representation.
+   * @param systemUUID The system UUID.
+   * @return The parsed UUID, or null if the system UUID is not in canonical form.
+   */
+  private static UUID parseCanonicalUUID(String systemUUID) {
+    if (systemUUID.length() != 36) {
+      return null;
+    }
+    try {
+      UUID uuid = UUID.fromString(systemUUID);
+      return uuid.toString().equals(systemUUID) ? uuid : null;
+    } catch (IllegalArgumentException iae) {
+      return null;
+    }
+  }
+
+  // ============================   Variables    ===========================79
+  /**
+   * The BSON type of the keys in this format.
+   */
+  private final BsonType bsonType;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Key format constructor.
+   * @param bsonType The BSON type of the keys in this format.
+   */
+  KeyFormat(BsonType bsonType) {
+    this.bsonType = bsonType;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Encode the unique identifier of a HealthCheck record in this format.
+   * @param healthCheckHeader The HealthCheck record's metadata.
+   * @return The "_id" value of the HealthCheck record.
+   */
+  public abstract BsonValue encodeKey(HealthCheckHeader healthCheckHeader);
+
+  /**
+   * Get the BSON type of the keys in this format.
+   * @return {@link #bsonType}
+   */
+  public BsonType getBsonType() {
+    return bsonType;
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+}
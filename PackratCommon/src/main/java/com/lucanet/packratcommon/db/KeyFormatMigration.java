@@ -0,0 +1,253 @@
+package com.lucanet.packratcommon.db;
+
+import com.lucanet.packratcommon.model.HealthCheckHeader;
+import com.lucanet.packratcommon.model.HealthCheckRecord;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Migration that rewrites the "_id" of the stored HealthCheck records of a collection into a target
+ * {@link KeyFormat}.
+ * <p>
+ * Records whose "_id" is not of the target format's BSON type are read with a single cursor and handed to a thread
+ * pool in batches. Each batch inserts copies of its records under their new keys and then deletes the originals
+ * whose copies were stored. The continuation chunks of a record's file data are copied under its new key before the
+ * record itself. A copy that already exists counts as stored, so an interrupted migration can simply be run again.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class KeyFormatMigration {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The logger for the KeyFormatMigration instance.
+   */
+  private final Logger logger;
+  /**
+   * The format into which the record keys are rewritten.
+   */
+  private final KeyFormat targetKeyFormat;
+  /**
+   * The number of records rewritten in a single batch.
+   */
+  private final int batchSize;
+  /**
+   * The number of batches rewritten in parallel.
+   */
+  private final int threadCount;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Migration constructor.
+   * @param targetKeyFormat The format into which the record keys are rewritten.
+   * @param batchSize The number of records rewritten in a single batch.
+   * @param threadCount The number of batches rewritten in parallel.
+   */
+  public KeyFormatMigration(KeyFormat targetKeyFormat, int batchSize, int threadCount) {
+    this.logger = LoggerFactory.getLogger(KeyFormatMigration.class);
+    this.targetKeyFormat = targetKeyFormat;
+    this.batchSize = batchSize;
+    this.threadCount = threadCount;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Rewrite the keys of all records in a collection that are not yet in the target format.
+   * @param collection The collection of HealthCheck records.
+   * @param chunksCollection The collection of the continuation chunks of HealthCheck file data.
+   * @return The number of rewritten records.
+   * @throws InterruptedException Signifies that the migration was interrupted while waiting for its batches.
+   */
+  public long migrate(MongoCollection<BsonDocument> collection, MongoCollection<BsonDocument> chunksCollection) throws InterruptedException {
+    String collectionName = collection.getNamespace().getCollectionName();
+    logger.info("Migrating keys of collection '{}' to {} format", collectionName, targetKeyFormat);
+    ExecutorService migrationExecutor = Executors.newFixedThreadPool(threadCount);
+    //Bound the batches that have been read but not yet written
+    Semaphore pendingBatches = new Semaphore(threadCount * 2);
+    List<Future<?>> batchFutures = new ArrayList<>();
+    AtomicLong migratedCount = new AtomicLong();
+    AtomicLong failedCount = new AtomicLong();
+    try (MongoCursor<BsonDocument> recordCursor = collection
+        .find(Filters.and(
+            Filters.not(Filters.type(HealthCheckRecord.ID, targetKeyFormat.getBsonType())),
+            //Buckets of HealthChecks are not keyed by a HealthCheck
+            Filters.exists(MongoDatabaseConnection.BUCKET_READINGS_KEY, false)
+        ))
+        .batchSize(batchSize)
+        .iterator()) {
+      List<BsonDocument> batch = new ArrayList<>(batchSize);
+      while (recordCursor.hasNext()) {
+        batch.add(recordCursor.next());
+        if ((batch.size() >= batchSize) || !recordCursor.hasNext()) {
+          List<BsonDocument> batchRecords = batch;
+          pendingBatches.acquire();
+          batchFutures.add(migrationExecutor.submit(() -> {
+            try {
+              migrateBatch(collection, chunksCollection, batchRecords, migratedCount, failedCount);
+            } finally {
+              pendingBatches.release();
+            }
+          }));
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+      for (Future<?> batchFuture : batchFutures) {
+        try {
+          batchFuture.get();
+        } catch (ExecutionException ee) {
+          logger.error(String.format("Error migrating keys of collection '%s':", collectionName), ee.getCause());
+        }
+      }
+    } finally {
+      migrationExecutor.shutdownNow();
+    }
+    if (failedCount.get() > 0) {
+      logger.warn("Could not migrate {} records of collection '{}'", failedCount.get(), collectionName);
+    }
+    logger.info("Migrated {} records of collection '{}' to {} format", migratedCount.get(), collectionName, targetKeyFormat);
+    return migratedCount.get();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Rewrite the keys of a batch of records.
+   * @param collection The collection of HealthCheck records.
+   * @param chunksCollection The collection of the continuation chunks of HealthCheck file data.
+   * @param batchRecords The records of the batch.
+   * @param migratedCount Counter of the rewritten records.
+   * @param failedCount Counter of the records that could not be rewritten.
+   */
+  private void migrateBatch(MongoCollection<BsonDocument> collection, MongoCollection<BsonDocument> chunksCollection, List<BsonDocument> batchRecords, AtomicLong migratedCount, AtomicLong failedCount) {
+    String collectionName = collection.getNamespace().getCollectionName();
+    List<BsonValue> originalKeys = new ArrayList<>(batchRecords.size());
+    List<Bson> originalChunkIds = new ArrayList<>();
+    List<InsertOneModel<BsonDocument>> insertModels = new ArrayList<>(batchRecords.size());
+    for (BsonDocument record : batchRecords) {
+      BsonValue newKey;
+      try {
+        newKey = targetKeyFormat.encodeKey(readHeader(record));
+      } catch (RuntimeException re) {
+        logger.warn("Cannot migrate record {} - its HealthCheck header is incomplete", record.get(HealthCheckRecord.ID));
+        failedCount.incrementAndGet();
+        continue;
+      }
+      BsonValue chunkCount = record.get(HealthCheckRecord.CHUNK_COUNT);
+      if ((chunkCount != null) && chunkCount.isNumber()) {
+        originalChunkIds.addAll(copyChunks(chunksCollection, collectionName, record.get(HealthCheckRecord.ID), newKey, chunkCount.asNumber().intValue()));
+      }
+      BsonDocument migratedRecord = record.clone();
+      migratedRecord.put(HealthCheckRecord.ID, newKey);
+      originalKeys.add(record.get(HealthCheckRecord.ID));
+      insertModels.add(new InsertOneModel<>(migratedRecord));
+    }
+    if (insertModels.isEmpty()) {
+      return;
+    }
+    Set<Integer> failedIndexes = new HashSet<>();
+    try {
+      collection.bulkWrite(insertModels, new BulkWriteOptions().ordered(false));
+    } catch (MongoBulkWriteException mbwe) {
+      for (BulkWriteError writeError : mbwe.getWriteErrors()) {
+        //A duplicate key means that the record was copied by an earlier run, so the original can still be removed
+        if (writeError.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+          logger.warn("Cannot migrate record {}: {}", originalKeys.get(writeError.getIndex()), writeError.getMessage());
+          failedIndexes.add(writeError.getIndex());
+        }
+      }
+    }
+    List<BsonValue> copiedKeys = new ArrayList<>(originalKeys.size());
+    for (int recordIndex = 0; recordIndex < originalKeys.size(); recordIndex++) {
+      if (!failedIndexes.contains(recordIndex)) {
+        copiedKeys.add(originalKeys.get(recordIndex));
+      }
+    }
+    if (!copiedKeys.isEmpty()) {
+      collection.deleteMany(Filters.in(HealthCheckRecord.ID, copiedKeys));
+    }
+    if (!originalChunkIds.isEmpty()) {
+      //Chunks of records that failed are left in place: they are still referenced by the original records
+      chunksCollection.deleteMany(Filters.and(
+          Filters.in(HealthCheckRecord.ID, originalChunkIds),
+          Filters.nin(HealthCheckRecord.ID + "." + MongoDatabaseConnection.CHUNKS_RECORD_KEY, failedKeys(originalKeys, failedIndexes))
+      ));
+    }
+    migratedCount.addAndGet(copiedKeys.size());
+    failedCount.addAndGet(failedIndexes.size());
+  }
+
+  /**
+   * Copy the continuation chunks of a record's file data under the new key of the record.
+   * @param chunksCollection The collection of the continuation chunks of HealthCheck file data.
+   * @param healthCheckType The type of the HealthCheck record.
+   * @param originalKey The current "_id" of the record.
+   * @param newKey The "_id" of the record in the target format.
+   * @param chunkCount The number of chunks of the record's file data, including the chunk of the record itself.
+   * @return The "_id"s of the original chunks.
+   */
+  private List<Bson> copyChunks(MongoCollection<BsonDocument> chunksCollection, String healthCheckType, BsonValue originalKey, BsonValue newKey, int chunkCount) {
+    List<Bson> originalChunkIds = new ArrayList<>(chunkCount);
+    ReplaceOptions replaceOptions = new ReplaceOptions().upsert(true);
+    for (int sequence = 1; sequence < chunkCount; sequence++) {
+      Document originalChunkId = MongoDatabaseConnection.buildChunkId(healthCheckType, originalKey, sequence);
+      BsonDocument chunk = chunksCollection.find(Filters.eq(HealthCheckRecord.ID, originalChunkId)).first();
+      //A missing chunk was copied and removed by an earlier run
+      if (chunk != null) {
+        Document newChunkId = MongoDatabaseConnection.buildChunkId(healthCheckType, newKey, sequence);
+        BsonDocument migratedChunk = chunk.clone();
+        migratedChunk.put(HealthCheckRecord.ID, newChunkId.toBsonDocument(BsonDocument.class, chunksCollection.getCodecRegistry()));
+        chunksCollection.replaceOne(Filters.eq(HealthCheckRecord.ID, newChunkId), migratedChunk, replaceOptions);
+        originalChunkIds.add(originalChunkId);
+      }
+    }
+    return originalChunkIds;
+  }
+
+  /**
+   * Collect the original keys of the records that could not be rewritten.
+   * @param originalKeys The original keys of the records of a batch.
+   * @param failedIndexes The indexes of the records that could not be rewritten.
+   * @return The original keys of those records.
+   */
+  private List<BsonValue> failedKeys(List<BsonValue> originalKeys, Set<Integer> failedIndexes) {
+    List<BsonValue> failedKeys = new ArrayList<>(failedIndexes.size());
+    for (Integer failedIndex : failedIndexes) {
+      failedKeys.add(originalKeys.get(failedIndex));
+    }
+    return failedKeys;
+  }
+
+  /**
+   * Read the HealthCheck header fields that make up the unique identifier of a stored record.
+   * @param record The stored record.
+   * @return The HealthCheck header.
+   * @throws RuntimeException Signifies that the record lacks one of the fields.
+   */
+  private HealthCheckHeader readHeader(BsonDocument record) throws RuntimeException {
+    HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+    healthCheckHeader.setSystemUUID(record.getString(HealthCheckRecord.SYSTEM_UUID).getValue());
+    healthCheckHeader.setSessionTimestamp(record.getNumber(HealthCheckRecord.SESSION_TIMESTAMP).longValue());
+    healthCheckHeader.setHealthCheckTimestamp(record.getNumber(HealthCheckRecord.HEALTHCHECK_TIMESTAMP).longValue());
+    return healthCheckHeader;
+  }
+}
@@ -1,21 +1,41 @@
 package com.lucanet.packratcommon.db;
 
+import com.lucanet.packratcommon.model.DeadLetter;
+import com.lucanet.packratcommon.model.FileLines;
 import com.lucanet.packratcommon.model.HealthCheckHeader;
 import com.lucanet.packratcommon.model.HealthCheckRecord;
+import com.lucanet.packratcommon.model.Rollup;
+import com.lucanet.packratcommon.model.RollupResolution;
 import com.mongodb.*;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Accumulators;
-import com.mongodb.client.model.Aggregates;
-import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.*;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Implementation of {@link DatabaseConnection} utilizing MongoDB.
@@ -40,6 +60,150 @@ public class MongoDatabaseConnection implements DatabaseConnection {
    * "offset" field key for usage in the Offsets collection of the MongoDB database
    */
   public static final String OFFSETS_OFFSET_KEY = "offset";
+  /**
+   * Name of the Chunks collection ("_chunks") in the MongoDB database, which holds the continuation chunks of
+   * HealthCheck data that is stored as a sequence of chunks.
+   */
+  public static final String CHUNKS_COLLECTION_NAME = "_chunks";
+  /**
+   * "type" field key for usage in the "_id" of the Chunks collection of the MongoDB database
+   */
+  public static final String CHUNKS_TYPE_KEY = "type";
+  /**
+   * "record" field key for usage in the "_id" of the Chunks collection of the MongoDB database
+   */
+  public static final String CHUNKS_RECORD_KEY = "record";
+  /**
+   * "sequence" field key for usage in the "_id" of the Chunks collection of the MongoDB database
+   */
+  public static final String CHUNKS_SEQUENCE_KEY = "sequence";
+  /**
+   * Name of the Content Chunks collection ("_contentChunks") in the MongoDB database, which holds the chunks of
+   * HealthCheck file data stored under their content hash.
+   */
+  public static final String CONTENT_CHUNKS_COLLECTION_NAME = "_contentChunks";
+  /**
+   * Name of the Dead Letter collection ("_deadletter") in the MongoDB database, which holds the raw HealthCheck
+   * messages that could not be processed. Its "_id" consists of the topic, partition and offset of the message.
+   */
+  public static final String DEADLETTER_COLLECTION_NAME = "_deadletter";
+  /**
+   * "topic" field key for usage in the "_id" of the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_TOPIC_KEY = "topic";
+  /**
+   * "partition" field key for usage in the "_id" of the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_PARTITION_KEY = "partition";
+  /**
+   * "offset" field key for usage in the "_id" of the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_OFFSET_KEY = "offset";
+  /**
+   * "timestamp" field key for usage in the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_TIMESTAMP_KEY = "timestamp";
+  /**
+   * "key" field key for usage in the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_KEY_KEY = "key";
+  /**
+   * "value" field key for usage in the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_VALUE_KEY = "value";
+  /**
+   * "errorClass" field key for usage in the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_ERROR_CLASS_KEY = "errorClass";
+  /**
+   * "errorMessage" field key for usage in the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_ERROR_MESSAGE_KEY = "errorMessage";
+  /**
+   * "failedTimestamp" field key for usage in the Dead Letter collection of the MongoDB database
+   */
+  public static final String DEADLETTER_FAILED_TIMESTAMP_KEY = "failedTimestamp";
+  /**
+   * "bucketStart" field key for usage in the bucket documents of HealthCheck types stored in buckets, holding the
+   * start of the bucket's time window (in seconds since the UNIX epoch)
+   */
+  public static final String BUCKET_START_KEY = "bucketStart";
+  /**
+   * "readingCount" field key for usage in the bucket documents of HealthCheck types stored in buckets
+   */
+  public static final String BUCKET_COUNT_KEY = "readingCount";
+  /**
+   * "readings" field key for usage in the bucket documents of HealthCheck types stored in buckets, holding the
+   * HealthCheck timestamp, version and data of each HealthCheck in the bucket
+   */
+  public static final String BUCKET_READINGS_KEY = "readings";
+  /**
+   * Name of the Rollups collection ("_rollups") in the MongoDB database, which holds the rollups of the numeric fields
+   * of HealthCheck data. Its "_id" consists of the HealthCheck type, the computer, the resolution and the window start,
+   * in this order.
+   */
+  public static final String ROLLUPS_COLLECTION_NAME = "_rollups";
+  /**
+   * "type" field key for usage in the "_id" of the Rollups collection of the MongoDB database
+   */
+  public static final String ROLLUPS_TYPE_KEY = "type";
+  /**
+   * "resolution" field key for usage in the "_id" of the Rollups collection of the MongoDB database
+   */
+  public static final String ROLLUPS_RESOLUTION_KEY = "resolution";
+  /**
+   * "windowStart" field key for usage in the Rollups collection of the MongoDB database
+   */
+  public static final String ROLLUPS_WINDOW_START_KEY = "windowStart";
+  /**
+   * "count" field key for usage in the Rollups collection of the MongoDB database, both for the number of HealthChecks
+   * of a rollup and for the number of values of each of its fields
+   */
+  public static final String ROLLUPS_COUNT_KEY = "count";
+  /**
+   * "fields" field key for usage in the Rollups collection of the MongoDB database, holding the statistics of each
+   * numeric field in a {@link Rollup#STATS_KEY} sub-document under the field's path within the HealthCheck data
+   */
+  public static final String ROLLUPS_FIELDS_KEY = "fields";
+  /**
+   * "min" field key for usage in the field statistics of the Rollups collection of the MongoDB database
+   */
+  public static final String ROLLUPS_MIN_KEY = "min";
+  /**
+   * "max" field key for usage in the field statistics of the Rollups collection of the MongoDB database
+   */
+  public static final String ROLLUPS_MAX_KEY = "max";
+  /**
+   * "sum" field key for usage in the field statistics of the Rollups collection of the MongoDB database
+   */
+  public static final String ROLLUPS_SUM_KEY = "sum";
+  /**
+   * "sumOfSquares" field key for usage in the field statistics of the Rollups collection of the MongoDB database
+   */
+  public static final String ROLLUPS_SUM_OF_SQUARES_KEY = "sumOfSquares";
+  /**
+   * The indexes of every HealthCheck type's collection, which back the reporting queries by computer and session
+   * and by computer group. They are built in the background so that provisioning them on a large existing collection
+   * does not block its writes.
+   */
+  private static final List<IndexModel> HEALTHCHECK_INDEXES = Arrays.asList(
+      new IndexModel(
+          Indexes.ascending(HealthCheckRecord.SYSTEM_UUID, HealthCheckRecord.SESSION_TIMESTAMP),
+          new IndexOptions().background(true)
+      ),
+      new IndexModel(
+          Indexes.ascending(HealthCheckRecord.SERIAL_ID, HealthCheckRecord.SYSTEM_UUID),
+          new IndexOptions().background(true)
+      )
+  );
+  /**
+   * The maximum number of attempts at committing a transaction that fails with a transient error.
+   */
+  private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+  /**
+   * The code of the MongoDB error raised when creating a collection that already exists.
+   */
+  private static final int NAMESPACE_EXISTS_ERROR_CODE = 48;
 
   // ============================ Class Methods ============================79
   // ============================   Variables    ===========================79
@@ -55,6 +219,55 @@ public class MongoDatabaseConnection implements DatabaseConnection {
    * The MongoDB database representation.
    */
   private final MongoDatabase healthCheckDB;
+  /**
+   * The maximum number of HealthCheck records sent to the MongoDB instance in a single bulk write.
+   */
+  private final int batchMaxSize;
+  /**
+   * The duration (in milliseconds) after which a single bulk write is reported as slow.
+   */
+  private final long batchSlowWriteThreshold;
+  /**
+   * Whether HealthCheck records and message offsets are persisted together in multi-document transactions.
+   */
+  private final boolean transactional;
+  /**
+   * The format in which the unique identifier of a HealthCheck record is stored as its "_id".
+   */
+  private final KeyFormat keyFormat;
+  /**
+   * The number of batches rewritten in parallel when migrating record keys.
+   */
+  private final int keyMigrationThreads;
+  /**
+   * The way in which HealthCheck file data is stored.
+   */
+  private final FileStorageMode fileStorageMode;
+  /**
+   * The HealthCheck types whose collections have been provided with the {@link #HEALTHCHECK_INDEXES}.
+   */
+  private final Set<String> indexedTypes;
+  /**
+   * The HealthCheck types whose HealthChecks are stored in buckets, one per computer, session and time window.
+   */
+  private final Set<String> bucketTypes;
+  /**
+   * The length (in seconds) of the time window of a bucket.
+   */
+  private final long bucketWindow;
+  /**
+   * The maximum number of HealthChecks stored in a single bucket.
+   */
+  private final int bucketMaxReadings;
+  /**
+   * The time interval by which the records of each HealthCheck type are partitioned into separate collections.
+   */
+  private final PartitionInterval partitionInterval;
+  /**
+   * The number of most recent partitions of each HealthCheck type that are kept, counting the partition of the
+   * current time, or 0 to keep all partitions.
+   */
+  private final int retainedPartitions;
 
   // ============================  Constructors  ===========================79
   /**
@@ -63,26 +276,98 @@ public class MongoDatabaseConnection implements DatabaseConnection {
    * @param dbPort MongoDB instance's port.
    * @param username Username for logging in to interact with the MongoDB instance.
    * @param password Password for logging in to interact with the MongoDB instance.
+   * @param batchMaxSize The maximum number of HealthCheck records sent to the MongoDB instance in a single bulk write.
+   * @param batchSlowWriteThreshold The duration (in milliseconds) after which a single bulk write is reported as slow.
+   * @param transactional Whether HealthCheck records and message offsets are persisted together in multi-document
+   *                      transactions. This requires the MongoDB instance to be a replica set running version 4.0 or
+   *                      higher.
+   * @param keyFormat The format in which the unique identifier of a HealthCheck record is stored as its "_id".
+   * @param keyMigrationThreads The number of batches rewritten in parallel when migrating record keys.
+   * @param fileStorageMode The way in which HealthCheck file data is stored.
+   * @param bucketTypes The HealthCheck types whose HealthChecks are stored in buckets, one per computer, session and time window.
+   * @param bucketWindow The length (in seconds) of the time window of a bucket.
+   * @param bucketMaxReadings The maximum number of HealthChecks stored in a single bucket.
+   * @param partitionInterval The time interval by which the records of each HealthCheck type are partitioned into separate collections.
+   * @param retainedPartitions The number of most recent partitions of each HealthCheck type that are kept, counting the
+   *                           partition of the current time, or 0 to keep all partitions.
+   * @throws IllegalArgumentException Signifies that the maximum number of HealthCheck records in a bulk write is not
+   *                                  positive, or that partitions are to be dropped while file data is stored as
+   *                                  content-addressed chunks, which are shared across partitions and would be kept
+   *                                  forever.
    */
   public MongoDatabaseConnection(
       @Value("${packrat.db.url}") String dbURL,
       @Value("${packrat.db.port}") int dbPort,
       @Value("${packrat.db.dbname}") String dbName,
       @Value("${packrat.db.username}") String username,
-      @Value("${packrat.db.password}") String password
-  ) {
+      @Value("${packrat.db.password}") String password,
+      @Value("${packrat.db.batch.maxSize}") int batchMaxSize,
+      @Value("${packrat.db.batch.slowWriteThreshold}") long batchSlowWriteThreshold,
+      @Value("${packrat.db.transactional}") boolean transactional,
+      @Value("${packrat.db.keyFormat}") KeyFormat keyFormat,
+      @Value("${packrat.db.keyMigration.threads}") int keyMigrationThreads,
+      @Value("${packrat.db.fileStorageMode}") FileStorageMode fileStorageMode,
+      @Value("#{'${packrat.db.bucket.topics}'.split(',')}") List<String> bucketTypes,
+      @Value("${packrat.db.bucket.window}") long bucketWindow,
+      @Value("${packrat.db.bucket.maxReadings}") int bucketMaxReadings,
+      @Value("${packrat.db.partitioning}") PartitionInterval partitionInterval,
+      @Value("${packrat.db.retention.partitions}") int retainedPartitions
+  ) throws IllegalArgumentException {
+    if (batchMaxSize <= 0) {
+      throw new IllegalArgumentException(String.format("Batch max size must be positive, but is %d", batchMaxSize));
+    }
+    if ((fileStorageMode == FileStorageMode.CONTENT_ADDRESSED) && (partitionInterval != PartitionInterval.NONE) && (retainedPartitions > 0)) {
+      throw new IllegalArgumentException("Partition retention is not supported with content-addressed file storage");
+    }
     logger = LoggerFactory.getLogger(MongoDatabaseConnection.class);
     logger.info("Building MongoDB connection to {}@{}:{}", username, dbURL, dbPort);
-    MongoClientOptions.Builder clientOptionsBuilder = new MongoClientOptions.Builder();
+    //The HealthCheck codecs take precedence over the defaults, so that JsonNode data is not encoded as an Iterable
+    MongoClientOptions.Builder clientOptionsBuilder = new MongoClientOptions.Builder()
+        .codecRegistry(CodecRegistries.fromRegistries(
+            CodecRegistries.fromProviders(new HealthCheckCodecProvider(keyFormat)),
+            MongoClient.getDefaultCodecRegistry()
+        ));
     mongoClient = new MongoClient(
         new ServerAddress(dbURL, dbPort),
         MongoCredential.createCredential(username, dbName, password.toCharArray()),
         clientOptionsBuilder.build()
     );
     this.healthCheckDB = mongoClient.getDatabase(dbName);
+    this.batchMaxSize = batchMaxSize;
+    this.batchSlowWriteThreshold = batchSlowWriteThreshold;
+    this.transactional = transactional;
+    this.keyFormat = keyFormat;
+    this.keyMigrationThreads = keyMigrationThreads;
+    this.fileStorageMode = fileStorageMode;
+    this.indexedTypes = ConcurrentHashMap.newKeySet();
+    this.bucketTypes = new HashSet<>(bucketTypes);
+    this.bucketTypes.remove("");
+    this.bucketWindow = bucketWindow;
+    this.bucketMaxReadings = bucketMaxReadings;
+    this.partitionInterval = partitionInterval;
+    this.retainedPartitions = retainedPartitions;
   }
 
   // ============================ Public Methods ===========================79
+  /**
+   * Create any missing indexes of the {@link #OFFSETS_COLLECTION_NAME} collection and of the collections of all
+   * existing HealthCheck types and partitions. Collections of new HealthCheck types and partitions are provided with
+   * their indexes on their first write. A failure is logged rather than propagated, as the indexes only speed up
+   * queries; the indexes of a HealthCheck type that could not be checked are checked again on its next write.
+   */
+  @PostConstruct
+  public void ensureIndexes() {
+    try {
+      healthCheckDB.getCollection(OFFSETS_COLLECTION_NAME).createIndex(
+          Indexes.ascending(OFFSETS_TOPIC_KEY, OFFSETS_PARTITION_KEY),
+          new IndexOptions().background(true)
+      );
+      getCollectionNames().forEach(this::ensureIndexes);
+    } catch (MongoException me) {
+      logger.warn("Unable to check database indexes: {}", me.getMessage());
+    }
+  }
+
   /**
    * Persist a HealthCheck record.
    * @param healthCheckType The type of the HealthCheck record.
@@ -92,9 +377,18 @@ public class MongoDatabaseConnection implements DatabaseConnection {
    */
   @Override
   public <T> void persistRecord(String healthCheckType, HealthCheckHeader healthCheckHeader, T record) throws IllegalArgumentException {
-    HealthCheckRecord healthCheckRecord = new HealthCheckRecord<>(healthCheckHeader, record);
+    String collectionName = resolvePartition(healthCheckType, healthCheckHeader.getHealthCheckTimestamp());
+    if (collectionName == null) {
+      logger.warn("Cannot write message {} - its partition of topic '{}' has expired", healthCheckHeader, healthCheckType);
+      return;
+    }
+    if (bucketTypes.contains(healthCheckType)) {
+      persistBuckets(null, collectionName, Collections.singletonList(new HealthCheckRecord<>(healthCheckHeader, record)));
+      return;
+    }
+    HealthCheckRecord healthCheckRecord = splitChunks(null, collectionName, new HealthCheckRecord<>(healthCheckHeader, record));
     try {
-      healthCheckDB.getCollection(healthCheckType, HealthCheckRecord.class).insertOne(healthCheckRecord);
+      healthCheckDB.getCollection(collectionName, HealthCheckRecord.class).insertOne(healthCheckRecord);
     } catch (MongoWriteException mwe) {
       if (mwe.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
         logger.warn("Cannot write message {} - entry already exists with this key for topic '{}'", healthCheckHeader, healthCheckType);
@@ -104,6 +398,189 @@ public class MongoDatabaseConnection implements DatabaseConnection {
     }
   }
 
+  /**
+   * Persist a batch of HealthCheck records of the same type. The records are sent as unordered bulk writes of at
+   * most {@link #batchMaxSize} records, so that a duplicate key only rejects the offending record.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @return The per-record outcome of the batch.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   */
+  @Override
+  public <T> BatchWriteResult persistRecords(String healthCheckType, List<HealthCheckRecord<T>> healthCheckRecords) throws IllegalArgumentException {
+    return persistRecords(healthCheckType, healthCheckRecords, new BitSet());
+  }
+
+  /**
+   * Persist a batch of HealthCheck records of the same type, some of which are likely to exist already. The records
+   * are sent as unordered bulk writes of at most {@link #batchMaxSize} records: records are inserted, except for the
+   * likely duplicates, which are upserted with their fields set only on insertion. An existing record thus costs
+   * neither a duplicate key error nor a warning, while a record that was wrongly presumed to exist is still inserted.
+   * HealthCheck types that are stored in buckets have their records pushed into their buckets instead, and the
+   * records of partitioned HealthCheck types are written to the collections of their partitions.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @param likelyDuplicates The positions of the HealthCheck records that are likely to exist already.
+   * @return The per-record outcome of the batch.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   */
+  @Override
+  public <T> BatchWriteResult persistRecords(String healthCheckType, List<HealthCheckRecord<T>> healthCheckRecords, BitSet likelyDuplicates) throws IllegalArgumentException {
+    return writePartitions(healthCheckType, healthCheckRecords, (collectionName, recordIndexes) -> {
+      List<HealthCheckRecord<T>> partitionRecords = recordIndexes.stream().map(healthCheckRecords::get).collect(Collectors.toList());
+      if (bucketTypes.contains(healthCheckType)) {
+        return persistBuckets(null, collectionName, partitionRecords);
+      }
+      BitSet partitionDuplicates = new BitSet(recordIndexes.size());
+      for (int partitionIndex = 0; partitionIndex < recordIndexes.size(); partitionIndex++) {
+        partitionDuplicates.set(partitionIndex, likelyDuplicates.get(recordIndexes.get(partitionIndex)));
+      }
+      return insertRecords(collectionName, partitionRecords, partitionDuplicates);
+    });
+  }
+
+  /**
+   * Persist batches of HealthCheck records together with the message offsets they advance in a single multi-document
+   * transaction. Records are written as upserts that only set their fields on insertion, so that records persisted
+   * by an earlier attempt are counted as duplicates instead of raising duplicate key errors. Transactions aborted by
+   * transient errors (e.g. write conflicts or replica set elections) are retried as a whole. As collections cannot
+   * be created inside a transaction, the collections of new HealthCheck types and partitions are created together
+   * with their indexes before the transaction starts.
+   * @param healthCheckRecords The HealthCheck records, mapped by HealthCheck type.
+   * @param newOffsets The new message offsets, mapped by HealthCheck type and then by message partition.
+   * @return The per-record outcome of the batch of each HealthCheck type.
+   * @throws UnsupportedOperationException Signifies that the connection was not configured as transactional.
+   */
+  @Override
+  public <T> Map<String, BatchWriteResult> persistRecordsWithOffsets(Map<String, List<HealthCheckRecord<T>>> healthCheckRecords, Map<String, Map<Integer, Long>> newOffsets) throws UnsupportedOperationException {
+    if (!transactional) {
+      throw new UnsupportedOperationException("Transactional writes are not enabled for this database connection");
+    }
+    Set<String> collectionNames = new HashSet<>(getCollectionNames());
+    healthCheckRecords.forEach((healthCheckType, typeRecords) ->
+        typeRecords.forEach(healthCheckRecord -> {
+          String collectionName = resolvePartition(healthCheckType, healthCheckRecord.getHealthCheckTimestamp());
+          if ((collectionName != null) && collectionNames.add(collectionName)) {
+            createCollection(collectionName);
+          }
+        })
+    );
+    TransactionOptions transactionOptions = TransactionOptions.builder()
+        .readConcern(ReadConcern.SNAPSHOT)
+        .writeConcern(WriteConcern.MAJORITY)
+        .build();
+    try (ClientSession clientSession = mongoClient.startSession()) {
+      for (int attempt = 1; ; attempt++) {
+        long writeStartTime = System.currentTimeMillis();
+        clientSession.startTransaction(transactionOptions);
+        try {
+          Map<String, BatchWriteResult> batchWriteResults = new LinkedHashMap<>();
+          for (Map.Entry<String, List<HealthCheckRecord<T>>> typeRecords : healthCheckRecords.entrySet()) {
+            batchWriteResults.put(typeRecords.getKey(), upsertRecords(clientSession, typeRecords.getKey(), typeRecords.getValue()));
+          }
+          List<WriteModel<Document>> offsetWriteModels = buildOffsetWriteModels(newOffsets);
+          if (!offsetWriteModels.isEmpty()) {
+            healthCheckDB.getCollection(OFFSETS_COLLECTION_NAME, Document.class)
+                .bulkWrite(clientSession, offsetWriteModels, new BulkWriteOptions().ordered(false));
+          }
+          commitTransaction(clientSession);
+          long writeDuration = System.currentTimeMillis() - writeStartTime;
+          if (writeDuration > batchSlowWriteThreshold) {
+            logger.warn("Transactional write of records for topics {} took {}ms", healthCheckRecords.keySet(), writeDuration);
+          }
+          return batchWriteResults;
+        } catch (MongoException me) {
+          if (clientSession.hasActiveTransaction()) {
+            clientSession.abortTransaction();
+          }
+          if (me.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL) && (attempt < MAX_TRANSACTION_ATTEMPTS)) {
+            logger.warn("Retrying transactional write of records for topics {} after transient error: {}", healthCheckRecords.keySet(), me.getMessage());
+          } else {
+            throw me;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Determine whether HealthCheck records and message offsets can be persisted atomically.
+   * @return {@link #transactional}
+   */
+  @Override
+  public boolean isTransactional() {
+    return transactional;
+  }
+
+  /**
+   * Determine whether HealthCheck records of a point in time are still retained, i.e. whether they belong to one of
+   * the {@link #retainedPartitions} most recent partitions, counting the partition of the current time. Records of
+   * HealthCheck types that are not partitioned, or whose partitions are all kept, are always retained.
+   * @param healthCheckTimestamp The HealthCheck timestamp of the records (in seconds since the UNIX epoch).
+   * @return Whether records of the HealthCheck timestamp are retained.
+   */
+  @Override
+  public boolean isRetained(long healthCheckTimestamp) {
+    return healthCheckTimestamp >= getRetentionCutoff();
+  }
+
+  /**
+   * Extend the validity of stored HealthCheck records of the same type with a single unordered bulk write. The
+   * validity is raised with "$max", so that extensions that arrive out of order never shorten it. The records of a
+   * partitioned HealthCheck type are updated in the collections of their partitions.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param validUntilMap The HealthCheck timestamp up to which each record is valid, mapped by the record's metadata.
+   * @return The number of records that were found in the database.
+   */
+  @Override
+  public long extendValidity(String healthCheckType, Map<HealthCheckHeader, Long> validUntilMap) {
+    if (validUntilMap.isEmpty()) {
+      return 0;
+    }
+    Map<String, List<WriteModel<Document>>> partitionWriteModels = validUntilMap.entrySet().stream()
+        .collect(Collectors.groupingBy(
+            validUntilEntry -> partitionInterval.getCollectionName(healthCheckType, validUntilEntry.getKey().getHealthCheckTimestamp()),
+            Collectors.mapping(
+                validUntilEntry -> (WriteModel<Document>) new UpdateOneModel<Document>(
+                    Filters.eq(HealthCheckRecord.ID, keyFormat.encodeKey(validUntilEntry.getKey())),
+                    Updates.max(HealthCheckRecord.VALID_UNTIL, validUntilEntry.getValue())
+                ),
+                Collectors.toList()
+            )
+        ));
+    long matchedCount = 0;
+    for (Map.Entry<String, List<WriteModel<Document>>> partitionEntry : partitionWriteModels.entrySet()) {
+      matchedCount += healthCheckDB.getCollection(partitionEntry.getKey(), Document.class)
+          .bulkWrite(partitionEntry.getValue(), new BulkWriteOptions().ordered(false))
+          .getMatchedCount();
+    }
+    return matchedCount;
+  }
+
+  /**
+   * Rewrite the "_id" of every stored record of the specified HealthCheck type that is not yet in the configured
+   * {@link #keyFormat}, one partition at a time. The records are rewritten in parallel batches of at most
+   * {@link #batchMaxSize} records.
+   * @param healthCheckType The specified HealthCheck type.
+   * @return The number of rewritten records.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   * @throws InterruptedException Signifies that the migration was interrupted.
+   * @see KeyFormatMigration
+   */
+  @Override
+  public long migrateKeys(String healthCheckType) throws IllegalArgumentException, InterruptedException {
+    if (getHealthCheckTypes().contains(healthCheckType)) {
+      KeyFormatMigration keyFormatMigration = new KeyFormatMigration(keyFormat, batchMaxSize, keyMigrationThreads);
+      long migratedCount = 0;
+      for (String collectionName : getPartitionNames(healthCheckType, Long.MIN_VALUE)) {
+        migratedCount += keyFormatMigration.migrate(healthCheckDB.getCollection(collectionName, BsonDocument.class), healthCheckDB.getCollection(CHUNKS_COLLECTION_NAME, BsonDocument.class));
+      }
+      return migratedCount;
+    } else {
+      throw new IllegalArgumentException(String.format("Topic '%s' doesn't exist", healthCheckType));
+    }
+  }
+
   /**
    * Get the message offset for the specified HealthCheck type and message partition.
    * @param healthCheckType The specified HealthCheck type.
@@ -166,16 +643,197 @@ public class MongoDatabaseConnection implements DatabaseConnection {
   }
 
   /**
-   * Request a list of HealthCheck types that the database persists. This will pull the names of all collections in the database.
-   * that don't match the value represented by {@link #OFFSETS_COLLECTION_NAME}.
+   * Get the stored message offsets of every partition for the specified HealthCheck types with a single query.
+   * @param healthCheckTypes The specified HealthCheck types.
+   * @return The message offsets, mapped by HealthCheck type and then by message partition. Partitions without a
+   * stored offset are absent.
+   */
+  @Override
+  public Map<String, Map<Integer, Long>> getOffsets(Collection<String> healthCheckTypes) {
+    Map<String, Map<Integer, Long>> offsetsMap = new HashMap<>();
+    healthCheckDB.getCollection(OFFSETS_COLLECTION_NAME, Document.class)
+        .find(Filters.in(OFFSETS_TOPIC_KEY, healthCheckTypes))
+        .into(new ArrayList<>())
+        .forEach(offsetDoc ->
+            offsetsMap.computeIfAbsent(offsetDoc.getString(OFFSETS_TOPIC_KEY), topic -> new HashMap<>())
+                .merge(
+                    offsetDoc.get(OFFSETS_PARTITION_KEY, Number.class).intValue(),
+                    offsetDoc.get(OFFSETS_OFFSET_KEY, Number.class).longValue(),
+                    Math::max
+                )
+        );
+    return offsetsMap;
+  }
+
+  /**
+   * Set new message offsets for multiple HealthCheck types and message partitions with a single bulk write. Each
+   * offset entry is upserted with a $max update, so a stored offset is never lowered.
+   * @param newOffsets The new message offsets, mapped by HealthCheck type and then by message partition.
+   */
+  @Override
+  public void updateOffsets(Map<String, Map<Integer, Long>> newOffsets) {
+    List<WriteModel<Document>> writeModels = buildOffsetWriteModels(newOffsets);
+    if (!writeModels.isEmpty()) {
+      healthCheckDB.getCollection(OFFSETS_COLLECTION_NAME, Document.class)
+          .bulkWrite(writeModels, new BulkWriteOptions().ordered(false));
+      logger.debug("Set new offsets {}", newOffsets);
+    }
+  }
+
+  /**
+   * Persist dead letters with unordered bulk writes of at most {@link #batchMaxSize} dead letters. A dead letter that
+   * is already stored (i.e. a message that failed again after being re-polled) is kept as it is.
+   * @param deadLetters The dead letters.
+   * @return The number of dead letters that were written to the database.
+   */
+  @Override
+  public int persistDeadLetters(List<DeadLetter> deadLetters) {
+    MongoCollection<Document> collection = healthCheckDB.getCollection(DEADLETTER_COLLECTION_NAME, Document.class);
+    int persistedCount = 0;
+    for (int batchStart = 0; batchStart < deadLetters.size(); batchStart += batchMaxSize) {
+      List<WriteModel<Document>> writeModels = deadLetters
+          .subList(batchStart, Math.min(batchStart + batchMaxSize, deadLetters.size()))
+          .stream()
+          .map(deadLetter -> new InsertOneModel<>(new Document(HealthCheckRecord.ID, buildDeadLetterId(deadLetter))
+              .append(DEADLETTER_TIMESTAMP_KEY, deadLetter.getTimestamp())
+              .append(DEADLETTER_KEY_KEY, deadLetter.getKey())
+              .append(DEADLETTER_VALUE_KEY, deadLetter.getValue())
+              .append(DEADLETTER_ERROR_CLASS_KEY, deadLetter.getErrorClass())
+              .append(DEADLETTER_ERROR_MESSAGE_KEY, deadLetter.getErrorMessage())
+              .append(DEADLETTER_FAILED_TIMESTAMP_KEY, deadLetter.getFailedTimestamp())
+          ))
+          .collect(Collectors.toList());
+      try {
+        persistedCount += collection.bulkWrite(writeModels, new BulkWriteOptions().ordered(false)).getInsertedCount();
+      } catch (MongoBulkWriteException mbwe) {
+        persistedCount += mbwe.getWriteResult().getInsertedCount();
+        for (BulkWriteError writeError : mbwe.getWriteErrors()) {
+          if (writeError.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+            logger.error("Error writing dead letter {}: {}", deadLetters.get(batchStart + writeError.getIndex()), writeError.getMessage());
+          }
+        }
+      }
+    }
+    return persistedCount;
+  }
+
+  /**
+   * Get stored dead letters, oldest failures first.
+   * @param topic The topic of the dead letters, or null for the dead letters of all topics.
+   * @param maxCount The maximum number of dead letters.
+   * @return The dead letters.
+   */
+  @Override
+  public List<DeadLetter> getDeadLetters(String topic, int maxCount) {
+    Bson filter = (topic != null) ? Filters.eq(HealthCheckRecord.ID + "." + DEADLETTER_TOPIC_KEY, topic) : new Document();
+    List<DeadLetter> deadLetters = new ArrayList<>();
+    healthCheckDB.getCollection(DEADLETTER_COLLECTION_NAME, Document.class)
+        .find(filter)
+        .sort(Sorts.ascending(DEADLETTER_FAILED_TIMESTAMP_KEY))
+        .limit(maxCount)
+        .forEach((Block<Document>) deadLetterDoc -> {
+          Document deadLetterId = deadLetterDoc.get(HealthCheckRecord.ID, Document.class);
+          Binary key = deadLetterDoc.get(DEADLETTER_KEY_KEY, Binary.class);
+          Binary value = deadLetterDoc.get(DEADLETTER_VALUE_KEY, Binary.class);
+          deadLetters.add(new DeadLetter(
+              deadLetterId.getString(DEADLETTER_TOPIC_KEY),
+              deadLetterId.get(DEADLETTER_PARTITION_KEY, Number.class).intValue(),
+              deadLetterId.get(DEADLETTER_OFFSET_KEY, Number.class).longValue(),
+              deadLetterDoc.get(DEADLETTER_TIMESTAMP_KEY, Number.class).longValue(),
+              (key != null) ? key.getData() : null,
+              (value != null) ? value.getData() : null,
+              deadLetterDoc.getString(DEADLETTER_ERROR_CLASS_KEY),
+              deadLetterDoc.getString(DEADLETTER_ERROR_MESSAGE_KEY),
+              deadLetterDoc.get(DEADLETTER_FAILED_TIMESTAMP_KEY, Number.class).longValue()
+          ));
+        });
+    return deadLetters;
+  }
+
+  /**
+   * Remove stored dead letters.
+   * @param deadLetters The dead letters.
+   */
+  @Override
+  public void removeDeadLetters(List<DeadLetter> deadLetters) {
+    if (!deadLetters.isEmpty()) {
+      healthCheckDB.getCollection(DEADLETTER_COLLECTION_NAME, Document.class).deleteMany(Filters.in(
+          HealthCheckRecord.ID,
+          deadLetters.stream().map(this::buildDeadLetterId).collect(Collectors.toList())
+      ));
+    }
+  }
+
+  /**
+   * Merge rollups of HealthCheck data into the stored rollups of the same HealthCheck type, computer and window. Each
+   * rollup is upserted with "$inc" of its counts and sums and "$min"/"$max" of its extremes, so that merging is
+   * incremental. The statistics of a field are kept in a sub-document of their own, so that a numeric field and a
+   * nested field named after one of its statistics do not update conflicting paths; the upserts are sent as unordered bulk writes of at most {@link #batchMaxSize} rollups. Upserts that
+   * lose a race to create the same rollup are retried once, as they then match the created rollup.
+   * @param healthCheckType The type of the rolled up HealthChecks.
+   * @param rollups The rollups.
+   * @return The number of rollups that were merged.
+   */
+  @Override
+  public int updateRollups(String healthCheckType, Collection<Rollup> rollups) {
+    MongoCollection<Document> collection = healthCheckDB.getCollection(ROLLUPS_COLLECTION_NAME, Document.class);
+    List<WriteModel<Document>> writeModels = rollups.stream()
+        .map(rollup -> {
+          List<Bson> rollupUpdates = new ArrayList<>();
+          rollupUpdates.add(Updates.setOnInsert(HealthCheckRecord.SERIAL_ID, rollup.getSerialId()));
+          rollupUpdates.add(Updates.inc(ROLLUPS_COUNT_KEY, rollup.getCount()));
+          rollup.getFieldStatsMap().forEach((fieldPath, fieldStats) -> {
+            String statsPath = ROLLUPS_FIELDS_KEY + "." + fieldPath + "." + Rollup.STATS_KEY + ".";
+            rollupUpdates.add(Updates.inc(statsPath + ROLLUPS_COUNT_KEY, fieldStats.getCount()));
+            rollupUpdates.add(Updates.min(statsPath + ROLLUPS_MIN_KEY, fieldStats.getMin()));
+            rollupUpdates.add(Updates.max(statsPath + ROLLUPS_MAX_KEY, fieldStats.getMax()));
+            rollupUpdates.add(Updates.inc(statsPath + ROLLUPS_SUM_KEY, fieldStats.getSum()));
+            rollupUpdates.add(Updates.inc(statsPath + ROLLUPS_SUM_OF_SQUARES_KEY, fieldStats.getSumOfSquares()));
+          });
+          return new UpdateOneModel<Document>(
+              Filters.eq(HealthCheckRecord.ID, buildRollupId(healthCheckType, rollup.getSystemUUID(), rollup.getResolution(), rollup.getWindowStart())),
+              Updates.combine(rollupUpdates),
+              new UpdateOptions().upsert(true)
+          );
+        })
+        .collect(Collectors.toList());
+    int updatedCount = 0;
+    for (int batchStart = 0; batchStart < writeModels.size(); batchStart += batchMaxSize) {
+      List<WriteModel<Document>> batchModels = writeModels.subList(batchStart, Math.min(batchStart + batchMaxSize, writeModels.size()));
+      try {
+        collection.bulkWrite(batchModels, new BulkWriteOptions().ordered(false));
+        updatedCount += batchModels.size();
+      } catch (MongoBulkWriteException mbwe) {
+        List<WriteModel<Document>> retryModels = new ArrayList<>();
+        for (BulkWriteError writeError : mbwe.getWriteErrors()) {
+          if (writeError.getCategory() == ErrorCategory.DUPLICATE_KEY) {
+            retryModels.add(batchModels.get(writeError.getIndex()));
+          } else {
+            logger.error("Error updating rollup for topic '{}': {}", healthCheckType, writeError.getMessage());
+          }
+        }
+        updatedCount += batchModels.size() - mbwe.getWriteErrors().size();
+        if (!retryModels.isEmpty()) {
+          collection.bulkWrite(retryModels, new BulkWriteOptions().ordered(false));
+          updatedCount += retryModels.size();
+        }
+      }
+    }
+    return updatedCount;
+  }
+
+  /**
+   * Request a list of HealthCheck types that the database persists. This will pull the names of all collections in the database
+   * that don't start with an underscore, which marks internal collections such as {@link #OFFSETS_COLLECTION_NAME} and
+   * {@link #CHUNKS_COLLECTION_NAME}, and report the collections of the partitions of a HealthCheck type as that type.
    * @return The list of persistable HealthCheck types.
    */
   @Override
   public List<String> getHealthCheckTypes() {
-    return healthCheckDB.listCollections()
-        .filter(Filters.ne("name", OFFSETS_COLLECTION_NAME))
-        .map(document -> document.getString("name"))
-        .into(new ArrayList<>());
+    return getCollectionNames().stream()
+        .map(partitionInterval::getHealthCheckType)
+        .distinct()
+        .collect(Collectors.toList());
   }
 
   /**
@@ -187,9 +845,13 @@ public class MongoDatabaseConnection implements DatabaseConnection {
   @Override
   public List<String> getSystemsInHealthCheckType(String healthCheckType) throws IllegalArgumentException {
     if (getHealthCheckTypes().contains(healthCheckType)) {
-      return healthCheckDB.getCollection(healthCheckType, HealthCheckRecord.class)
-          .distinct(HealthCheckRecord.SYSTEM_UUID, String.class)
-          .into(new ArrayList<>());
+      Set<String> systemUUIDs = new LinkedHashSet<>();
+      getPartitionNames(healthCheckType, Long.MIN_VALUE).forEach(collectionName ->
+          healthCheckDB.getCollection(collectionName, HealthCheckRecord.class)
+              .distinct(HealthCheckRecord.SYSTEM_UUID, String.class)
+              .into(systemUUIDs)
+      );
+      return new ArrayList<>(systemUUIDs);
     } else {
       throw new IllegalArgumentException(String.format("Topic '%s' doesn't exist", healthCheckType));
     }
@@ -207,26 +869,29 @@ public class MongoDatabaseConnection implements DatabaseConnection {
   public List<Long> getSessionTimestamps(String healthCheckType, String systemUUID) throws IllegalArgumentException {
     if (getHealthCheckTypes().contains(healthCheckType)) {
       //Aggregate timestamp data from database
-      List<Number> timestampsList = Optional.ofNullable(
-          healthCheckDB.getCollection(healthCheckType)
-              .aggregate(
-                  Arrays.asList(
-                      Aggregates.match(Filters.eq(HealthCheckRecord.SYSTEM_UUID, systemUUID)),
-                      Aggregates.group(
-                          String.format("$%s", HealthCheckRecord.SYSTEM_UUID),
-                          Accumulators.addToSet(
-                              HealthCheckRecord.SESSION_TIMESTAMP,
-                              String.format("$%s", HealthCheckRecord.SESSION_TIMESTAMP)
-                          )
-                      )
-                  )
-              ).first()
-      ).map(doc ->
-          doc.get(HealthCheckRecord.SESSION_TIMESTAMP, List.class)
-      ).orElse(new ArrayList());
+      List<Number> timestampsList = new ArrayList<>();
+      for (String collectionName : getPartitionNames(healthCheckType, Long.MIN_VALUE)) {
+        timestampsList.addAll(Optional.ofNullable(
+            healthCheckDB.getCollection(collectionName)
+                .aggregate(
+                    Arrays.asList(
+                        Aggregates.match(Filters.eq(HealthCheckRecord.SYSTEM_UUID, systemUUID)),
+                        Aggregates.group(
+                            String.format("$%s", HealthCheckRecord.SYSTEM_UUID),
+                            Accumulators.addToSet(
+                                HealthCheckRecord.SESSION_TIMESTAMP,
+                                String.format("$%s", HealthCheckRecord.SESSION_TIMESTAMP)
+                            )
+                        )
+                    )
+                ).first()
+        ).map(doc ->
+            doc.get(HealthCheckRecord.SESSION_TIMESTAMP, List.class)
+        ).orElse(new ArrayList()));
+      }
       //Force conversion of timestamp values to Long, as they may come out of the
       //database as an Integer type
-      return timestampsList.stream().map(Number::longValue).collect(Collectors.toList());
+      return timestampsList.stream().map(Number::longValue).distinct().collect(Collectors.toList());
     } else {
       throw new IllegalArgumentException(String.format("Topic '%s' doesn't exist", healthCheckType));
     }
@@ -234,6 +899,10 @@ public class MongoDatabaseConnection implements DatabaseConnection {
 
   /**
    * Request a list of all HealthCheck records for a specified computer's session correlating to a HealthCheck type.
+   * Records stored with a binary "_id" are reported with the string representation of their unique identifier, and
+   * data stored as a sequence of chunks is reported as a whole. HealthChecks stored in buckets are reported as
+   * individual records, each HealthCheck only once even if concurrent writers pushed it into its buckets twice. Only
+   * the partitions that end after the start of the session are queried.
    * @param healthCheckType The specified HealthCheck type.
    * @param systemUUID The specified computer (in the form of a UUID entity).
    * @param sessionTimestamp The specified session (in the form of a timestamp representing seconds elapsed since the UNIX epoch).
@@ -243,11 +912,58 @@ public class MongoDatabaseConnection implements DatabaseConnection {
   @Override
   public List<Map<String, Object>> getSessionHealthChecks(String healthCheckType, String systemUUID, Long sessionTimestamp) throws IllegalArgumentException {
     if (getHealthCheckTypes().contains(healthCheckType)) {
-      return healthCheckDB.getCollection(healthCheckType, Document.class)
+      Set<Object> reportedIds = new HashSet<>();
+      return getPartitionNames(healthCheckType, sessionTimestamp).stream()
+          .flatMap(collectionName -> healthCheckDB.getCollection(collectionName, Document.class)
+              .find(Filters.and(
+                  Filters.eq(HealthCheckRecord.SYSTEM_UUID, systemUUID),
+                  Filters.eq(HealthCheckRecord.SESSION_TIMESTAMP, sessionTimestamp)
+              ), Document.class)
+              .into(new ArrayList<>())
+              .stream()
+              .flatMap(recordDoc -> unpackBucket(recordDoc).stream())
+              .map(recordDoc -> reassembleChunks(collectionName, recordDoc))
+          )
+          .map(this::reportUniqueId)
+          .filter(recordDoc -> reportedIds.add(recordDoc.get(HealthCheckRecord.ID)))
+          .collect(Collectors.toList());
+    } else {
+      throw new IllegalArgumentException(String.format("Topic '%s' doesn't exist", healthCheckType));
+    }
+  }
+
+  /**
+   * Request the rollups of a computer's HealthChecks of the specified HealthCheck type within a time range. As the
+   * "_id" of a rollup starts with its HealthCheck type, computer and resolution, the time range is a single range of
+   * the "_id" index.
+   * @param healthCheckType The specified HealthCheck type.
+   * @param systemUUID The specified computer (in the form of a UUID entity).
+   * @param resolution The time window over which the HealthChecks are rolled up.
+   * @param fromTimestamp The start of the time range (inclusive, in seconds since the UNIX epoch).
+   * @param toTimestamp The end of the time range (exclusive, in seconds since the UNIX epoch).
+   * @return The rollups whose windows start within the time range, in chronological order. The statistics of each
+   *         field are reported under the field's dotted path within the HealthCheck data.
+   * @throws IllegalArgumentException Signifies that the HealthCheck type does not exist in the database.
+   */
+  @Override
+  public List<Map<String, Object>> getRollups(String healthCheckType, String systemUUID, RollupResolution resolution, long fromTimestamp, long toTimestamp) throws IllegalArgumentException {
+    if (getHealthCheckTypes().contains(healthCheckType)) {
+      return healthCheckDB.getCollection(ROLLUPS_COLLECTION_NAME, Document.class)
           .find(Filters.and(
-              Filters.eq(HealthCheckRecord.SYSTEM_UUID, systemUUID),
-              Filters.eq(HealthCheckRecord.SESSION_TIMESTAMP, sessionTimestamp)
-          ), Document.class)
+              Filters.gte(HealthCheckRecord.ID, buildRollupId(healthCheckType, systemUUID, resolution, fromTimestamp)),
+              Filters.lt(HealthCheckRecord.ID, buildRollupId(healthCheckType, systemUUID, resolution, toTimestamp))
+          ))
+          .sort(Sorts.ascending(HealthCheckRecord.ID))
+          .map(rollupDoc -> {
+            Document rollupId = rollupDoc.get(HealthCheckRecord.ID, Document.class);
+            Document reportedDoc = new Document(ROLLUPS_WINDOW_START_KEY, rollupId.get(ROLLUPS_WINDOW_START_KEY))
+                .append(HealthCheckRecord.SERIAL_ID, rollupDoc.get(HealthCheckRecord.SERIAL_ID))
+                .append(HealthCheckRecord.SYSTEM_UUID, rollupId.get(HealthCheckRecord.SYSTEM_UUID))
+                .append(ROLLUPS_RESOLUTION_KEY, rollupId.get(ROLLUPS_RESOLUTION_KEY))
+                .append(ROLLUPS_COUNT_KEY, rollupDoc.get(ROLLUPS_COUNT_KEY))
+                .append(ROLLUPS_FIELDS_KEY, collectFieldStats("", rollupDoc.get(ROLLUPS_FIELDS_KEY, Document.class), new Document()));
+            return (Map<String, Object>) reportedDoc;
+          })
           .into(new ArrayList<>());
     } else {
       throw new IllegalArgumentException(String.format("Topic '%s' doesn't exist", healthCheckType));
@@ -263,9 +979,15 @@ public class MongoDatabaseConnection implements DatabaseConnection {
     return getHealthCheckTypes().stream()
         .collect(Collectors.toMap(
             topic -> topic,
-            topic -> healthCheckDB.getCollection(topic)
-                .distinct(HealthCheckRecord.SERIAL_ID, String.class)
-                .into(new ArrayList<>())
+            topic -> {
+              Set<String> serialIds = new LinkedHashSet<>();
+              getPartitionNames(topic, Long.MIN_VALUE).forEach(collectionName ->
+                  healthCheckDB.getCollection(collectionName)
+                      .distinct(HealthCheckRecord.SERIAL_ID, String.class)
+                      .into(serialIds)
+              );
+              return new ArrayList<>(serialIds);
+            }
         ));
   }
 
@@ -281,18 +1003,22 @@ public class MongoDatabaseConnection implements DatabaseConnection {
         .collect(Collectors.toMap(
             topic -> topic,
             topic -> {
-              Optional<Document> queryResults = Optional.ofNullable(
-                  healthCheckDB.getCollection(topic)
-                      .aggregate(
-                          Arrays.asList(
-                              Aggregates.match(Filters.eq(HealthCheckRecord.SERIAL_ID, serialId)),
-                              Aggregates.group(
-                                  String.format("$%s", HealthCheckRecord.SERIAL_ID),
-                                  Accumulators.addToSet(HealthCheckRecord.SYSTEM_UUID, String.format("$%s", HealthCheckRecord.SYSTEM_UUID))
-                              )
-                          )
-                      ).first());
-              return queryResults.map(doc -> doc.get(HealthCheckRecord.SYSTEM_UUID, List.class)).orElse(new ArrayList());
+              Set<String> systemUUIDs = new LinkedHashSet<>();
+              for (String collectionName : getPartitionNames(topic, Long.MIN_VALUE)) {
+                Optional<Document> queryResults = Optional.ofNullable(
+                    healthCheckDB.getCollection(collectionName)
+                        .aggregate(
+                            Arrays.asList(
+                                Aggregates.match(Filters.eq(HealthCheckRecord.SERIAL_ID, serialId)),
+                                Aggregates.group(
+                                    String.format("$%s", HealthCheckRecord.SERIAL_ID),
+                                    Accumulators.addToSet(HealthCheckRecord.SYSTEM_UUID, String.format("$%s", HealthCheckRecord.SYSTEM_UUID))
+                                )
+                            )
+                        ).first());
+                systemUUIDs.addAll(queryResults.map(doc -> doc.get(HealthCheckRecord.SYSTEM_UUID, List.class)).orElse(new ArrayList()));
+              }
+              return new ArrayList<>(systemUUIDs);
             }
         ));
   }
@@ -307,4 +1033,807 @@ public class MongoDatabaseConnection implements DatabaseConnection {
 
   // ========================== Protected Methods ==========================79
   // =========================== Private Methods ===========================79
+  /**
+   * Request the names of all collections holding HealthCheck records, i.e. those that don't start with an underscore.
+   * @return The names of the collections of all HealthCheck types and partitions.
+   */
+  private List<String> getCollectionNames() {
+    return healthCheckDB.listCollections()
+        .filter(Filters.not(Filters.regex("name", "^_")))
+        .map(document -> document.getString("name"))
+        .into(new ArrayList<>());
+  }
+
+  /**
+   * Request the names of the collections of a HealthCheck type that may hold records from a point in time onwards.
+   * A collection named after the HealthCheck type itself (e.g. from before the type was partitioned) always
+   * qualifies.
+   * @param healthCheckType The HealthCheck type.
+   * @param fromTimestamp The point in time (in seconds since the UNIX epoch).
+   * @return The names of the qualifying collections, in chronological order.
+   */
+  private List<String> getPartitionNames(String healthCheckType, long fromTimestamp) {
+    return getCollectionNames().stream()
+        .filter(collectionName -> partitionInterval.getHealthCheckType(collectionName).equals(healthCheckType))
+        .filter(collectionName -> {
+          LocalDate partitionStart = partitionInterval.getPartitionStart(collectionName);
+          return (partitionStart == null) || (partitionInterval.getPartitionEnd(partitionStart) > fromTimestamp);
+        })
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Get the name of the collection that holds the HealthCheck records of a type at a point in time. A collection
+   * that is new to this connection is provided with its indexes, and a new partition causes the expired partitions
+   * of the HealthCheck type to be dropped. Records that are no longer {@link #isRetained(long) retained} have no
+   * collection, so that their expired partition is never created again.
+   * @param healthCheckType The HealthCheck type.
+   * @param healthCheckTimestamp The HealthCheck timestamp of the records (in seconds since the UNIX epoch).
+   * @return The name of the records' collection, or null if their partition has expired.
+   */
+  private String resolvePartition(String healthCheckType, long healthCheckTimestamp) {
+    if (!isRetained(healthCheckTimestamp)) {
+      return null;
+    }
+    String collectionName = partitionInterval.getCollectionName(healthCheckType, healthCheckTimestamp);
+    if (!indexedTypes.contains(collectionName)) {
+      ensureIndexes(collectionName);
+      dropExpiredPartitions(healthCheckType);
+    }
+    return collectionName;
+  }
+
+  /**
+   * Drop the partitions of a HealthCheck type that end before the retention cutoff, together with the continuation
+   * chunks of their records. The cutoff follows the current time rather than the newest partition, so that records
+   * with a clock running ahead cannot push retained partitions out. Dropping a partition removes its records at once,
+   * without deleting them one by one.
+   * @param healthCheckType The HealthCheck type.
+   */
+  private void dropExpiredPartitions(String healthCheckType) {
+    long retentionCutoff = getRetentionCutoff();
+    if (retentionCutoff == Long.MIN_VALUE) {
+      return;
+    }
+    List<String> partitionNames = getPartitionNames(healthCheckType, Long.MIN_VALUE).stream()
+        .filter(collectionName -> {
+          LocalDate partitionStart = partitionInterval.getPartitionStart(collectionName);
+          return (partitionStart != null) && (partitionInterval.getPartitionEnd(partitionStart) <= retentionCutoff);
+        })
+        .collect(Collectors.toList());
+    for (String collectionName : partitionNames) {
+      logger.info("Dropping expired partition '{}' of topic '{}'", collectionName, healthCheckType);
+      healthCheckDB.getCollection(collectionName).drop();
+      indexedTypes.remove(collectionName);
+      //The chunk "_id" starts with the collection name, so this range covers exactly the partition's chunks
+      healthCheckDB.getCollection(CHUNKS_COLLECTION_NAME).deleteMany(Filters.and(
+          Filters.gte(HealthCheckRecord.ID, new Document(CHUNKS_TYPE_KEY, collectionName)),
+          Filters.lt(HealthCheckRecord.ID, new Document(CHUNKS_TYPE_KEY, collectionName + '\u0000'))
+      ));
+    }
+  }
+
+  /**
+   * Get the start of the oldest partition that is retained at the current time.
+   * @return The start of the oldest retained partition (in seconds since the UNIX epoch), or {@link Long#MIN_VALUE}
+   *         if all partitions are kept.
+   */
+  private long getRetentionCutoff() {
+    if ((partitionInterval == PartitionInterval.NONE) || (retainedPartitions <= 0)) {
+      return Long.MIN_VALUE;
+    }
+    return partitionInterval.getRetentionCutoff(System.currentTimeMillis() / 1000L, retainedPartitions);
+  }
+
+  /**
+   * Write HealthCheck records of the same type to the collections of their partitions. Records whose partition has
+   * expired are reported as failed without being written.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @param partitionWriter Writer of the records of a single partition, given the name of the partition's collection
+   *                        and the positions of the partition's records.
+   * @return The per-record outcome of the writes of all partitions.
+   */
+  private <T> BatchWriteResult writePartitions(String healthCheckType, List<HealthCheckRecord<T>> healthCheckRecords, BiFunction<String, List<Integer>, BatchWriteResult> partitionWriter) {
+    Map<String, List<Integer>> partitionsMap = new LinkedHashMap<>();
+    Map<Integer, String> failedIndexes = new HashMap<>();
+    for (int recordIndex = 0; recordIndex < healthCheckRecords.size(); recordIndex++) {
+      long healthCheckTimestamp = healthCheckRecords.get(recordIndex).getHealthCheckTimestamp();
+      String collectionName = resolvePartition(healthCheckType, healthCheckTimestamp);
+      if (collectionName != null) {
+        partitionsMap.computeIfAbsent(collectionName, partitionName -> new ArrayList<>()).add(recordIndex);
+      } else {
+        logger.warn("Cannot write message {} - its partition of topic '{}' has expired", healthCheckRecords.get(recordIndex).getHealthCheckHeader(), healthCheckType);
+        failedIndexes.put(recordIndex, String.format("Partition of HealthCheck timestamp %d has expired", healthCheckTimestamp));
+      }
+    }
+    int persistedCount = 0;
+    List<Integer> duplicateIndexes = new ArrayList<>();
+    for (Map.Entry<String, List<Integer>> partitionEntry : partitionsMap.entrySet()) {
+      List<Integer> recordIndexes = partitionEntry.getValue();
+      BatchWriteResult partitionResult = partitionWriter.apply(partitionEntry.getKey(), recordIndexes);
+      persistedCount += partitionResult.getPersistedCount();
+      partitionResult.getDuplicateIndexes().forEach(partitionIndex -> duplicateIndexes.add(recordIndexes.get(partitionIndex)));
+      partitionResult.getFailedIndexes().forEach((partitionIndex, errorMessage) -> failedIndexes.put(recordIndexes.get(partitionIndex), errorMessage));
+    }
+    return new BatchWriteResult(persistedCount, duplicateIndexes, failedIndexes);
+  }
+
+  /**
+   * Create the collection of a HealthCheck type or partition together with its {@link #HEALTHCHECK_INDEXES}. A
+   * collection that was created by another connection in the meantime is left as it is.
+   * @param collectionName The name of the collection.
+   */
+  private void createCollection(String collectionName) {
+    try {
+      healthCheckDB.createCollection(collectionName);
+      logger.info("Created collection for topic '{}'", collectionName);
+    } catch (MongoCommandException mce) {
+      if (mce.getErrorCode() != NAMESPACE_EXISTS_ERROR_CODE) {
+        throw mce;
+      }
+    }
+    ensureIndexes(collectionName);
+  }
+
+  /**
+   * Create any missing {@link #HEALTHCHECK_INDEXES} of a HealthCheck type's collection, unless they were already
+   * checked by this connection. The collection is created if it does not exist yet.
+   * @param healthCheckType The HealthCheck type.
+   */
+  private void ensureIndexes(String healthCheckType) {
+    if (indexedTypes.add(healthCheckType)) {
+      try {
+        healthCheckDB.getCollection(healthCheckType).createIndexes(HEALTHCHECK_INDEXES);
+        logger.debug("Checked indexes for topic '{}'", healthCheckType);
+      } catch (MongoException me) {
+        indexedTypes.remove(healthCheckType);
+        logger.warn("Unable to check indexes for topic '{}': {}", healthCheckType, me.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Store HealthCheck file data in chunks according to the {@link #fileStorageMode}. Records with any other type of
+   * data are returned as they are.
+   * @param clientSession The session of the running transaction, or null if the chunks are not written transactionally.
+   * @param healthCheckType The type of the HealthCheck record.
+   * @param healthCheckRecord The HealthCheck record.
+   * @return The HealthCheck record to be written in place of the given record.
+   */
+  private HealthCheckRecord<?> splitChunks(ClientSession clientSession, String healthCheckType, HealthCheckRecord<?> healthCheckRecord) {
+    if (!(healthCheckRecord.getData() instanceof FileLines)) {
+      return healthCheckRecord;
+    } else if (fileStorageMode == FileStorageMode.CONTENT_ADDRESSED) {
+      return storeContentChunks(clientSession, healthCheckRecord.getHealthCheckHeader(), (FileLines) healthCheckRecord.getData());
+    }
+    return storeSequentialChunks(clientSession, healthCheckType, healthCheckRecord.getHealthCheckHeader(), (FileLines) healthCheckRecord.getData());
+  }
+
+  /**
+   * Store HealthCheck file data as a sequence of chunks. Every chunk but the first is upserted into the
+   * {@link #CHUNKS_COLLECTION_NAME} collection under an "_id" derived from the record's key, so that writing the
+   * chunks again (e.g. for a replayed message) is harmless; the first chunk stays with the record. The chunks are
+   * decoded and written one at a time, so only a single chunk of lines is held in memory.
+   * @param clientSession The session of the running transaction, or null if the chunks are not written transactionally.
+   * @param healthCheckType The type of the HealthCheck record.
+   * @param healthCheckHeader The HealthCheck record's metadata.
+   * @param fileLines The HealthCheck file data.
+   * @return The HealthCheck record holding the first chunk and the number of chunks.
+   */
+  private HealthCheckRecord<?> storeSequentialChunks(ClientSession clientSession, String healthCheckType, HealthCheckHeader healthCheckHeader, FileLines fileLines) {
+    Iterator<List<String>> chunks = fileLines.chunks();
+    HealthCheckRecord<List<String>> headRecord = new HealthCheckRecord<>(healthCheckHeader, chunks.next());
+    int chunkCount = 1;
+    if (chunks.hasNext()) {
+      BsonValue recordKey = keyFormat.encodeKey(healthCheckHeader);
+      MongoCollection<Document> chunksCollection = healthCheckDB.getCollection(CHUNKS_COLLECTION_NAME, Document.class);
+      ReplaceOptions replaceOptions = new ReplaceOptions().upsert(true);
+      while (chunks.hasNext()) {
+        Document chunkId = buildChunkId(healthCheckType, recordKey, chunkCount);
+        Document chunkDoc = new Document(HealthCheckRecord.ID, chunkId).append(HealthCheckRecord.DATA, chunks.next());
+        if (clientSession != null) {
+          chunksCollection.replaceOne(clientSession, Filters.eq(HealthCheckRecord.ID, chunkId), chunkDoc, replaceOptions);
+        } else {
+          chunksCollection.replaceOne(Filters.eq(HealthCheckRecord.ID, chunkId), chunkDoc, replaceOptions);
+        }
+        chunkCount++;
+      }
+    }
+    headRecord.setChunkCount(chunkCount);
+    return headRecord;
+  }
+
+  /**
+   * Store HealthCheck file data as content-addressed chunks. The lines are split at content-defined boundaries, and
+   * each chunk is stored in the {@link #CONTENT_CHUNKS_COLLECTION_NAME} collection under its SHA-256 hash, unless a
+   * chunk with that hash is already stored. The chunks are written in groups of at most
+   * {@link FileLines#DEFAULT_CHUNK_MAX_BYTES} characters of lines, so memory use stays bounded.
+   * @param clientSession The session of the running transaction, or null if the chunks are not written transactionally.
+   * @param healthCheckHeader The HealthCheck record's metadata.
+   * @param fileLines The HealthCheck file data.
+   * @return The HealthCheck record holding the references to its chunks instead of its data.
+   */
+  private HealthCheckRecord<?> storeContentChunks(ClientSession clientSession, HealthCheckHeader healthCheckHeader, FileLines fileLines) {
+    Iterator<List<String>> chunks = fileLines.contentDefinedChunks();
+    List<byte[]> chunkRefs = new ArrayList<>();
+    Map<Binary, List<String>> pendingChunks = new LinkedHashMap<>();
+    long pendingSize = 0;
+    while (chunks.hasNext()) {
+      List<String> chunk = chunks.next();
+      byte[] chunkHash = hashChunk(chunk);
+      chunkRefs.add(chunkHash);
+      if (pendingChunks.putIfAbsent(new Binary(chunkHash), chunk) == null) {
+        for (String line : chunk) {
+          pendingSize += (line != null) ? line.length() : 0;
+        }
+      }
+      if ((pendingSize >= FileLines.DEFAULT_CHUNK_MAX_BYTES) || !chunks.hasNext()) {
+        writeContentChunks(clientSession, pendingChunks);
+        pendingChunks.clear();
+        pendingSize = 0;
+      }
+    }
+    HealthCheckRecord<Object> refsRecord = new HealthCheckRecord<>(healthCheckHeader, null);
+    refsRecord.setChunkRefs(chunkRefs);
+    return refsRecord;
+  }
+
+  /**
+   * Write the content-addressed chunks that are not stored yet. The stored hashes are looked up first, so that chunks
+   * repeated from earlier files are never sent again; the remaining chunks are upserted, which is harmless should
+   * another writer store the same chunk in the meantime.
+   * @param clientSession The session of the running transaction, or null if the chunks are not written transactionally.
+   * @param chunksMap The chunks, mapped by content hash.
+   */
+  private void writeContentChunks(ClientSession clientSession, Map<Binary, List<String>> chunksMap) {
+    MongoCollection<Document> contentChunksCollection = healthCheckDB.getCollection(CONTENT_CHUNKS_COLLECTION_NAME, Document.class);
+    Bson storedFilter = Filters.in(HealthCheckRecord.ID, chunksMap.keySet());
+    Set<Binary> storedHashes = new HashSet<>();
+    ((clientSession != null) ? contentChunksCollection.find(clientSession, storedFilter) : contentChunksCollection.find(storedFilter))
+        .projection(Projections.include(HealthCheckRecord.ID))
+        .forEach((Block<Document>) chunkDoc -> storedHashes.add(chunkDoc.get(HealthCheckRecord.ID, Binary.class)));
+    List<WriteModel<Document>> writeModels = chunksMap.entrySet().stream()
+        .filter(chunkEntry -> !storedHashes.contains(chunkEntry.getKey()))
+        .map(chunkEntry -> new UpdateOneModel<Document>(
+            Filters.eq(HealthCheckRecord.ID, chunkEntry.getKey()),
+            Updates.setOnInsert(HealthCheckRecord.DATA, chunkEntry.getValue()),
+            new UpdateOptions().upsert(true)
+        ))
+        .collect(Collectors.toList());
+    if (!writeModels.isEmpty()) {
+      if (clientSession != null) {
+        contentChunksCollection.bulkWrite(clientSession, writeModels, new BulkWriteOptions().ordered(false));
+      } else {
+        contentChunksCollection.bulkWrite(writeModels, new BulkWriteOptions().ordered(false));
+      }
+    }
+  }
+
+  /**
+   * Compute the SHA-256 hash of a chunk of lines. Every line is hashed together with its length, so that the hash
+   * identifies the exact sequence of lines.
+   * @param chunk The chunk of lines.
+   * @return The content hash of the chunk.
+   */
+  private byte[] hashChunk(List<String> chunk) {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException("SHA-256 is not supported by this JVM", nsae);
+    }
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+    for (String line : chunk) {
+      byte[] lineBytes = (line != null) ? line.getBytes(StandardCharsets.UTF_8) : new byte[0];
+      lengthBuffer.clear();
+      lengthBuffer.putInt((line != null) ? lineBytes.length : -1);
+      messageDigest.update(lengthBuffer.array());
+      messageDigest.update(lineBytes);
+    }
+    return messageDigest.digest();
+  }
+
+  /**
+   * Put the data of a stored record back together from its chunks: either by appending its continuation chunks to
+   * the data of the record itself, or by concatenating the content-addressed chunks that it references.
+   * @param healthCheckType The type of the HealthCheck record.
+   * @param recordDoc The stored record.
+   * @return The stored record with all of its data, and without its chunk count or chunk references.
+   */
+  @SuppressWarnings("unchecked")
+  private Document reassembleChunks(String healthCheckType, Document recordDoc) {
+    List<Binary> chunkRefs = (List<Binary>) recordDoc.remove(HealthCheckRecord.CHUNK_REFS);
+    if (chunkRefs != null) {
+      Map<Binary, List<Object>> contentChunksMap = new HashMap<>();
+      healthCheckDB.getCollection(CONTENT_CHUNKS_COLLECTION_NAME, Document.class)
+          .find(Filters.in(HealthCheckRecord.ID, new HashSet<>(chunkRefs)))
+          .forEach((Block<Document>) chunkDoc -> contentChunksMap.put(
+              chunkDoc.get(HealthCheckRecord.ID, Binary.class),
+              chunkDoc.get(HealthCheckRecord.DATA, List.class)
+          ));
+      List<Object> data = new ArrayList<>();
+      for (Binary chunkRef : chunkRefs) {
+        List<Object> chunk = contentChunksMap.get(chunkRef);
+        if (chunk != null) {
+          data.addAll(chunk);
+        } else {
+          logger.warn("Content chunk {} of record {} for topic '{}' is missing", Base64.getEncoder().encodeToString(chunkRef.getData()), recordDoc.get(HealthCheckRecord.ID), healthCheckType);
+        }
+      }
+      recordDoc.put(HealthCheckRecord.DATA, data);
+    }
+    Number chunkCount = (Number) recordDoc.remove(HealthCheckRecord.CHUNK_COUNT);
+    if ((chunkCount == null) || (chunkCount.intValue() <= 1)) {
+      return recordDoc;
+    }
+    Object recordKey = recordDoc.get(HealthCheckRecord.ID);
+    List<Document> chunkIds = IntStream.range(1, chunkCount.intValue())
+        .mapToObj(sequence -> buildChunkId(healthCheckType, recordKey, sequence))
+        .collect(Collectors.toList());
+    Map<Integer, List<Object>> chunksMap = new HashMap<>();
+    healthCheckDB.getCollection(CHUNKS_COLLECTION_NAME, Document.class)
+        .find(Filters.in(HealthCheckRecord.ID, chunkIds))
+        .forEach((Block<Document>) chunkDoc -> chunksMap.put(
+            chunkDoc.get(HealthCheckRecord.ID, Document.class).getInteger(CHUNKS_SEQUENCE_KEY),
+            chunkDoc.get(HealthCheckRecord.DATA, List.class)
+        ));
+    List<Object> data = new ArrayList<>(recordDoc.get(HealthCheckRecord.DATA, List.class));
+    for (int sequence = 1; sequence < chunkCount.intValue(); sequence++) {
+      List<Object> chunk = chunksMap.get(sequence);
+      if (chunk != null) {
+        data.addAll(chunk);
+      } else {
+        logger.warn("Chunk {} of record {} for topic '{}' is missing", sequence, recordKey, healthCheckType);
+      }
+    }
+    recordDoc.put(HealthCheckRecord.DATA, data);
+    return recordDoc;
+  }
+
+  /**
+   * Build the "_id" of a continuation chunk. The key of the record may be given as a BSON value or as its decoded
+   * counterpart, as both are encoded alike.
+   * @param healthCheckType The type of the HealthCheck record.
+   * @param recordKey The "_id" of the HealthCheck record.
+   * @param sequence The position of the chunk in the sequence, with the chunk of the record itself at position 0.
+   * @return The "_id" of the chunk.
+   */
+  static Document buildChunkId(String healthCheckType, Object recordKey, int sequence) {
+    return new Document(CHUNKS_TYPE_KEY, healthCheckType)
+        .append(CHUNKS_RECORD_KEY, recordKey)
+        .append(CHUNKS_SEQUENCE_KEY, sequence);
+  }
+
+  /**
+   * Build the "_id" of a dead letter, which identifies the message by its position in the message log.
+   * @param deadLetter The dead letter.
+   * @return The "_id" of the dead letter.
+   */
+  private Document buildDeadLetterId(DeadLetter deadLetter) {
+    return new Document(DEADLETTER_TOPIC_KEY, deadLetter.getTopic())
+        .append(DEADLETTER_PARTITION_KEY, deadLetter.getPartition())
+        .append(DEADLETTER_OFFSET_KEY, deadLetter.getOffset());
+  }
+
+  /**
+   * Build the "_id" of a rollup, which identifies the rollup by its HealthCheck type, computer, resolution and
+   * window start, in this order.
+   * @param healthCheckType The type of the rolled up HealthChecks.
+   * @param systemUUID The computer (in the form of a UUID entity).
+   * @param resolution The time window over which the HealthChecks are rolled up.
+   * @param windowStart The start of the rollup window (in seconds since the UNIX epoch).
+   * @return The "_id" of the rollup.
+   */
+  private Document buildRollupId(String healthCheckType, String systemUUID, RollupResolution resolution, long windowStart) {
+    return new Document(ROLLUPS_TYPE_KEY, healthCheckType)
+        .append(HealthCheckRecord.SYSTEM_UUID, systemUUID)
+        .append(ROLLUPS_RESOLUTION_KEY, resolution.name())
+        .append(ROLLUPS_WINDOW_START_KEY, windowStart);
+  }
+
+  /**
+   * Collect the statistics of the fields of a stored rollup, which are kept in a {@link Rollup#STATS_KEY} sub-document
+   * beneath each field's path.
+   * @param fieldPath The dotted path of the stored fields within the HealthCheck data, or an empty string for the data itself.
+   * @param fieldsDoc The stored fields, or null if there are none.
+   * @param fieldStatsDoc Document into which the statistics of each field are put, mapped by the field's dotted path.
+   * @return The document of the statistics of each field.
+   */
+  private Document collectFieldStats(String fieldPath, Document fieldsDoc, Document fieldStatsDoc) {
+    if (fieldsDoc != null) {
+      fieldsDoc.forEach((fieldName, fieldValue) -> {
+        if (Rollup.STATS_KEY.equals(fieldName)) {
+          fieldStatsDoc.append(fieldPath, fieldValue);
+        } else if (fieldValue instanceof Document) {
+          collectFieldStats(fieldPath.isEmpty() ? fieldName : fieldPath + "." + fieldName, (Document) fieldValue, fieldStatsDoc);
+        }
+      });
+    }
+    return fieldStatsDoc;
+  }
+
+  /**
+   * Replace a non-string "_id" of a stored record with the string representation of its unique identifier.
+   * @param recordDoc The stored record.
+   * @return The stored record with a string "_id".
+   * @see HealthCheckHeader#getUniqueId()
+   */
+  private Document reportUniqueId(Document recordDoc) {
+    if (!(recordDoc.get(HealthCheckRecord.ID) instanceof String)) {
+      HealthCheckHeader healthCheckHeader = new HealthCheckHeader();
+      healthCheckHeader.setSystemUUID(recordDoc.getString(HealthCheckRecord.SYSTEM_UUID));
+      healthCheckHeader.setSessionTimestamp(recordDoc.get(HealthCheckRecord.SESSION_TIMESTAMP, Number.class).longValue());
+      healthCheckHeader.setHealthCheckTimestamp(recordDoc.get(HealthCheckRecord.HEALTHCHECK_TIMESTAMP, Number.class).longValue());
+      recordDoc.put(HealthCheckRecord.ID, healthCheckHeader.getUniqueId());
+    }
+    return recordDoc;
+  }
+
+  /**
+   * Build the upserts that raise the stored message offsets to the new offsets. Each offset entry is upserted with a
+   * $max update, so a stored offset is never lowered.
+   * @param newOffsets The new message offsets, mapped by HealthCheck type and then by message partition.
+   * @return The offset write models.
+   */
+  private List<WriteModel<Document>> buildOffsetWriteModels(Map<String, Map<Integer, Long>> newOffsets) {
+    List<WriteModel<Document>> writeModels = new ArrayList<>();
+    newOffsets.forEach((healthCheckType, partitionOffsets) ->
+        partitionOffsets.forEach((partition, newOffset) ->
+            writeModels.add(new UpdateOneModel<>(
+                Filters.and(
+                    Filters.eq(OFFSETS_TOPIC_KEY, healthCheckType),
+                    Filters.eq(OFFSETS_PARTITION_KEY, partition)
+                ),
+                Updates.max(OFFSETS_OFFSET_KEY, newOffset),
+                new UpdateOptions().upsert(true)
+            ))
+        )
+    );
+    return writeModels;
+  }
+
+  /**
+   * Get a collection of HealthCheck records, whose records are encoded by the {@link HealthCheckRecordCodec} whatever
+   * their data type.
+   * @param collectionName The name of the collection.
+   * @return The collection.
+   */
+  @SuppressWarnings("unchecked")
+  private MongoCollection<HealthCheckRecord<?>> getRecordCollection(String collectionName) {
+    return healthCheckDB.getCollection(collectionName, (Class<HealthCheckRecord<?>>) (Class<?>) HealthCheckRecord.class);
+  }
+
+  /**
+   * Build the write of a HealthCheck record as an upsert by its ID that sets the record's fields only on insertion,
+   * so that an existing record is left untouched without raising a duplicate key error.
+   * @param healthCheckRecord The HealthCheck record.
+   * @return The upsert of the record.
+   */
+  private WriteModel<HealthCheckRecord<?>> buildUpsertModel(HealthCheckRecord<?> healthCheckRecord) {
+    List<Bson> fieldUpdates = new ArrayList<>(Arrays.asList(
+        Updates.setOnInsert(HealthCheckRecord.SERIAL_ID, healthCheckRecord.getSerialId()),
+        Updates.setOnInsert(HealthCheckRecord.SYSTEM_UUID, healthCheckRecord.getSystemUUID()),
+        Updates.setOnInsert(HealthCheckRecord.SESSION_TIMESTAMP, healthCheckRecord.getSessionTimestamp()),
+        Updates.setOnInsert(HealthCheckRecord.HEALTHCHECK_TIMESTAMP, healthCheckRecord.getHealthCheckTimestamp()),
+        Updates.setOnInsert(HealthCheckRecord.VERSION, healthCheckRecord.getVersion()),
+        Updates.setOnInsert(HealthCheckRecord.DATA, healthCheckRecord.getData())
+    ));
+    if (healthCheckRecord.getChunkCount() > 1) {
+      fieldUpdates.add(Updates.setOnInsert(HealthCheckRecord.CHUNK_COUNT, healthCheckRecord.getChunkCount()));
+    }
+    if (healthCheckRecord.getChunkRefs() != null) {
+      fieldUpdates.add(Updates.setOnInsert(HealthCheckRecord.CHUNK_REFS, healthCheckRecord.getChunkRefs()));
+    }
+    return new UpdateOneModel<>(
+        Filters.eq(HealthCheckRecord.ID, keyFormat.encodeKey(healthCheckRecord.getHealthCheckHeader())),
+        Updates.combine(fieldUpdates),
+        new UpdateOptions().upsert(true)
+    );
+  }
+
+  /**
+   * Write HealthCheck records to a single collection, some of which are likely to exist already. The records are
+   * sent as unordered bulk writes of at most {@link #batchMaxSize} records: records are inserted, except for the
+   * likely duplicates, which are upserted with their fields set only on insertion.
+   * @param collectionName The name of the collection of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @param likelyDuplicates The positions of the HealthCheck records that are likely to exist already.
+   * @return The per-record outcome of the write.
+   */
+  private <T> BatchWriteResult insertRecords(String collectionName, List<HealthCheckRecord<T>> healthCheckRecords, BitSet likelyDuplicates) {
+    MongoCollection<HealthCheckRecord<?>> collection = getRecordCollection(collectionName);
+    int persistedCount = 0;
+    List<Integer> duplicateIndexes = new ArrayList<>();
+    Map<Integer, String> failedIndexes = new HashMap<>();
+    for (int batchStart = 0; batchStart < healthCheckRecords.size(); batchStart += batchMaxSize) {
+      int batchEnd = Math.min(batchStart + batchMaxSize, healthCheckRecords.size());
+      List<WriteModel<HealthCheckRecord<?>>> writeModels = new ArrayList<>(batchEnd - batchStart);
+      for (int recordIndex = batchStart; recordIndex < batchEnd; recordIndex++) {
+        HealthCheckRecord<?> healthCheckRecord = splitChunks(null, collectionName, healthCheckRecords.get(recordIndex));
+        writeModels.add(likelyDuplicates.get(recordIndex) ?
+            buildUpsertModel(healthCheckRecord) :
+            new InsertOneModel<>(healthCheckRecord)
+        );
+      }
+      BitSet upsertedIndexes = new BitSet();
+      long writeStartTime = System.currentTimeMillis();
+      try {
+        BulkWriteResult bulkWriteResult = collection.bulkWrite(writeModels, new BulkWriteOptions().ordered(false));
+        persistedCount += bulkWriteResult.getInsertedCount() + bulkWriteResult.getUpserts().size();
+        bulkWriteResult.getUpserts().forEach(upsert -> upsertedIndexes.set(upsert.getIndex()));
+      } catch (MongoBulkWriteException mbwe) {
+        persistedCount += mbwe.getWriteResult().getInsertedCount() + mbwe.getWriteResult().getUpserts().size();
+        mbwe.getWriteResult().getUpserts().forEach(upsert -> upsertedIndexes.set(upsert.getIndex()));
+        for (BulkWriteError writeError : mbwe.getWriteErrors()) {
+          int recordIndex = batchStart + writeError.getIndex();
+          String recordId = healthCheckRecords.get(recordIndex).getUniqueId();
+          //A failed upsert is not a duplicate, so it must not be counted as one below
+          upsertedIndexes.set(writeError.getIndex());
+          if (writeError.getCategory() == ErrorCategory.DUPLICATE_KEY) {
+            logger.warn("Cannot write message {} - entry already exists with this key for topic '{}'", recordId, collectionName);
+            duplicateIndexes.add(recordIndex);
+          } else {
+            logger.error("Error writing message {} to topic '{}': {}", recordId, collectionName, writeError.getMessage());
+            failedIndexes.put(recordIndex, writeError.getMessage());
+          }
+        }
+      }
+      //Likely duplicates that were neither upserted nor failed matched an existing record
+      for (int recordIndex = likelyDuplicates.nextSetBit(batchStart); (recordIndex >= 0) && (recordIndex < batchEnd); recordIndex = likelyDuplicates.nextSetBit(recordIndex + 1)) {
+        if (!upsertedIndexes.get(recordIndex - batchStart)) {
+          logger.debug("Skipped message {} - entry already exists with this key for topic '{}'", healthCheckRecords.get(recordIndex).getUniqueId(), collectionName);
+          duplicateIndexes.add(recordIndex);
+        }
+      }
+      long writeDuration = System.currentTimeMillis() - writeStartTime;
+      if (writeDuration > batchSlowWriteThreshold) {
+        logger.warn("Bulk write of {} records to topic '{}' took {}ms", writeModels.size(), collectionName, writeDuration);
+      }
+    }
+    return new BatchWriteResult(persistedCount, duplicateIndexes, failedIndexes);
+  }
+
+  /**
+   * Push HealthCheck records of the same type into their buckets, one per computer, session and time window of
+   * {@link #bucketWindow} seconds. The records of each bucket are pushed with a single upsert that only matches a
+   * bucket with room for all of them, so that a full bucket is continued in a new bucket of the same time window;
+   * the upserts are sent as unordered bulk writes of at most {@link #batchMaxSize} upserts. Records whose
+   * HealthCheck timestamp is already stored in a bucket of their time window (e.g. from redelivered messages), or
+   * occurs earlier in the same batch, are reported as duplicates instead of being pushed again.
+   * @param clientSession The session of the running transaction, or null if the records are not written transactionally.
+   * @param collectionName The name of the collection of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @return The per-record outcome of the write.
+   */
+  private <T> BatchWriteResult persistBuckets(ClientSession clientSession, String collectionName, List<HealthCheckRecord<T>> healthCheckRecords) {
+    MongoCollection<Document> collection = healthCheckDB.getCollection(collectionName, Document.class);
+    //Group the records by bucket
+    Map<Document, List<Integer>> bucketsMap = new LinkedHashMap<>();
+    for (int recordIndex = 0; recordIndex < healthCheckRecords.size(); recordIndex++) {
+      HealthCheckRecord<T> healthCheckRecord = healthCheckRecords.get(recordIndex);
+      long healthCheckTimestamp = healthCheckRecord.getHealthCheckTimestamp();
+      bucketsMap.computeIfAbsent(
+          new Document(HealthCheckRecord.SYSTEM_UUID, healthCheckRecord.getSystemUUID())
+              .append(HealthCheckRecord.SESSION_TIMESTAMP, healthCheckRecord.getSessionTimestamp())
+              .append(BUCKET_START_KEY, healthCheckTimestamp - Math.floorMod(healthCheckTimestamp, bucketWindow)),
+          bucketKey -> new ArrayList<>()
+      ).add(recordIndex);
+    }
+    Map<Document, Set<Long>> storedTimestampsMap = findStoredReadings(clientSession, collection, bucketsMap.keySet());
+    List<Integer> duplicateIndexes = new ArrayList<>();
+    bucketsMap.forEach((bucketKey, recordIndexes) -> {
+      Set<Long> storedTimestamps = storedTimestampsMap.computeIfAbsent(bucketKey, key -> new HashSet<>());
+      recordIndexes.removeIf(recordIndex -> {
+        HealthCheckRecord<T> healthCheckRecord = healthCheckRecords.get(recordIndex);
+        if (storedTimestamps.add(healthCheckRecord.getHealthCheckTimestamp())) {
+          return false;
+        }
+        logger.warn("Cannot write message {} - entry already exists with this key for topic '{}'", healthCheckRecord.getUniqueId(), collectionName);
+        duplicateIndexes.add(recordIndex);
+        return true;
+      });
+    });
+    List<List<Integer>> pushedIndexes = new ArrayList<>();
+    List<WriteModel<Document>> writeModels = new ArrayList<>();
+    bucketsMap.forEach((bucketKey, recordIndexes) -> {
+      for (int pushStart = 0; pushStart < recordIndexes.size(); pushStart += bucketMaxReadings) {
+        List<Integer> pushIndexes = recordIndexes.subList(pushStart, Math.min(pushStart + bucketMaxReadings, recordIndexes.size()));
+        List<Document> readings = pushIndexes.stream()
+            .map(healthCheckRecords::get)
+            .map(healthCheckRecord -> new Document(HealthCheckRecord.HEALTHCHECK_TIMESTAMP, healthCheckRecord.getHealthCheckTimestamp())
+                .append(HealthCheckRecord.VERSION, healthCheckRecord.getVersion())
+                .append(HealthCheckRecord.DATA, (healthCheckRecord.getData() instanceof FileLines) ?
+                    ((FileLines) healthCheckRecord.getData()).toList() :
+                    healthCheckRecord.getData()
+                )
+            )
+            .collect(Collectors.toList());
+        pushedIndexes.add(pushIndexes);
+        writeModels.add(new UpdateOneModel<>(
+            Filters.and(
+                Filters.eq(HealthCheckRecord.SYSTEM_UUID, bucketKey.get(HealthCheckRecord.SYSTEM_UUID)),
+                Filters.eq(HealthCheckRecord.SESSION_TIMESTAMP, bucketKey.get(HealthCheckRecord.SESSION_TIMESTAMP)),
+                Filters.eq(BUCKET_START_KEY, bucketKey.get(BUCKET_START_KEY)),
+                Filters.lte(BUCKET_COUNT_KEY, bucketMaxReadings - readings.size())
+            ),
+            Updates.combine(
+                Updates.setOnInsert(HealthCheckRecord.SERIAL_ID, healthCheckRecords.get(pushIndexes.get(0)).getSerialId()),
+                Updates.pushEach(BUCKET_READINGS_KEY, readings),
+                Updates.inc(BUCKET_COUNT_KEY, readings.size())
+            ),
+            new UpdateOptions().upsert(true)
+        ));
+      }
+    });
+    int persistedCount = 0;
+    Map<Integer, String> failedIndexes = new HashMap<>();
+    for (int batchStart = 0; batchStart < writeModels.size(); batchStart += batchMaxSize) {
+      List<WriteModel<Document>> batchModels = writeModels.subList(batchStart, Math.min(batchStart + batchMaxSize, writeModels.size()));
+      Set<Integer> failedPushes = new HashSet<>();
+      try {
+        if (clientSession != null) {
+          collection.bulkWrite(clientSession, batchModels, new BulkWriteOptions().ordered(false));
+        } else {
+          collection.bulkWrite(batchModels, new BulkWriteOptions().ordered(false));
+        }
+      } catch (MongoBulkWriteException mbwe) {
+        if (clientSession != null) {
+          throw mbwe;
+        }
+        for (BulkWriteError writeError : mbwe.getWriteErrors()) {
+          logger.error("Error pushing {} records into bucket of topic '{}': {}", pushedIndexes.get(batchStart + writeError.getIndex()).size(), collectionName, writeError.getMessage());
+          failedPushes.add(batchStart + writeError.getIndex());
+        }
+      }
+      for (int pushIndex = batchStart; pushIndex < (batchStart + batchModels.size()); pushIndex++) {
+        if (failedPushes.contains(pushIndex)) {
+          String errorMessage = "Unable to push record into its bucket";
+          pushedIndexes.get(pushIndex).forEach(recordIndex -> failedIndexes.put(recordIndex, errorMessage));
+        } else {
+          persistedCount += pushedIndexes.get(pushIndex).size();
+        }
+      }
+    }
+    return new BatchWriteResult(persistedCount, duplicateIndexes, failedIndexes);
+  }
+
+  /**
+   * Request the HealthCheck timestamps of the readings that are stored in buckets. As a full bucket is continued in
+   * a new bucket of the same time window, all buckets of each time window are searched.
+   * @param clientSession The session of the running transaction, or null if the buckets are not read transactionally.
+   * @param collection The collection of the buckets.
+   * @param bucketKeys The computers, sessions and time windows of the buckets.
+   * @return The HealthCheck timestamps of the stored readings, mapped by the computer, session and time window of
+   * their buckets.
+   */
+  private Map<Document, Set<Long>> findStoredReadings(ClientSession clientSession, MongoCollection<Document> collection, Collection<Document> bucketKeys) {
+    Map<Document, Set<Long>> storedTimestampsMap = new HashMap<>();
+    if (bucketKeys.isEmpty()) {
+      return storedTimestampsMap;
+    }
+    Bson bucketsFilter = Filters.or(bucketKeys.stream()
+        .map(bucketKey -> Filters.and(
+            Filters.eq(HealthCheckRecord.SYSTEM_UUID, bucketKey.get(HealthCheckRecord.SYSTEM_UUID)),
+            Filters.eq(HealthCheckRecord.SESSION_TIMESTAMP, bucketKey.get(HealthCheckRecord.SESSION_TIMESTAMP)),
+            Filters.eq(BUCKET_START_KEY, bucketKey.get(BUCKET_START_KEY))
+        ))
+        .collect(Collectors.toList())
+    );
+    Bson readingsProjection = Projections.include(
+        HealthCheckRecord.SYSTEM_UUID,
+        HealthCheckRecord.SESSION_TIMESTAMP,
+        BUCKET_START_KEY,
+        BUCKET_READINGS_KEY + "." + HealthCheckRecord.HEALTHCHECK_TIMESTAMP
+    );
+    List<Document> bucketDocs = ((clientSession != null) ? collection.find(clientSession, bucketsFilter) : collection.find(bucketsFilter))
+        .projection(readingsProjection)
+        .into(new ArrayList<>());
+    for (Document bucketDoc : bucketDocs) {
+      Document bucketKey = new Document(HealthCheckRecord.SYSTEM_UUID, bucketDoc.getString(HealthCheckRecord.SYSTEM_UUID))
+          .append(HealthCheckRecord.SESSION_TIMESTAMP, bucketDoc.get(HealthCheckRecord.SESSION_TIMESTAMP, Number.class).longValue())
+          .append(BUCKET_START_KEY, bucketDoc.get(BUCKET_START_KEY, Number.class).longValue());
+      Set<Long> storedTimestamps = storedTimestampsMap.computeIfAbsent(bucketKey, key -> new HashSet<>());
+      for (Object reading : bucketDoc.get(BUCKET_READINGS_KEY, List.class)) {
+        storedTimestamps.add(((Document) reading).get(HealthCheckRecord.HEALTHCHECK_TIMESTAMP, Number.class).longValue());
+      }
+    }
+    return storedTimestampsMap;
+  }
+
+  /**
+   * Unpack a bucket of HealthChecks into the records that its HealthChecks would have been stored as. Documents that
+   * are not buckets are returned as they are.
+   * @param recordDoc The stored record or bucket.
+   * @return The stored records.
+   */
+  @SuppressWarnings("unchecked")
+  private List<Document> unpackBucket(Document recordDoc) {
+    List<Document> readings = recordDoc.get(BUCKET_READINGS_KEY, List.class);
+    if (readings == null) {
+      return Collections.singletonList(recordDoc);
+    }
+    return readings.stream()
+        .map(reading -> new Document(HealthCheckRecord.ID, null)
+            .append(HealthCheckRecord.SERIAL_ID, recordDoc.get(HealthCheckRecord.SERIAL_ID))
+            .append(HealthCheckRecord.SYSTEM_UUID, recordDoc.get(HealthCheckRecord.SYSTEM_UUID))
+            .append(HealthCheckRecord.SESSION_TIMESTAMP, recordDoc.get(HealthCheckRecord.SESSION_TIMESTAMP))
+            .append(HealthCheckRecord.HEALTHCHECK_TIMESTAMP, reading.get(HealthCheckRecord.HEALTHCHECK_TIMESTAMP))
+            .append(HealthCheckRecord.VERSION, reading.get(HealthCheckRecord.VERSION))
+            .append(HealthCheckRecord.DATA, reading.get(HealthCheckRecord.DATA))
+        )
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Write HealthCheck records of the same type within a transaction. Each record is upserted by its ID with its
+   * fields set only on insertion, so that existing records are reported as duplicates without failing the
+   * transaction. HealthCheck types that are stored in buckets have their records pushed into their buckets instead,
+   * and the records of partitioned HealthCheck types are written to the collections of their partitions.
+   * @param clientSession The session of the running transaction.
+   * @param healthCheckType The type of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @return The per-record outcome of the write.
+   */
+  private <T> BatchWriteResult upsertRecords(ClientSession clientSession, String healthCheckType, List<HealthCheckRecord<T>> healthCheckRecords) {
+    return writePartitions(healthCheckType, healthCheckRecords, (collectionName, recordIndexes) -> {
+      List<HealthCheckRecord<T>> partitionRecords = recordIndexes.stream().map(healthCheckRecords::get).collect(Collectors.toList());
+      return bucketTypes.contains(healthCheckType) ?
+          persistBuckets(clientSession, collectionName, partitionRecords) :
+          upsertPartition(clientSession, collectionName, partitionRecords);
+    });
+  }
+
+  /**
+   * Write HealthCheck records to a single collection within a transaction. Each record is upserted by its ID with
+   * its fields set only on insertion, so that existing records are reported as duplicates without failing the
+   * transaction.
+   * @param clientSession The session of the running transaction.
+   * @param collectionName The name of the collection of the HealthCheck records.
+   * @param healthCheckRecords The HealthCheck records.
+   * @return The per-record outcome of the write.
+   */
+  private <T> BatchWriteResult upsertPartition(ClientSession clientSession, String collectionName, List<HealthCheckRecord<T>> healthCheckRecords) {
+    MongoCollection<HealthCheckRecord<?>> collection = getRecordCollection(collectionName);
+    int persistedCount = 0;
+    List<Integer> duplicateIndexes = new ArrayList<>();
+    for (int batchStart = 0; batchStart < healthCheckRecords.size(); batchStart += batchMaxSize) {
+      List<HealthCheckRecord<T>> batchRecords = healthCheckRecords.subList(batchStart, Math.min(batchStart + batchMaxSize, healthCheckRecords.size()));
+      List<WriteModel<HealthCheckRecord<?>>> writeModels = batchRecords.stream()
+          .map(healthCheckRecord -> buildUpsertModel(splitChunks(clientSession, collectionName, healthCheckRecord)))
+          .collect(Collectors.toList());
+      BulkWriteResult bulkWriteResult = collection.bulkWrite(clientSession, writeModels, new BulkWriteOptions().ordered(false));
+      persistedCount += bulkWriteResult.getUpserts().size();
+      Set<Integer> upsertedIndexes = bulkWriteResult.getUpserts().stream()
+          .map(BulkWriteUpsert::getIndex)
+          .collect(Collectors.toSet());
+      for (int batchIndex = 0; batchIndex < batchRecords.size(); batchIndex++) {
+        if (!upsertedIndexes.contains(batchIndex)) {
+          logger.warn("Cannot write message {} - entry already exists with this key for topic '{}'", batchRecords.get(batchIndex).getUniqueId(), collectionName);
+          duplicateIndexes.add(batchStart + batchIndex);
+        }
+      }
+    }
+    return new BatchWriteResult(persistedCount, duplicateIndexes, Collections.emptyMap());
+  }
+
+  /**
+   * Commit the running transaction, retrying the commit while its outcome is unknown.
+   * @param clientSession The session of the running transaction.
+   */
+  private void commitTransaction(ClientSession clientSession) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        clientSession.commitTransaction();
+        return;
+      } catch (MongoException me) {
+        if (me.hasErrorLabel(MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL) && (attempt < MAX_TRANSACTION_ATTEMPTS)) {
+          logger.warn("Retrying transaction commit with unknown result: {}", me.getMessage());
+        } else {
+          throw me;
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,151 @@
+package com.lucanet.packratcommon.db;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
+
+/**
+ * Enumeration of the time intervals by which the records of a HealthCheck type are partitioned into separate
+ * collections. A partition's collection is named after the HealthCheck type, followed by an underscore and the
+ * partition's (UTC) date, e.g. "DynamicSystemStats_2026_10_18" for a day or "DynamicSystemStats_2026_42" for an ISO
+ * week; the records are assigned to partitions by their HealthCheck timestamp.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public enum PartitionInterval {
+  /**
+   * The records of a HealthCheck type are stored in a single collection named after the HealthCheck type.
+   */
+  NONE(null, null),
+  /**
+   * The records of a HealthCheck type are stored in a collection per day.
+   */
+  DAY(
+      new DateTimeFormatterBuilder()
+          .appendValue(ChronoField.YEAR, 4)
+          .appendLiteral('_')
+          .appendValue(ChronoField.MONTH_OF_YEAR, 2)
+          .appendLiteral('_')
+          .appendValue(ChronoField.DAY_OF_MONTH, 2)
+          .toFormatter(),
+      Period.ofDays(1)
+  ),
+  /**
+   * The records of a HealthCheck type are stored in a collection per ISO week.
+   */
+  WEEK(
+      new DateTimeFormatterBuilder()
+          .appendValue(IsoFields.WEEK_BASED_YEAR, 4)
+          .appendLiteral('_')
+          .appendValue(IsoFields.WEEK_OF_WEEK_BASED_YEAR, 2)
+          .parseDefaulting(ChronoField.DAY_OF_WEEK, 1)
+          .toFormatter(),
+      Period.ofWeeks(1)
+  );
+
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The format of the date suffix of a partition's collection name, or null if the records are not partitioned.
+   */
+  private final DateTimeFormatter suffixFormatter;
+  /**
+   * The time span of a partition, or null if the records are not partitioned.
+   */
+  private final Period partitionPeriod;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Partition interval constructor.
+   * @param suffixFormatter The format of the date suffix of a partition's collection name.
+   * @param partitionPeriod The time span of a partition.
+   */
+  PartitionInterval(DateTimeFormatter suffixFormatter, Period partitionPeriod) {
+    this.suffixFormatter = suffixFormatter;
+    this.partitionPeriod = partitionPeriod;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Get the name of the collection holding a HealthCheck record.
+   * @param healthCheckType The type of the HealthCheck record.
+   * @param healthCheckTimestamp The HealthCheck timestamp of the record (in seconds since the UNIX epoch).
+   * @return The name of the record's collection.
+   */
+  public String getCollectionName(String healthCheckType, long healthCheckTimestamp) {
+    if (suffixFormatter == null) {
+      return healthCheckType;
+    }
+    LocalDate partitionDate = Instant.ofEpochSecond(healthCheckTimestamp).atZone(ZoneOffset.UTC).toLocalDate();
+    return healthCheckType + "_" + suffixFormatter.format(partitionDate);
+  }
+
+  /**
+   * Get the HealthCheck type whose records a collection holds.
+   * @param collectionName The name of the collection.
+   * @return The HealthCheck type, which is the collection name itself if the collection is not a partition.
+   */
+  public String getHealthCheckType(String collectionName) {
+    return (getPartitionStart(collectionName) == null) ?
+        collectionName :
+        collectionName.substring(0, collectionName.length() - getSuffixLength() - 1);
+  }
+
+  /**
+   * Get the start of the time span covered by a partition.
+   * @param collectionName The name of the partition's collection.
+   * @return The first day of the partition, or null if the collection is not a partition of this interval.
+   */
+  public LocalDate getPartitionStart(String collectionName) {
+    if (suffixFormatter == null) {
+      return null;
+    }
+    int suffixStart = collectionName.length() - getSuffixLength();
+    if ((suffixStart < 2) || (collectionName.charAt(suffixStart - 1) != '_')) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(collectionName.substring(suffixStart), suffixFormatter);
+    } catch (DateTimeParseException dtpe) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the end of the time span covered by a partition.
+   * @param partitionStart The first day of the partition.
+   * @return The end of the partition (exclusive, in seconds since the UNIX epoch).
+   */
+  public long getPartitionEnd(LocalDate partitionStart) {
+    return partitionStart.plus(partitionPeriod).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+  }
+
+  /**
+   * Get the start of the oldest partition that is retained at a point in time, i.e. of the partition that lies the
+   * given number of partitions back, counting the partition of the point in time itself.
+   * @param currentTimestamp The point in time (in seconds since the UNIX epoch).
+   * @param retainedPartitions The number of retained partitions, which must be positive.
+   * @return The start of the oldest retained partition (in seconds since the UNIX epoch).
+   */
+  public long getRetentionCutoff(long currentTimestamp, int retainedPartitions) {
+    LocalDate currentDate = Instant.ofEpochSecond(currentTimestamp).atZone(ZoneOffset.UTC).toLocalDate();
+    LocalDate currentStart = (this == WEEK) ? currentDate.with(ChronoField.DAY_OF_WEEK, 1) : currentDate;
+    return currentStart.minus(partitionPeriod.multipliedBy(retainedPartitions - 1)).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Get the length of the date suffix of a partition's collection name.
+   * @return The length of the suffix, without the separating underscore.
+   */
+  private int getSuffixLength() {
+    return (this == DAY) ? 10 : 7;
+  }
+}
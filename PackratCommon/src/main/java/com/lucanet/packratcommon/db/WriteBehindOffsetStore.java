@@ -0,0 +1,188 @@
+package com.lucanet.packratcommon.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory store of message offsets that writes changes back to a {@link DatabaseConnection} in the background.
+ * <p>
+ * Offset updates only ever raise the stored offset and are coalesced between flushes, so that any number of
+ * updates to the same HealthCheck type and partition costs a single write, and all pending updates are sent as a
+ * single bulk write.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class WriteBehindOffsetStore {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The logger for the WriteBehindOffsetStore instance.
+   */
+  private final Logger logger;
+  /**
+   * The database persistence object.
+   */
+  private final DatabaseConnection databaseConnection;
+  /**
+   * The latest known message offsets, mapped by HealthCheck type and then by message partition.
+   */
+  private final Map<String, Map<Integer, Long>> currentOffsets;
+  /**
+   * The message offsets that have changed since the last flush, mapped by HealthCheck type and then by message
+   * partition. Guarded by the store's monitor.
+   */
+  private Map<String, Map<Integer, Long>> pendingOffsets;
+  /**
+   * Scheduler that periodically flushes the {@link #pendingOffsets}.
+   */
+  private final ScheduledExecutorService flushScheduler;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Offset store constructor.
+   * @param databaseConnection The database persistence object.
+   * @param flushInterval The interval (in milliseconds) at which pending offsets are written to the database.
+   */
+  public WriteBehindOffsetStore(DatabaseConnection databaseConnection, long flushInterval) {
+    this.logger = LoggerFactory.getLogger(WriteBehindOffsetStore.class);
+    this.databaseConnection = databaseConnection;
+    this.currentOffsets = new ConcurrentHashMap<>();
+    this.pendingOffsets = new HashMap<>();
+    this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread flushThread = new Thread(runnable, "offset-store-flush");
+      flushThread.setDaemon(true);
+      return flushThread;
+    });
+    this.flushScheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Load the stored message offsets of every partition of the specified HealthCheck types with a single query.
+   * Offsets that are already known in memory are kept if they are higher.
+   * @param healthCheckTypes The specified HealthCheck types.
+   */
+  public void load(Collection<String> healthCheckTypes) {
+    databaseConnection.getOffsets(healthCheckTypes).forEach((healthCheckType, partitionOffsets) ->
+        partitionOffsets.forEach((partition, offset) ->
+            getPartitionOffsets(healthCheckType).merge(partition, offset, Math::max)
+        )
+    );
+  }
+
+  /**
+   * Get the message offset for the specified HealthCheck type and message partition. Offsets that are not known in
+   * memory are looked up in the database.
+   * @param healthCheckType The specified HealthCheck type.
+   * @param partition The message partition for the HealthCheck type.
+   * @return The message offset.
+   */
+  public long getOffset(String healthCheckType, int partition) {
+    Long offset = getPartitionOffsets(healthCheckType).get(partition);
+    if (offset == null) {
+      offset = databaseConnection.getOffset(healthCheckType, partition);
+      getPartitionOffsets(healthCheckType).merge(partition, offset, Math::max);
+    }
+    return offset;
+  }
+
+  /**
+   * Set the new message offset for the specified HealthCheck type and message partition. The offset is written to
+   * the database with the next flush, and only if it is higher than the current offset.
+   * @param healthCheckType The specified HealthCheck type.
+   * @param partition The message partition for the HealthCheck type.
+   * @param newOffset The new message offset.
+   */
+  public synchronized void updateOffset(String healthCheckType, int partition, long newOffset) {
+    Long currentOffset = getPartitionOffsets(healthCheckType).get(partition);
+    if ((currentOffset != null) && (currentOffset >= newOffset)) {
+      return;
+    }
+    getPartitionOffsets(healthCheckType).put(partition, newOffset);
+    pendingOffsets.computeIfAbsent(healthCheckType, type -> new HashMap<>()).merge(partition, newOffset, Math::max);
+  }
+
+  /**
+   * Record message offsets that have already been written to the database by other means (e.g. together with
+   * their HealthCheck records in a transaction), so that they are not written again.
+   * @param persistedOffsets The persisted message offsets, mapped by HealthCheck type and then by message partition.
+   */
+  public synchronized void markPersisted(Map<String, Map<Integer, Long>> persistedOffsets) {
+    persistedOffsets.forEach((healthCheckType, partitionOffsets) ->
+        partitionOffsets.forEach((partition, offset) ->
+            getPartitionOffsets(healthCheckType).merge(partition, offset, Math::max)
+        )
+    );
+  }
+
+  /**
+   * Write all pending offsets to the database with a single bulk write. If the write fails, the pending offsets
+   * are kept for the next flush.
+   */
+  public void flush() {
+    Map<String, Map<Integer, Long>> flushedOffsets;
+    synchronized (this) {
+      if (pendingOffsets.isEmpty()) {
+        return;
+      }
+      flushedOffsets = pendingOffsets;
+      pendingOffsets = new HashMap<>();
+    }
+    try {
+      databaseConnection.updateOffsets(flushedOffsets);
+    } catch (RuntimeException re) {
+      synchronized (this) {
+        flushedOffsets.forEach((healthCheckType, partitionOffsets) ->
+            partitionOffsets.forEach((partition, offset) ->
+                pendingOffsets.computeIfAbsent(healthCheckType, type -> new HashMap<>()).merge(partition, offset, Math::max)
+            )
+        );
+      }
+      throw re;
+    }
+  }
+
+  /**
+   * Stop the background flushes and write any pending offsets to the database.
+   */
+  public void shutdown() {
+    flushScheduler.shutdown();
+    try {
+      flushScheduler.awaitTermination(1L, TimeUnit.MINUTES);
+    } catch (InterruptedException ie) {
+      //No-Op - flushing anyway
+    }
+    flush();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Get the in-memory message offsets of a HealthCheck type.
+   * @param healthCheckType The specified HealthCheck type.
+   * @return The message offsets of the HealthCheck type, mapped by message partition.
+   */
+  private Map<Integer, Long> getPartitionOffsets(String healthCheckType) {
+    return currentOffsets.computeIfAbsent(healthCheckType, type -> new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Flush the pending offsets from the {@link #flushScheduler}, logging instead of propagating errors so that the
+   * scheduled flushes keep running.
+   */
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      logger.error("Error flushing offsets: {}", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.lucanet.packratcommon.model;
+
+/**
+ * DTO Class representing a HealthCheck message that could not be processed, kept in its raw form together with its
+ * position in the message log and the reason for its failure, so that it can be inspected and replayed.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class DeadLetter {
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The topic (i.e. HealthCheck type) of the message.
+   */
+  private final String topic;
+  /**
+   * The partition of the message.
+   */
+  private final int partition;
+  /**
+   * The offset of the message within its partition.
+   */
+  private final long offset;
+  /**
+   * The timestamp of the message (in milliseconds since the UNIX epoch).
+   */
+  private final long timestamp;
+  /**
+   * The raw HealthCheck header data, or null if the message has no key.
+   */
+  private final byte[] key;
+  /**
+   * The raw HealthCheck data, or null if the message has no value.
+   */
+  private final byte[] value;
+  /**
+   * The name of the class of the error that caused the failure.
+   */
+  private final String errorClass;
+  /**
+   * The message of the error that caused the failure.
+   */
+  private final String errorMessage;
+  /**
+   * The time of the failure (in milliseconds since the UNIX epoch).
+   */
+  private final long failedTimestamp;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Dead letter constructor.
+   * @param topic The topic (i.e. HealthCheck type) of the message.
+   * @param partition The partition of the message.
+   * @param offset The offset of the message within its partition.
+   * @param timestamp The timestamp of the message (in milliseconds since the UNIX epoch).
+   * @param key The raw HealthCheck header data, or null if the message has no key.
+   * @param value The raw HealthCheck data, or null if the message has no value.
+   * @param errorClass The name of the class of the error that caused the failure.
+   * @param errorMessage The message of the error that caused the failure.
+   * @param failedTimestamp The time of the failure (in milliseconds since the UNIX epoch).
+   */
+  public DeadLetter(String topic, int partition, long offset, long timestamp, byte[] key, byte[] value, String errorClass, String errorMessage, long failedTimestamp) {
+    this.topic = topic;
+    this.partition = partition;
+    this.offset = offset;
+    this.timestamp = timestamp;
+    this.key = key;
+    this.value = value;
+    this.errorClass = errorClass;
+    this.errorMessage = errorMessage;
+    this.failedTimestamp = failedTimestamp;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Get the topic.
+   * @return {@link #topic}
+   */
+  public String getTopic() {
+    return topic;
+  }
+
+  /**
+   * Get the partition.
+   * @return {@link #partition}
+   */
+  public int getPartition() {
+    return partition;
+  }
+
+  /**
+   * Get the offset.
+   * @return {@link #offset}
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the message timestamp.
+   * @return {@link #timestamp}
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Get the raw header data.
+   * @return {@link #key}
+   */
+  public byte[] getKey() {
+    return key;
+  }
+
+  /**
+   * Get the raw data.
+   * @return {@link #value}
+   */
+  public byte[] getValue() {
+    return value;
+  }
+
+  /**
+   * Get the error class name.
+   * @return {@link #errorClass}
+   */
+  public String getErrorClass() {
+    return errorClass;
+  }
+
+  /**
+   * Get the error message.
+   * @return {@link #errorMessage}
+   */
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  /**
+   * Get the failure timestamp.
+   * @return {@link #failedTimestamp}
+   */
+  public long getFailedTimestamp() {
+    return failedTimestamp;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s-%d@%d", topic, partition, offset);
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+}
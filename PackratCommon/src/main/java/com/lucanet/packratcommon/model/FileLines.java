@@ -0,0 +1,304 @@
+package com.lucanet.packratcommon.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * HealthCheck file data, represented by the lines of the file.
+ * <p>
+ * The lines are kept as the raw JSON array they were received in (possibly compressed, in which case it is
+ * decompressed as it is read), and are only decoded as they are read, one bounded chunk at a time. A chunk holds the
+ * lines of at most {@link #chunkMaxBytes} bytes of raw JSON data (but always at least one line), so that large files
+ * can be persisted as a sequence of documents without ever decoding all of their lines at once.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class FileLines implements Iterable<String> {
+  // =========================== Class Variables ===========================79
+  /**
+   * The default maximum size (in bytes) of the raw data of a single chunk. This keeps a chunk well below the 16MB
+   * document limit of MongoDB, even for files consisting of very short lines.
+   */
+  public static final int DEFAULT_CHUNK_MAX_BYTES = 4 * 1024 * 1024;
+  /**
+   * Mask applied to the mixed hash of a line to decide whether it ends a content-defined chunk, giving chunks of 64
+   * lines on average.
+   */
+  private static final int CONTENT_BOUNDARY_MASK = 0x3f;
+  /**
+   * Factory for the parsers that read the raw file data.
+   */
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  // ============================ Class Methods ============================79
+  /**
+   * Read raw file data, checking that it is a JSON array of lines without decoding the lines.
+   * @param rawLines The raw file data.
+   * @param chunkMaxBytes The maximum size (in bytes) of the raw data of a single chunk.
+   * @return The file data, or null if the file has no lines.
+   * @throws IOException Signifies that the raw data is not a JSON array of lines.
+   */
+  public static FileLines read(byte[] rawLines, int chunkMaxBytes) throws IOException {
+    return read(() -> new ByteArrayInputStream(rawLines), rawLines.length, chunkMaxBytes);
+  }
+
+  /**
+   * Read raw file data from a source that can be opened repeatedly, checking that it is a JSON array of lines without
+   * decoding the lines.
+   * @param rawDataSource The source of the raw file data.
+   * @param rawSize The size (in bytes) of the data held by the source.
+   * @param chunkMaxBytes The maximum size (in bytes) of the raw JSON data of a single chunk.
+   * @return The file data, or null if the file has no lines.
+   * @throws IOException Signifies that the raw data is not a JSON array of lines.
+   */
+  public static FileLines read(RawDataSource rawDataSource, int rawSize, int chunkMaxBytes) throws IOException {
+    int lineCount = 0;
+    try (JsonParser jsonParser = JSON_FACTORY.createParser(rawDataSource.open())) {
+      if (jsonParser.nextToken() != JsonToken.START_ARRAY) {
+        throw new IOException(String.format("Expected a JSON array, but found %s", jsonParser.getCurrentToken()));
+      }
+      for (JsonToken token = jsonParser.nextToken(); token != JsonToken.END_ARRAY; token = jsonParser.nextToken()) {
+        if ((token == null) || !token.isScalarValue()) {
+          throw new IOException(String.format("Expected a line, but found %s", token));
+        }
+        lineCount++;
+      }
+    }
+    return (lineCount > 0) ? new FileLines(rawDataSource, rawSize, lineCount, chunkMaxBytes) : null;
+  }
+
+  // ============================   Variables    ===========================79
+  /**
+   * The source of the raw file data, as a JSON array of lines.
+   */
+  private final RawDataSource rawDataSource;
+  /**
+   * The size (in bytes) of the data held by the {@link #rawDataSource}.
+   */
+  private final int rawSize;
+  /**
+   * The number of lines of the file.
+   */
+  private final int lineCount;
+  /**
+   * The maximum size (in bytes) of the raw data of a single chunk.
+   */
+  private final int chunkMaxBytes;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Constructor for file data that has already been checked by {@link #read(RawDataSource, int, int)}.
+   * @param rawDataSource The source of the raw file data, as a JSON array of lines.
+   * @param rawSize The size (in bytes) of the data held by the source.
+   * @param lineCount The number of lines of the file.
+   * @param chunkMaxBytes The maximum size (in bytes) of the raw JSON data of a single chunk.
+   */
+  private FileLines(RawDataSource rawDataSource, int rawSize, int lineCount, int chunkMaxBytes) {
+    this.rawDataSource = rawDataSource;
+    this.rawSize = rawSize;
+    this.lineCount = lineCount;
+    this.chunkMaxBytes = chunkMaxBytes;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Get the number of lines.
+   * @return {@link #lineCount}
+   */
+  public int getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * Get the size of the raw file data.
+   * @return {@link #rawSize}
+   */
+  public int getRawSize() {
+    return rawSize;
+  }
+
+  /**
+   * Decode the lines one bounded chunk at a time. Every chunk contains at least one line.
+   * @return Iterator over the consecutive chunks of lines.
+   */
+  public Iterator<List<String>> chunks() {
+    return new ChunkIterator(line -> false);
+  }
+
+  /**
+   * Decode the lines one chunk at a time, where chunk boundaries are determined by the content of the lines rather
+   * than by their position: a chunk ends after any line whose hash matches a fixed bit pattern (or once the chunk
+   * reaches {@link #chunkMaxBytes}). Lines that recur in another file therefore tend to fall into identical chunks,
+   * even when lines were added or removed before them.
+   * @return Iterator over the consecutive chunks of lines.
+   */
+  public Iterator<List<String>> contentDefinedChunks() {
+    return new ChunkIterator(FileLines::isContentBoundary);
+  }
+
+  /**
+   * Decode the lines one at a time.
+   * @return Iterator over the lines.
+   */
+  @Override
+  public Iterator<String> iterator() {
+    Iterator<List<String>> chunkIterator = chunks();
+    return new Iterator<String>() {
+      private Iterator<String> lineIterator = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!lineIterator.hasNext() && chunkIterator.hasNext()) {
+          lineIterator = chunkIterator.next().iterator();
+        }
+        return lineIterator.hasNext();
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return lineIterator.next();
+      }
+    };
+  }
+
+  /**
+   * Decode all lines at once. This is also the JSON representation of the file data.
+   * @return The list of all lines.
+   */
+  @JsonValue
+  public List<String> toList() {
+    List<String> lines = new ArrayList<>(lineCount);
+    forEach(lines::add);
+    return lines;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    FileLines that = (FileLines) o;
+
+    return (lineCount == that.lineCount) && toList().equals(that.toList());
+  }
+
+  @Override
+  public int hashCode() {
+    return toList().hashCode();
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  /**
+   * Determine whether a line ends a content-defined chunk. The line's hash is mixed so that the low bits that are
+   * tested depend on every character of the line.
+   * @param line The line.
+   * @return Whether the line ends a chunk.
+   */
+  private static boolean isContentBoundary(String line) {
+    int hash = (line != null) ? line.hashCode() : 0;
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    return (hash & CONTENT_BOUNDARY_MASK) == CONTENT_BOUNDARY_MASK;
+  }
+
+  // ============================ Inner Classes ============================79
+  /**
+   * Source of raw file data that opens a new stream over the data on every call.
+   */
+  @FunctionalInterface
+  public interface RawDataSource {
+    /**
+     * Open a stream over the raw file data.
+     * @return The stream of the raw JSON data.
+     * @throws IOException Signifies that the stream could not be opened.
+     */
+    InputStream open() throws IOException;
+  }
+
+  /**
+   * Iterator that decodes the chunks of lines with a single streaming pass over the raw file data.
+   */
+  private class ChunkIterator implements Iterator<List<String>> {
+    /**
+     * The parser over the raw file data, positioned on the next line; null once all lines have been read.
+     */
+    private JsonParser jsonParser;
+    /**
+     * Test for the lines that end a chunk before it reaches {@link #chunkMaxBytes}.
+     */
+    private final Predicate<String> chunkBoundary;
+
+    /**
+     * Chunk iterator constructor.
+     * @param chunkBoundary Test for the lines that end a chunk before it reaches {@link #chunkMaxBytes}.
+     */
+    ChunkIterator(Predicate<String> chunkBoundary) {
+      this.chunkBoundary = chunkBoundary;
+      try {
+        jsonParser = JSON_FACTORY.createParser(rawDataSource.open());
+        jsonParser.nextToken();
+        advance();
+      } catch (IOException ioe) {
+        throw new UncheckedIOException(ioe);
+      }
+    }
+
+    /**
+     * Determine whether there are lines left.
+     * @return Whether there is another chunk.
+     */
+    @Override
+    public boolean hasNext() {
+      return jsonParser != null;
+    }
+
+    /**
+     * Decode the next chunk of lines.
+     * @return The lines of the chunk.
+     */
+    @Override
+    public List<String> next() {
+      if (jsonParser == null) {
+        throw new NoSuchElementException();
+      }
+      try {
+        List<String> chunk = new ArrayList<>();
+        long chunkStart = jsonParser.getTokenLocation().getByteOffset();
+        boolean boundary;
+        do {
+          String line = (jsonParser.getCurrentToken() == JsonToken.VALUE_NULL) ? null : jsonParser.getText();
+          chunk.add(line);
+          boundary = chunkBoundary.test(line);
+          advance();
+        } while (!boundary && (jsonParser != null) && ((jsonParser.getTokenLocation().getByteOffset() - chunkStart) < chunkMaxBytes));
+        return chunk;
+      } catch (IOException ioe) {
+        throw new UncheckedIOException(ioe);
+      }
+    }
+
+    /**
+     * Move the parser to the next line, closing it once the end of the lines is reached.
+     * @throws IOException Signifies malformed JSON data.
+     */
+    private void advance() throws IOException {
+      if (jsonParser.nextToken() == JsonToken.END_ARRAY) {
+        jsonParser.close();
+        jsonParser = null;
+      }
+    }
+  }
+}
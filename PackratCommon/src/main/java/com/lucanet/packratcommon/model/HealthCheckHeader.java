@@ -145,7 +145,13 @@ public class HealthCheckHeader implements Serializable {
    */
   @Transient
   public String getUniqueId() {
-    return String.format("%s:%d@%d", systemUUID, sessionTimestamp, healthCheckTimestamp);
+    return new StringBuilder(((systemUUID != null) ? systemUUID.length() : 4) + 42)
+        .append(systemUUID)
+        .append(':')
+        .append(sessionTimestamp)
+        .append('@')
+        .append(healthCheckTimestamp)
+        .toString();
   }
 
   @Override
@@ -1,14 +1,15 @@
 package com.lucanet.packratcommon.model;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import org.bson.Document;
+
+import java.util.List;
 
 /**
- * Wrapper DTO class representing a HealthCheck entity for the MongoDB implementation.
- * @see Document
+ * Wrapper DTO class representing a HealthCheck entity for the MongoDB implementation. The record is encoded
+ * directly from its {@link HealthCheckHeader} and data by the {@code HealthCheckRecordCodec}.
  * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
  */
-public class HealthCheckRecord<T> extends Document {
+public class HealthCheckRecord<T> {
   // =========================== Class Variables ===========================79
   /**
    * "serialId" key for usage in the MongoDB database.
@@ -39,9 +40,50 @@ public class HealthCheckRecord<T> extends Document {
    * "data" key for usage in the MongoDB database.
    */
   public static final String DATA = "data";
+  /**
+   * "_id" key for usage in the MongoDB database.
+   * @see HealthCheckHeader#getUniqueId()
+   */
+  public static final String ID = "_id";
+  /**
+   * "chunkCount" key for usage in the MongoDB database. This is only present for HealthCheck data that is stored as
+   * a sequence of chunks.
+   * @see FileLines
+   */
+  public static final String CHUNK_COUNT = "chunkCount";
+  /**
+   * "chunkRefs" key for usage in the MongoDB database. This is only present for HealthCheck data that is stored as
+   * references to content-addressed chunks.
+   * @see FileLines
+   */
+  public static final String CHUNK_REFS = "chunkRefs";
+  /**
+   * "validUntil" key for usage in the MongoDB database. This is only present for records of HealthCheck types that
+   * are stored on change, and holds the HealthCheck timestamp of the latest identical HealthCheck that the record
+   * stands for.
+   */
+  public static final String VALID_UNTIL = "validUntil";
 
   // ============================ Class Methods ============================79
   // ============================   Variables    ===========================79
+  /**
+   * The metadata for the HealthCheck record.
+   */
+  private final HealthCheckHeader healthCheckHeader;
+  /**
+   * The HealthCheck data.
+   */
+  private Object data;
+  /**
+   * The number of chunks in which the HealthCheck data is stored, including the chunk stored with the record itself.
+   */
+  private int chunkCount;
+  /**
+   * The content hashes of the chunks in which the HealthCheck data is stored, or null if the data is stored with the
+   * record itself.
+   */
+  private List<byte[]> chunkRefs;
+
   // ============================  Constructors  ===========================79
   /**
    * Constructor for the HealthCheck record.
@@ -50,23 +92,36 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader
    */
   public HealthCheckRecord(HealthCheckHeader healthCheckHeader, T data) {
-    put("_id", healthCheckHeader.getUniqueId());
-    put(SERIAL_ID, healthCheckHeader.getSerialId());
-    put(SYSTEM_UUID, healthCheckHeader.getSystemUUID());
-    put(SESSION_TIMESTAMP, healthCheckHeader.getSessionTimestamp());
-    put(HEALTHCHECK_TIMESTAMP, healthCheckHeader.getHealthCheckTimestamp());
-    put(VERSION, healthCheckHeader.getVersion());
-    put(DATA, data);
+    this.healthCheckHeader = healthCheckHeader;
+    this.data = data;
+    this.chunkCount = 1;
   }
 
   // ============================ Public Methods ===========================79
+  /**
+   * Get the HealthCheck record metadata.
+   * @return {@link #healthCheckHeader}
+   */
+  public HealthCheckHeader getHealthCheckHeader() {
+    return healthCheckHeader;
+  }
+
+  /**
+   * Get the unique ID.
+   * @return The unique identifier of the HealthCheck record.
+   * @see HealthCheckHeader#getUniqueId()
+   */
+  public String getUniqueId() {
+    return healthCheckHeader.getUniqueId();
+  }
+
   /**
    * Get serial ID.
    * @return The computer group to which the computer that produced the HealthCheck record belongs.
    * @see HealthCheckHeader#serialId
    */
   public String getSerialId() {
-    return getString(SERIAL_ID);
+    return healthCheckHeader.getSerialId();
   }
 
   /**
@@ -75,7 +130,7 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader#serialId
    */
   public void setSerialId(String serialId) {
-    put(SERIAL_ID, serialId);
+    healthCheckHeader.setSerialId(serialId);
   }
 
   /**
@@ -84,7 +139,7 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader#systemUUID
    */
   public String getSystemUUID() {
-    return getString(SYSTEM_UUID);
+    return healthCheckHeader.getSystemUUID();
   }
 
   /**
@@ -93,7 +148,7 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader#systemUUID
    */
   public void setSystemUUID(String systemUUID) {
-    put(SYSTEM_UUID, systemUUID);
+    healthCheckHeader.setSystemUUID(systemUUID);
   }
 
   /**
@@ -102,7 +157,7 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader#sessionTimestamp
    */
   public long getSessionTimestamp() {
-    return getLong(SESSION_TIMESTAMP);
+    return healthCheckHeader.getSessionTimestamp();
   }
 
   /**
@@ -111,7 +166,7 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader#sessionTimestamp
    */
   public void setSessionTimestamp(long sessionTimestamp) {
-    put(SESSION_TIMESTAMP, sessionTimestamp);
+    healthCheckHeader.setSessionTimestamp(sessionTimestamp);
   }
 
   /**
@@ -120,7 +175,7 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader#healthCheckTimestamp
    */
   public long getHealthCheckTimestamp() {
-    return getLong(HEALTHCHECK_TIMESTAMP);
+    return healthCheckHeader.getHealthCheckTimestamp();
   }
 
   /**
@@ -129,7 +184,16 @@ public class HealthCheckRecord<T> extends Document {
    * @see HealthCheckHeader#healthCheckTimestamp
    */
   public void setHealthCheckTimestamp(long healthCheckTimestamp) {
-    put(HEALTHCHECK_TIMESTAMP, healthCheckTimestamp);
+    healthCheckHeader.setHealthCheckTimestamp(healthCheckTimestamp);
+  }
+
+  /**
+   * Get HealthCheck record version.
+   * @return The version of the HealthCheck record.
+   * @see HealthCheckHeader#version
+   */
+  public int getVersion() {
+    return healthCheckHeader.getVersion();
   }
 
   /**
@@ -138,7 +202,7 @@ public class HealthCheckRecord<T> extends Document {
    */
   @SuppressWarnings("unchecked")
   public T getData() {
-    return (T) get(DATA);
+    return (T) data;
   }
 
   /**
@@ -146,7 +210,39 @@ public class HealthCheckRecord<T> extends Document {
    * @param data The new HealthCheck data.
    */
   public void setData(JsonNode data) {
-    put(DATA, data);
+    this.data = data;
+  }
+
+  /**
+   * Get the number of chunks in which the HealthCheck data is stored.
+   * @return {@link #chunkCount}
+   */
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  /**
+   * Set the number of chunks in which the HealthCheck data is stored.
+   * @param chunkCount The new {@link #chunkCount}.
+   */
+  public void setChunkCount(int chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
+  /**
+   * Get the content hashes of the chunks in which the HealthCheck data is stored.
+   * @return {@link #chunkRefs}
+   */
+  public List<byte[]> getChunkRefs() {
+    return chunkRefs;
+  }
+
+  /**
+   * Set the content hashes of the chunks in which the HealthCheck data is stored.
+   * @param chunkRefs The new {@link #chunkRefs}.
+   */
+  public void setChunkRefs(List<byte[]> chunkRefs) {
+    this.chunkRefs = chunkRefs;
   }
 
   // ========================== Protected Methods ==========================79
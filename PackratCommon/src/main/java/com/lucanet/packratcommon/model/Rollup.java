@@ -0,0 +1,213 @@
+package com.lucanet.packratcommon.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DTO Class representing the aggregate of the numeric fields of a computer's HealthChecks within a rollup window.
+ * Rollups are built incrementally: each HealthCheck is added to the rollup of its window, and the rollups of a batch
+ * of HealthChecks are merged into the stored rollups.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public class Rollup {
+  // =========================== Class Variables ===========================79
+  /**
+   * "_stats" key under which the statistics of a numeric field are stored beneath the field's path, so that they
+   * cannot clash with nested fields of the same name. A field with this name is therefore not rolled up.
+   */
+  public static final String STATS_KEY = "_stats";
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The computer group (in the form of a serial ID).
+   */
+  private final String serialId;
+  /**
+   * The computer (in the form of a UUID entity).
+   */
+  private final String systemUUID;
+  /**
+   * The time window over which the HealthChecks are rolled up.
+   */
+  private final RollupResolution resolution;
+  /**
+   * The start of the rollup window (in seconds since the UNIX epoch).
+   */
+  private final long windowStart;
+  /**
+   * The number of HealthChecks in the rollup.
+   */
+  private long count;
+  /**
+   * The statistics of each numeric field, mapped by the field's path within the HealthCheck data.
+   */
+  private final Map<String, FieldStats> fieldStatsMap;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Rollup constructor.
+   * @param serialId The computer group (in the form of a serial ID).
+   * @param systemUUID The computer (in the form of a UUID entity).
+   * @param resolution The time window over which the HealthChecks are rolled up.
+   * @param windowStart The start of the rollup window (in seconds since the UNIX epoch).
+   */
+  public Rollup(String serialId, String systemUUID, RollupResolution resolution, long windowStart) {
+    this.serialId = serialId;
+    this.systemUUID = systemUUID;
+    this.resolution = resolution;
+    this.windowStart = windowStart;
+    this.count = 0L;
+    this.fieldStatsMap = new LinkedHashMap<>();
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Add a HealthCheck to the rollup.
+   * @param fieldValues The values of the HealthCheck's numeric fields, mapped by the field's path within the data.
+   */
+  public void add(Map<String, Double> fieldValues) {
+    count++;
+    fieldValues.forEach((fieldPath, value) -> fieldStatsMap.computeIfAbsent(fieldPath, path -> new FieldStats()).add(value));
+  }
+
+  /**
+   * Get the serial ID.
+   * @return {@link #serialId}
+   */
+  public String getSerialId() {
+    return serialId;
+  }
+
+  /**
+   * Get the system UUID.
+   * @return {@link #systemUUID}
+   */
+  public String getSystemUUID() {
+    return systemUUID;
+  }
+
+  /**
+   * Get the resolution.
+   * @return {@link #resolution}
+   */
+  public RollupResolution getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Get the window start.
+   * @return {@link #windowStart}
+   */
+  public long getWindowStart() {
+    return windowStart;
+  }
+
+  /**
+   * Get the HealthCheck count.
+   * @return {@link #count}
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Get the field statistics.
+   * @return {@link #fieldStatsMap}
+   */
+  public Map<String, FieldStats> getFieldStatsMap() {
+    return Collections.unmodifiableMap(fieldStatsMap);
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+  // ============================ Inner Classes ============================79
+  /**
+   * The statistics of a numeric field, from which its mean and standard deviation can be derived.
+   */
+  public static class FieldStats {
+    /**
+     * The number of values.
+     */
+    private long count;
+    /**
+     * The smallest value.
+     */
+    private double min;
+    /**
+     * The largest value.
+     */
+    private double max;
+    /**
+     * The sum of the values.
+     */
+    private double sum;
+    /**
+     * The sum of the squares of the values.
+     */
+    private double sumOfSquares;
+
+    /**
+     * Field statistics constructor.
+     */
+    FieldStats() {
+      this.count = 0L;
+      this.min = Double.POSITIVE_INFINITY;
+      this.max = Double.NEGATIVE_INFINITY;
+      this.sum = 0.0;
+      this.sumOfSquares = 0.0;
+    }
+
+    /**
+     * Add a value to the statistics.
+     * @param value The value.
+     */
+    void add(double value) {
+      count++;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+      sum += value;
+      sumOfSquares += value * value;
+    }
+
+    /**
+     * Get the value count.
+     * @return {@link #count}
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Get the smallest value.
+     * @return {@link #min}
+     */
+    public double getMin() {
+      return min;
+    }
+
+    /**
+     * Get the largest value.
+     * @return {@link #max}
+     */
+    public double getMax() {
+      return max;
+    }
+
+    /**
+     * Get the sum of the values.
+     * @return {@link #sum}
+     */
+    public double getSum() {
+      return sum;
+    }
+
+    /**
+     * Get the sum of the squares of the values.
+     * @return {@link #sumOfSquares}
+     */
+    public double getSumOfSquares() {
+      return sumOfSquares;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.lucanet.packratcommon.model;
+
+/**
+ * Enumeration of the time windows over which the numeric fields of HealthCheck data are rolled up.
+ * @author <a href="mailto:severne@lucanet.com">Severn Everett</a>
+ */
+public enum RollupResolution {
+  /**
+   * The HealthChecks of each computer are rolled up per minute.
+   */
+  MINUTE(60L),
+  /**
+   * The HealthChecks of each computer are rolled up per hour.
+   */
+  HOUR(3600L);
+
+  // =========================== Class Variables ===========================79
+  // ============================ Class Methods ============================79
+  // ============================   Variables    ===========================79
+  /**
+   * The length (in seconds) of a rollup window.
+   */
+  private final long windowLength;
+
+  // ============================  Constructors  ===========================79
+  /**
+   * Rollup resolution constructor.
+   * @param windowLength The length (in seconds) of a rollup window.
+   */
+  RollupResolution(long windowLength) {
+    this.windowLength = windowLength;
+  }
+
+  // ============================ Public Methods ===========================79
+  /**
+   * Get the start of the rollup window containing a HealthCheck.
+   * @param healthCheckTimestamp The HealthCheck timestamp (in seconds since the UNIX epoch).
+   * @return The start of the window (in seconds since the UNIX epoch).
+   */
+  public long getWindowStart(long healthCheckTimestamp) {
+    return healthCheckTimestamp - Math.floorMod(healthCheckTimestamp, windowLength);
+  }
+
+  // ========================== Protected Methods ==========================79
+  // =========================== Private Methods ===========================79
+}
@@ -2,6 +2,7 @@ package com.lucanet.packratreporter.controllers;
 
 import com.lucanet.packratcommon.aspects.LogExecution;
 import com.lucanet.packratcommon.db.DatabaseConnection;
+import com.lucanet.packratcommon.model.RollupResolution;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -205,6 +206,68 @@ public class HealthCheckTypesController {
     return sessionHealthChecks;
   }
 
+  /**
+   * Get list of the rollups of a specified computer's HealthChecks correlating to a HealthCheck type within a time range.
+   * @param servletResponse Response object used to set the HTTP response code.
+   * @param healthCheckType The specified HealthCheck type.
+   * @param systemUUID The specified computer (in the form of a UUID entity).
+   * @param resolution The time window over which the HealthChecks are rolled up.
+   * @param fromTimestamp The start of the time range (inclusive, in the form of a timestamp representing seconds elapsed since the UNIX epoch).
+   * @param toTimestamp The end of the time range (exclusive, in the form of a timestamp representing seconds elapsed since the UNIX epoch).
+   * @return The list of rollups for the computer whose windows start within the time range, in chronological order.
+   */
+  @ApiOperation(
+      value = "Get rollups of the numeric HealthCheck fields of a system UUID within a time range",
+      responseContainer = "List"
+  )
+  @ApiResponses(value = {
+      @ApiResponse(code = HttpServletResponse.SC_OK, message = "List of rollups obtained for the supplied HealthCheck type, " +
+          "system UUID, resolution, and time range"),
+      @ApiResponse(code = HttpServletResponse.SC_BAD_REQUEST, message = "The supplied HealthCheck type does not exist")
+  })
+  @LogExecution
+  @RequestMapping(value = "/{healthCheckType}/rollups", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+  public List<Map<String, Object>> getRollups(
+      HttpServletResponse servletResponse,
+      @ApiParam(
+          value = "HealthCheck Type",
+          required = true
+      )
+      @PathVariable("healthCheckType") String healthCheckType,
+      @ApiParam(
+          value = "System UUID",
+          required = true
+      )
+      @RequestParam("systemUUID") String systemUUID,
+      @ApiParam(
+          value = "Rollup Resolution",
+          required = true
+      )
+      @RequestParam("resolution") RollupResolution resolution,
+      @ApiParam(
+          value = "Start Timestamp",
+          required = true
+      )
+      @RequestParam("from") Long fromTimestamp,
+      @ApiParam(
+          value = "End Timestamp",
+          required = true
+      )
+      @RequestParam("to") Long toTimestamp
+  ) {
+    List<Map<String, Object>> rollups = new ArrayList<>();
+    try {
+      rollups.addAll(databaseConnection.getRollups(healthCheckType, systemUUID, resolution, fromTimestamp, toTimestamp));
+    } catch (IllegalArgumentException iae) {
+      logger.warn("Illegal argument in Rollups query: {}", iae.getMessage());
+      servletResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    } catch (Exception e) {
+      logger.error("Error occurred in getRollups:", e);
+      servletResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+    return rollups;
+  }
+
   @PreDestroy
   public void shutdown() {
     databaseConnection.shutdown();
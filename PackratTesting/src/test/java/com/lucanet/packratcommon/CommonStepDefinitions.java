@@ -142,6 +142,14 @@ public class CommonStepDefinitions {
   private void clearDatabase(MongoDatabase database) {
     database.getCollection(MongoDatabaseConnection.OFFSETS_COLLECTION_NAME)
         .deleteMany(new Document());
+    database.getCollection(MongoDatabaseConnection.CHUNKS_COLLECTION_NAME)
+        .deleteMany(new Document());
+    database.getCollection(MongoDatabaseConnection.CONTENT_CHUNKS_COLLECTION_NAME)
+        .deleteMany(new Document());
+    database.getCollection(MongoDatabaseConnection.DEADLETTER_COLLECTION_NAME)
+        .deleteMany(new Document());
+    database.getCollection(MongoDatabaseConnection.ROLLUPS_COLLECTION_NAME)
+        .deleteMany(new Document());
     COLLECTIONS_LIST.forEach(collectionName ->
       database.getCollection(collectionName).deleteMany(new Document())
     );